@@ -0,0 +1,190 @@
+package com.trading.trading_application.benchmark;
+
+import com.trading.trading_application.API.OrderBookAPI;
+import com.trading.trading_application.lib.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// JMH benchmarks of one book partition driven straight through OrderBookAPI, the way a matching
+// shard's worker drives it. Every iteration starts from a fresh book of `depth` resting orders per
+// side of each of `symbols` symbols, four orders to a price level, bids below 100.00 and asks above.
+// Trade logging is off so the numbers are the book's own; the trade log has its own writer thread.
+// Run with: mvn -Pjmh test-compile exec:exec
+// Pick workloads, params and profilers with e.g. -Djmh.args="OrderBookBenchmark.cancelHeavy -p depth=10000 -prof gc"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class OrderBookBenchmark {
+
+    private static final long MID = 10_000;
+    private static final int ORDERS_PER_LEVEL = 4;
+    private static final long VOLUME = 100;
+    private static final int SWEEP_LEVELS = 8;
+    private static final int SCRIPT_SIZE = 1 << 16;
+
+    @State(Scope.Thread)
+    public static class Book {
+
+        @Param({"100", "1000", "10000"})
+        public int depth;
+
+        @Param({"1", "16", "256"})
+        public int symbols;
+
+        OrderBookAPI api;
+        String[] symbolNames;
+        int levels;
+        // IDs of the resting orders, in random order, for the cancel workload to take from
+        String[] restingIds;
+        int restingCursor;
+
+        // Symbol, side and level choices drawn up front so the measured code doesn't pay for them
+        private final int[] scriptSymbol = new int[SCRIPT_SIZE];
+        private final boolean[] scriptBuy = new boolean[SCRIPT_SIZE];
+        private final int[] scriptLevel = new int[SCRIPT_SIZE];
+        private int cursor;
+
+        @Setup(Level.Iteration)
+        public void build() {
+            SplittableRandom random = new SplittableRandom(42);
+            api = new OrderBookAPI();
+            api.setTradeLogging(false);
+            levels = Math.max(SWEEP_LEVELS, depth / ORDERS_PER_LEVEL);
+            symbolNames = new String[symbols];
+            for (int s = 0; s < symbols; s++) {
+                symbolNames[s] = "SYM" + s;
+            }
+
+            restingIds = new String[symbols * levels * ORDERS_PER_LEVEL * 2];
+            int n = 0;
+            for (int order = 0; order < ORDERS_PER_LEVEL; order++) {
+                for (int level = 0; level < levels; level++) {
+                    for (int s = 0; s < symbols; s++) {
+                        restingIds[n++] = api.placeOrder("bench", symbolNames[s], bidPrice(level), VOLUME, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+                        restingIds[n++] = api.placeOrder("bench", symbolNames[s], askPrice(level), VOLUME, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+                    }
+                }
+            }
+            for (int i = restingIds.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                String id = restingIds[i];
+                restingIds[i] = restingIds[j];
+                restingIds[j] = id;
+            }
+            restingCursor = 0;
+
+            for (int i = 0; i < SCRIPT_SIZE; i++) {
+                scriptSymbol[i] = random.nextInt(symbols);
+                scriptBuy[i] = random.nextBoolean();
+                scriptLevel[i] = random.nextInt(levels);
+            }
+            cursor = 0;
+        }
+
+        // Moves to the next scripted choice
+        int next() {
+            return cursor = (cursor + 1) & (SCRIPT_SIZE - 1);
+        }
+
+        String symbol(int step) {
+            return symbolNames[scriptSymbol[step]];
+        }
+
+        boolean buy(int step) {
+            return scriptBuy[step];
+        }
+
+        int level(int step) {
+            return scriptLevel[step];
+        }
+    }
+
+    private static long bidPrice(int level) {
+        return MID - 1 - level;
+    }
+
+    private static long askPrice(int level) {
+        return MID + 1 + level;
+    }
+
+    // A resting order that does not cross, somewhere behind the touch. The book grows through the
+    // iteration, so depth is the depth it starts at.
+    @Benchmark
+    public String addOnly(Book book) {
+        int step = book.next();
+        boolean buy = book.buy(step);
+        int level = book.level(step);
+        return book.api.placeOrder("bench", book.symbol(step), buy ? bidPrice(level) : askPrice(level), VOLUME,
+                buy ? Order.Side.BUY : Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+    }
+
+    // A limit order that takes exactly the first order at the touch, then a new order joining the
+    // back of that level, so the book keeps its shape
+    @Benchmark
+    public String crossHeavy(Book book) {
+        int step = book.next();
+        String symbol = book.symbol(step);
+        OrderBookAPI api = book.api;
+        if (book.buy(step)) {
+            long ask = api.quotePrice(symbol, Order.Side.SELL);
+            api.placeOrder("bench", symbol, ask, VOLUME, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+            return api.placeOrder("bench", symbol, ask, VOLUME, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        }
+        long bid = api.quotePrice(symbol, Order.Side.BUY);
+        api.placeOrder("bench", symbol, bid, VOLUME, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        return api.placeOrder("bench", symbol, bid, VOLUME, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+    }
+
+    // Cancels a random resting order anywhere in the book and rests a new one in its place
+    @Benchmark
+    public boolean cancelHeavy(Book book) {
+        int step = book.next();
+        int slot = book.restingCursor;
+        book.restingCursor = (slot + 1) % book.restingIds.length;
+        boolean cancelled = book.api.cancelOrder(book.restingIds[slot]);
+
+        boolean buy = book.buy(step);
+        int level = book.level(step);
+        book.restingIds[slot] = book.api.placeOrder("bench", book.symbol(step), buy ? bidPrice(level) : askPrice(level), VOLUME,
+                buy ? Order.Side.BUY : Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        return cancelled;
+    }
+
+    // A market order sweeping the first few price levels of one side, priced the way the shard
+    // prices market orders, then the swept orders placed again so the next sweep finds the same book
+    @Benchmark
+    public String marketSweep(Book book) {
+        int step = book.next();
+        String symbol = book.symbol(step);
+        boolean buy = book.buy(step);
+        Order.Side side = buy ? Order.Side.BUY : Order.Side.SELL;
+        Order.Side opposite = buy ? Order.Side.SELL : Order.Side.BUY;
+        OrderBookAPI api = book.api;
+
+        long sweepVolume = SWEEP_LEVELS * ORDERS_PER_LEVEL * VOLUME;
+        String result = api.placeOrder("bench", symbol, api.quotePrice(symbol, opposite), sweepVolume, side, OrderBookAPI.Type.MarketOrder);
+
+        for (int level = 0; level < SWEEP_LEVELS; level++) {
+            long price = buy ? askPrice(level) : bidPrice(level);
+            for (int order = 0; order < ORDERS_PER_LEVEL; order++) {
+                api.placeOrder("bench", symbol, price, VOLUME, opposite, OrderBookAPI.Type.GoodTilCancel);
+            }
+        }
+        return result;
+    }
+}
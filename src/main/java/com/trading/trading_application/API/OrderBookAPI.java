@@ -1,16 +1,24 @@
 package com.trading.trading_application.API;
 
-import java.util.Date;
-import java.util.Map;
-
 import com.trading.trading_application.lib.FixedPriceOrderQueue;
+import com.trading.trading_application.lib.NameRegistry;
 import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.lib.OrderAck;
 import com.trading.trading_application.lib.OrderBook;
+import com.trading.trading_application.lib.OrderStore;
+import com.trading.trading_application.lib.OrderStoreType;
 import com.trading.trading_application.lib.StockOrders;
+import com.trading.trading_application.lib.SymbolActivity;
+import com.trading.trading_application.lib.TopOfBook;
 import com.trading.trading_application.utils.TradeLogger;
 
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+
 public class OrderBookAPI {
     private final OrderBook orderBook;
+    // Off while replaying the order journal, the trades it re-executes were logged the first time
+    private boolean tradeLogging = true;
 
     public enum Type {
         FillOrKill, GoodTilCancel, MarketOrder
@@ -21,40 +29,89 @@ public class OrderBookAPI {
             this.orderBook = new OrderBook();
         }
 
-        // 1. Place a new order
-        public String placeOrder(String userId, String stockSymbol, double price, long volume, Order.Side side, Type orderType) {
-            // TODO: Validate inputs, check business logic
+        // A partition keeping its resting orders in the given kind of store
+        public OrderBookAPI(OrderStoreType storeType) {
+            this.orderBook = new OrderBook(storeType.create());
+        }
+
+        // 1. Place a new order, price is in ticks of the stock's tick size
+        public String placeOrder(String userId, String stockSymbol, long price, long volume, Order.Side side, Type orderType) {
+            return placeOrder(null, userId, stockSymbol, price, volume, side, orderType);
+        }
+
+        // Same as above under a given order ID, a fresh one is generated when it is null
+        public String placeOrder(String orderId, String userId, String stockSymbol, long price, long volume, Order.Side side, Type orderType) {
+            return placeOrder(orderId, userId, stockSymbol, price, volume, side, orderType, null);
+        }
+
+        // Same as above, also recording the fills and final status into ack when it is not null
+        public String placeOrder(String orderId, String userId, String stockSymbol, long price, long volume, Order.Side side, Type orderType, OrderAck ack) {
+            return placeOrder(orderId, NameRegistry.USERS.keyOf(userId), NameRegistry.SYMBOLS.keyOf(stockSymbol), price, volume, side, orderType, ack);
+        }
+
+        // Same as above with the user and symbol as NameRegistry keys, as the matching shards call it
+        public String placeOrder(String orderId, int userKey, int symbolKey, long price, long volume, Order.Side side, Type orderType, OrderAck ack) {
+            if(orderId != null && !orderBook.getStore().acceptsOrderId(orderId)){
+                if(ack != null) ack.reject(orderId, "Order ID is not supported by the order store");
+                return null;
+            }
+            orderBook.recordOrder(symbolKey);
+            String result = place(orderId, userKey, symbolKey, price, volume, side, orderType, ack);
+            orderBook.publishTopOfBook(symbolKey);
+            return result;
+        }
+
+        // Matches and rests an order, for new orders and amended ones alike; only placeOrder
+        // counts it as a new order
+        private String place(String orderId, int userKey, int symbolKey, long price, long volume, Order.Side side, Type orderType, OrderAck ack) {
+            // Nothing to match and nothing to rest, a market order's price is only the last trade's
+            if(volume <= 0 || (orderType != Type.MarketOrder && price <= 0)){
+                if(ack != null) ack.reject(orderId, "Volume and limit price must be positive");
+                return null;
+            }
 
             // Check if stock to cross order with is available
 
             // We want to cross the order with stock from the opposing side
             Order.Side SIDE = side == Order.Side.BUY ? Order.Side.SELL : Order.Side.BUY;
 
-            if (!orderBook.getStockAvailability(stockSymbol, SIDE)){
+            if (!orderBook.getStockAvailability(symbolKey, SIDE)){
                 if(orderType == Type.FillOrKill){
                     // Order cannot be executed or added to order book
+                    if(ack != null) ack.reject(orderId, "Fill or kill order could not be filled completely");
                     return null;
                 }
             }
 
             // Check cross-able stock volume
-            if((orderBook.getTotalStockVolume(stockSymbol, SIDE) < volume ||
-                    orderBook.getCrossableVolume(stockSymbol, SIDE, price) < volume)
+            if((orderBook.getTotalStockVolume(symbolKey, SIDE) < volume ||
+                    orderBook.getCrossableVolume(symbolKey, SIDE, price) < volume)
                     && orderType == Type.FillOrKill){
                 // Order cannot be executed or added to order book
+                if(ack != null) ack.reject(orderId, "Fill or kill order could not be filled completely");
                 return null;
             }
 
             // The order can be either fully or partially executed
-            Order newOrder = new Order.Builder(userId)
-                    .stockSymbol(stockSymbol)
+            Order.Builder builder = new Order.Builder(NameRegistry.USERS.nameOf(userKey)).userKey(userKey);
+            if (orderId != null) {
+                builder.orderId(orderId);
+            }
+            Order newOrder = builder
+                    .stockSymbol(NameRegistry.SYMBOLS.nameOf(symbolKey))
+                    .symbolKey(symbolKey)
                     .price(price)
                     .volume(volume)
                     .side(side)
                     .build();
 
             if(orderType == Type.MarketOrder){
-                if(!executeMarketOrder(newOrder, SIDE)){
+                long unfilled = match(newOrder, SIDE, true, ack);
+                if(ack != null){
+                    // The unfilled remainder of a market order never rests
+                    ack.complete(newOrder.getOrderId(), unfilled == 0 ? OrderAck.Status.FILLED : OrderAck.Status.CANCELLED, unfilled);
+                }
+                if(unfilled > 0){
                     return "Order could be not completely filled";
                 }
                 return "Order Fulfilled";
@@ -63,48 +120,20 @@ public class OrderBookAPI {
 
             // Attempt to execute the order before adding to book as long as there are orders to cross with
             // Attempt to execute the order before adding to book as long as there are orders to cross with
-            if(!executeOrder(newOrder, SIDE)) {
+            if(!executeOrder(newOrder, SIDE, ack)) {
                 orderBook.addOrder(newOrder);
+                if(ack != null){
+                    ack.complete(newOrder.getOrderId(), ack.getFilledVolume() > 0 ? OrderAck.Status.PARTIALLY_FILLED : OrderAck.Status.RESTING, newOrder.getVolume());
+                }
                 return newOrder.getOrderId();
             }
+            if(ack != null) ack.complete(newOrder.getOrderId(), OrderAck.Status.FILLED, 0);
             return "Order Fulfilled";
 
         }
 
-        private boolean executeOrder(Order order, Order.Side SIDE){
-            long desiredVolume = order.getVolume();
-
-            StockOrders orders = orderBook.getOrdersBySide(order.getStockSymbol(), SIDE);
-
-            // Attempt to execute order to completion
-            long crossableVolume = orderBook.getCrossableVolume(order.getStockSymbol(), SIDE, order.getPrice());
-            while(desiredVolume > 0 && crossableVolume > 0){
-
-                // Poll the best offer from the book to begin order execution
-                Order topOrder = orders.pollTopOrder();
-                // Note the price at which this trade is taking place
-                orderBook.updatePrice(order.getStockSymbol(), topOrder.getPrice());
-
-                if(topOrder.getVolume() > desiredVolume){
-                    // Executes order and updates partially fulfilled order in order-book, accordingly updates volume
-                    Date now = new Date();
-                    TradeLogger.logTrade(order, topOrder, topOrder.getPrice(), desiredVolume, now);
-
-                    topOrder.adjustVolume(-desiredVolume);
-                    orders.addOrder(topOrder);
-                    desiredVolume = 0;
-                }
-                else{
-                    // Executes order, removes order from book, and accordingly updates volume
-                    Date now = new Date();
-                    TradeLogger.logTrade(order, topOrder, topOrder.getPrice(), topOrder.getVolume(), now);
-
-                    desiredVolume -= topOrder.getVolume();
-                    crossableVolume -= topOrder.getVolume();
-                }
-
-
-            }
+        private boolean executeOrder(Order order, Order.Side SIDE, OrderAck ack){
+            long desiredVolume = match(order, SIDE, false, ack);
 
             // If order still has volume remaining adjust the order before returning
             if(desiredVolume > 0) {
@@ -114,78 +143,221 @@ public class OrderBookAPI {
             return true;
         }
 
-        private boolean executeMarketOrder(Order order, Order.Side SIDE){
+        // Matching hot path: crosses the order against the best resting orders of SIDE and returns
+        // the volume left unfilled. A market order takes whatever the opposing side holds, regardless
+        // of price. Resting orders are filled in place, so a partially filled order keeps its time
+        // priority, and nothing here allocates per fill unless the request asked for an ack.
+        private long match(Order order, Order.Side SIDE, boolean market, OrderAck ack){
             long desiredVolume = order.getVolume();
 
-            StockOrders orders = orderBook.getOrdersBySide(order.getStockSymbol(), SIDE);
+            StockOrders orders = orderBook.getOrdersBySide(order.getSymbolKey(), SIDE);
+            if(orders == null) return desiredVolume;
+            OrderStore store = orderBook.getStore();
 
-            // Attempt to execute order to completion
-            long crossableVolume = orderBook.getTotalStockVolume(order.getStockSymbol(), SIDE);
-            while(desiredVolume > 0 && crossableVolume > 0){
+            long now = System.currentTimeMillis();
+            boolean buying = order.getSide() == Order.Side.BUY;
+            int fills = 0;
+            long filledVolume = 0;
+            while(desiredVolume > 0){
+                FixedPriceOrderQueue topQueue = orders.peekTopQueue();
+                if(topQueue == null) break;
 
-                // Poll the best offer from the book to begin order execution
-                Order topOrder = orders.pollTopOrder();
-                // Note the price at which this trade is taking place
-                orderBook.updatePrice(order.getStockSymbol(), topOrder.getPrice());
+                long tradePrice = topQueue.getPrice();
+                // A limit order stops once the best opposing price no longer crosses its own
+                if(!market && (buying ? tradePrice > order.getPrice() : tradePrice < order.getPrice())) break;
 
-                if(topOrder.getVolume() > desiredVolume){
-                    // Executes order and updates partially fulfilled order in order-book, accordingly updates volume
-                    Date now = new Date();
-                    TradeLogger.logTrade(order, topOrder, topOrder.getPrice(), desiredVolume, now);
+                long topOrder = topQueue.peekOrder();
+                long restingVolume = store.getVolume(topOrder);
+                long fillVolume = Math.min(desiredVolume, restingVolume);
 
-                    topOrder.adjustVolume(-desiredVolume);
-                    orders.addOrder(topOrder);
-                    desiredVolume = 0;
+                // Note the price at which this trade is taking place
+                orderBook.updatePrice(order.getSymbolKey(), tradePrice);
+                long tradeId = 0;
+                if(tradeLogging){
+                    if(store.packsOrderIds()){
+                        // The resting order's ID goes to the log as it is stored, formatted by the writer
+                        tradeId = TradeLogger.logTrade(order.getStockSymbol(), order.getOrderId(), order.getUserId(), buying,
+                                store.getOrderIdHigh(topOrder), store.getOrderIdLow(topOrder), store.getUserId(topOrder),
+                                tradePrice, fillVolume, now);
+                    }
+                    else if(buying){
+                        tradeId = TradeLogger.logTrade(order.getStockSymbol(), order.getOrderId(), order.getUserId(),
+                                store.getOrderId(topOrder), store.getUserId(topOrder), tradePrice, fillVolume, now);
+                    }
+                    else{
+                        tradeId = TradeLogger.logTrade(order.getStockSymbol(), store.getOrderId(topOrder), store.getUserId(topOrder),
+                                order.getOrderId(), order.getUserId(), tradePrice, fillVolume, now);
+                    }
+                }
+                if(ack != null){
+                    ack.addFill(order.getStockSymbol(), tradeId, tradePrice, fillVolume);
                 }
-                else{
-                    // Executes order, removes order from book, and accordingly updates volume
-                    Date now = new Date();
-                    TradeLogger.logTrade(order, topOrder, topOrder.getPrice(), topOrder.getVolume(), now);
 
-                    desiredVolume -= topOrder.getVolume();
-                    crossableVolume -= topOrder.getVolume();
+                if(fillVolume < restingVolume){
+                    // Partially fills the resting order where it stands in the queue
+                    orders.fillTopOrder(fillVolume);
+                }
+                else{
+                    // Executes order and removes it from the book
+                    orders.pollTopOrder();
+                    orderBook.removeFilledOrder(topOrder);
                 }
+                desiredVolume -= fillVolume;
+                fills++;
+                filledVolume += fillVolume;
+            }
+            if(fills > 0){
+                orderBook.recordFills(order.getSymbolKey(), fills, filledVolume);
+            }
+            return desiredVolume;
+        }
 
+        // 2. Cancel an existing order
+        public boolean cancelOrder(String orderId) {
+            // Constant time: map lookup, then unlink from the order's price level
+            long toBeDeleted = orderBook.findOrder(orderId);
+            if(toBeDeleted == OrderStore.NONE) return false;
+            int symbol = orderBook.getStore().getSymbolKey(toBeDeleted);
+            if(!orderBook.removeOrder(toBeDeleted)) return false;
+            orderBook.publishTopOfBook(symbol);
+            return true;
+        }
 
+        // 2b. Amend a resting order to a new price in ticks (0 keeps its price) and remaining volume.
+        // Only taking volume off at the same price keeps its time priority, and is done in place; any
+        // other change moves it to the back of its new level under the same ID, in this one call so
+        // nothing sees it gone, and it trades there like a new good til cancel order. A reduce-only
+        // amend is rejected unless it keeps the price and takes volume off.
+        public boolean amendOrder(String orderId, long price, long volume, boolean reduceOnly, OrderAck ack) {
+            long order = orderBook.findOrder(orderId);
+            if(order == OrderStore.NONE){
+                if(ack != null) ack.reject(orderId, "Order not found");
+                return false;
             }
-
-            // If order still has volume remaining adjust the order before returning
-            if(desiredVolume > 0) {
+            if(volume <= 0){
+                if(ack != null) ack.reject(orderId, "Amended volume must be positive");
+                return false;
+            }
+            OrderStore store = orderBook.getStore();
+            int symbol = store.getSymbolKey(order);
+            long current = store.getVolume(order);
+            if(reduceOnly && ((price > 0 && price != store.getPrice(order)) || volume > current)){
+                if(ack != null) ack.reject(orderId, "Reduce-only amend may not raise the volume or change the price");
                 return false;
             }
+            if(price <= 0 || price == store.getPrice(order)){
+                price = store.getPrice(order);
+                if(volume <= current){
+                    if(volume < current) orderBook.reduceOrder(order, current - volume);
+                    orderBook.publishTopOfBook(symbol);
+                    if(ack != null) ack.complete(orderId, OrderAck.Status.RESTING, volume);
+                    return true;
+                }
+            }
+            int user = NameRegistry.USERS.keyOf(store.getUserId(order));
+            Order.Side side = store.getSide(order);
+            orderBook.removeOrder(order);
+            place(orderId, user, symbol, price, volume, side, Type.GoodTilCancel, ack);
+            orderBook.publishTopOfBook(symbol);
             return true;
         }
 
-        // 2. Cancel an existing order
-        public boolean cancelOrder(String orderId) {
-            Order toBeDeleted = orderBook.getOrder(orderId);
-            return orderBook.removeOrder(toBeDeleted);
+        // Whether the order is resting in this partition
+        public boolean hasOrder(String orderId) {
+            return orderId != null && orderBook.findOrder(orderId) != OrderStore.NONE;
+        }
+
+        // 3. Get the best buy or sell price of a current stock in ticks, -1 if that side is empty.
+        // Reads the book itself, so only the thread that owns it may call this; others use getTopOfBook.
+        public long quotePrice(String stockSymbol, Order.Side side) {
+            return quotePrice(NameRegistry.SYMBOLS.find(stockSymbol), side);
         }
 
-        // 3. Get the best buy or sell price of a current stock
-        public double quotePrice(String stockSymbol, Order.Side side) {
-            Double price = (side == Order.Side.BUY)
+        // Same as above by NameRegistry key
+        public long quotePrice(int stockSymbol, Order.Side side) {
+            return (side == Order.Side.BUY)
                     ? orderBook.getBestBid(stockSymbol)
                     : orderBook.getBestAsk(stockSymbol);
-            return price != null ? price : -1.0;
         }
 
 
-    // 4. Get the volume of a stock at a specific price and side
-        public long getVolumeAtPrice(String symbol, double price, Order.Side side){
-            StockOrders bookside = orderBook.getOrdersBySide(symbol, side);
+    // 4. Get the volume of a stock at a specific price (in ticks) and side
+        public long getVolumeAtPrice(String symbol, long price, Order.Side side){
+            StockOrders bookside = orderBook.getOrdersBySide(NameRegistry.SYMBOLS.find(symbol), side);
             if(bookside != null) {
-                Map<Double, FixedPriceOrderQueue> prices = bookside.getPriceToQueueMap();
-                if (prices.get(price) != null) {
-                    long volume = prices.get(price).getTotalVolume();
-                    return volume;
+                FixedPriceOrderQueue queue = bookside.getLevel(price);
+                if (queue != null) {
+                    return queue.getTotalVolume();
                 }
             }
             return 0;
         }
 
-        public double getStockPrice(String symbol){
-            return orderBook.getPrice(symbol);
+        // 5. Get the total volume resting on a side at or better than a price (in ticks):
+        // bids at or above it, asks at or below it. Answered from the depth index in O(log levels).
+        public long getDepthThroughPrice(String symbol, long price, Order.Side side){
+            StockOrders bookside = orderBook.getOrdersBySide(NameRegistry.SYMBOLS.find(symbol), side);
+            return bookside != null ? bookside.getVolumeThrough(price) : 0;
+        }
+
+        // Best n levels of one side in ticks, best first, returns how many were filled in
+        public int getTopLevels(String symbol, Order.Side side, int n, long[] prices, long[] volumes){
+            return getTopLevels(NameRegistry.SYMBOLS.find(symbol), side, n, prices, volumes);
+        }
+
+        public int getTopLevels(int symbol, Order.Side side, int n, long[] prices, long[] volumes){
+            StockOrders orders = orderBook.getOrdersBySide(symbol, side);
+            return orders != null ? orders.topLevels(n, prices, volumes) : 0;
+        }
+
+        // Changes whenever the depth of that side changes, 0 while the side has never had orders
+        public long getDepthVersion(String symbol, Order.Side side){
+            return getDepthVersion(NameRegistry.SYMBOLS.find(symbol), side);
+        }
+
+        public long getDepthVersion(int symbol, Order.Side side){
+            StockOrders orders = orderBook.getOrdersBySide(symbol, side);
+            return orders != null ? orders.getVersion() : 0;
+        }
+
+        // Best bid and ask, their sizes and the last price as last published, safe to call from any thread
+        public TopOfBook.Quote getTopOfBook(String symbol){
+            return orderBook.getTopOfBook(symbol);
+        }
+
+        // Last execution price in ticks, 0 if the stock has not traded yet
+        public long getStockPrice(String symbol){
+            return orderBook.getPrice(NameRegistry.SYMBOLS.find(symbol));
+        }
+
+        public void setTradeLogging(boolean enabled){
+            this.tradeLogging = enabled;
+        }
+
+        // Puts a recovered order straight back on the book without matching it
+        public void restoreOrder(Order order){
+            orderBook.addOrder(order);
+            orderBook.publishTopOfBook(order.getSymbolKey());
+        }
+
+        public void restoreStockPrice(String symbol, long price){
+            int key = NameRegistry.SYMBOLS.keyOf(symbol);
+            orderBook.updatePrice(key, price);
+            orderBook.publishTopOfBook(key);
+        }
+
+        // Resting orders in an order that restoreOrder turns back into the same book
+        public void forEachRestingOrder(Consumer<Order> action){
+            orderBook.forEachRestingOrder(action);
+        }
+
+        // Per-symbol counters and book sides, safe to call from any thread
+        public void forEachSymbolActivity(Consumer<SymbolActivity> action){
+            orderBook.forEachActivity(action);
+        }
+
+        public void forEachStockPrice(ObjLongConsumer<String> action){
+            orderBook.forEachLastPrice(action);
         }
 
         public void printOrderBook(){
@@ -1,16 +1,62 @@
 package com.trading.trading_application.API.Testing;
 
 import com.trading.trading_application.API.OrderBookAPI;
+import com.trading.trading_application.gateway.BinaryProtocol;
+import com.trading.trading_application.gateway.OrderGateway;
+import com.trading.trading_application.lib.DepthIndex;
+import com.trading.trading_application.lib.DepthUpdate;
+import com.trading.trading_application.lib.NameRegistry;
 import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.lib.OrderAck;
+import com.trading.trading_application.lib.OrderStoreType;
+import com.trading.trading_application.lib.PriceLevelType;
+import com.trading.trading_application.lib.SymbolActivity;
+import com.trading.trading_application.lib.TickSize;
+import com.trading.trading_application.lib.TopOfBook;
+import com.trading.trading_application.lib.TradeRequest;
+import com.trading.trading_application.service.Admission;
+import com.trading.trading_application.service.DepthSubscription;
+import com.trading.trading_application.service.MatchingShard;
+import com.trading.trading_application.service.ShardPersistence;
+import com.trading.trading_application.service.TradeRequestProcessor;
+import com.trading.trading_application.utils.LatencyHistogram;
+import com.trading.trading_application.utils.OrderJournal;
+import com.trading.trading_application.utils.OrderJournalReader;
+import com.trading.trading_application.utils.TradeLogger;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class OrderBookAPITest {
 
     private OrderBookAPI api;
 
+    // Prices are passed to the book in ticks of 0.01
+    private static long px(double price) {
+        return TickSize.of(0.01).toTicks(price);
+    }
+
     @BeforeEach
     public void setup() {
         api = new OrderBookAPI();
@@ -19,132 +65,1106 @@ public class OrderBookAPITest {
     @Test
     public void testBasicOrderPlacementAndQuerying() {
         // Place BUY orders for AAPL
-        String buy1 = api.placeOrder("u1", "AAPL", 150.0, 100, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
-        String buy2 = api.placeOrder("u2", "AAPL", 152.0, 200, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        String buy1 = api.placeOrder("u1", "AAPL", px(150.0), 100, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        String buy2 = api.placeOrder("u2", "AAPL", px(152.0), 200, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
 
         // Place SELL orders for AAPL
-        String sell1 = api.placeOrder("u3", "AAPL", 155.0, 50, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
-        String sell2 = api.placeOrder("u4", "AAPL", 154.0, 75, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        String sell1 = api.placeOrder("u3", "AAPL", px(155.0), 50, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        String sell2 = api.placeOrder("u4", "AAPL", px(154.0), 75, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
 
         // Place orders for GOOG
-        api.placeOrder("u5", "GOOG", 2800.0, 300, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
-        api.placeOrder("u6", "GOOG", 2810.0, 150, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u5", "GOOG", px(2800.0), 300, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u6", "GOOG", px(2810.0), 150, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
 
         // === AAPL Checks ===
-        assertEquals(152.0, api.quotePrice("AAPL", Order.Side.BUY), 0.001, "Best AAPL bid should be 152.0");
-        assertEquals(154.0, api.quotePrice("AAPL", Order.Side.SELL), 0.001, "Best AAPL ask should be 154.0");
+        assertEquals(px(152.0), api.quotePrice("AAPL", Order.Side.BUY), "Best AAPL bid should be 152.0");
+        assertEquals(px(154.0), api.quotePrice("AAPL", Order.Side.SELL), "Best AAPL ask should be 154.0");
 
-        assertEquals(200L, api.getVolumeAtPrice("AAPL", 152.0, Order.Side.BUY), "Volume at AAPL 152.0 should be 200");
-        assertEquals(75L, api.getVolumeAtPrice("AAPL", 154.0, Order.Side.SELL), "Volume at AAPL 154.0 should be 75");
+        assertEquals(200L, api.getVolumeAtPrice("AAPL", px(152.0), Order.Side.BUY), "Volume at AAPL 152.0 should be 200");
+        assertEquals(75L, api.getVolumeAtPrice("AAPL", px(154.0), Order.Side.SELL), "Volume at AAPL 154.0 should be 75");
 
         // === GOOG Checks ===
-        assertEquals(2800.0, api.quotePrice("GOOG", Order.Side.BUY), 0.001, "Best GOOG bid should be 2800.0");
-        assertEquals(2810.0, api.quotePrice("GOOG", Order.Side.SELL), 0.001, "Best GOOG ask should be 2810.0");
+        assertEquals(px(2800.0), api.quotePrice("GOOG", Order.Side.BUY), "Best GOOG bid should be 2800.0");
+        assertEquals(px(2810.0), api.quotePrice("GOOG", Order.Side.SELL), "Best GOOG ask should be 2810.0");
 
-        assertEquals(300L, api.getVolumeAtPrice("GOOG", 2800.0, Order.Side.BUY), "Volume at GOOG 2800.0 should be 300");
-        assertEquals(150L, api.getVolumeAtPrice("GOOG", 2810.0, Order.Side.SELL), "Volume at GOOG 2810.0 should be 150");
+        assertEquals(300L, api.getVolumeAtPrice("GOOG", px(2800.0), Order.Side.BUY), "Volume at GOOG 2800.0 should be 300");
+        assertEquals(150L, api.getVolumeAtPrice("GOOG", px(2810.0), Order.Side.SELL), "Volume at GOOG 2810.0 should be 150");
     }
 
     @Test
     public void testCancelOrderAndVolumeUpdate() {
-        String id = api.placeOrder("u1", "MSFT", 310.0, 120, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        String id = api.placeOrder("u1", "MSFT", px(310.0), 120, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
 
-        assertEquals(120L, api.getVolumeAtPrice("MSFT", 310.0, Order.Side.SELL), "Initial volume should be 120");
+        assertEquals(120L, api.getVolumeAtPrice("MSFT", px(310.0), Order.Side.SELL), "Initial volume should be 120");
         boolean removed = api.cancelOrder(id);
         assertTrue(removed, "Order should be cancelled");
 
-        assertEquals(0L, api.getVolumeAtPrice("MSFT", 310.0, Order.Side.SELL), "Volume should be 0 after cancel");
-        assertEquals(-1.0, api.quotePrice("MSFT", Order.Side.SELL), "No best price after cancellation");
+        assertEquals(0L, api.getVolumeAtPrice("MSFT", px(310.0), Order.Side.SELL), "Volume should be 0 after cancel");
+        assertEquals(-1L, api.quotePrice("MSFT", Order.Side.SELL), "No best price after cancellation");
+    }
+
+    @Test
+    public void testNearlyEqualPricesShareOneLevel() {
+        // Decimal noise must not split a price level once prices are converted to ticks
+        api.placeOrder("u1", "AAPL", px(152.1), 100, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u2", "AAPL", px(152.10000001), 50, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+
+        assertEquals(15210L, api.quotePrice("AAPL", Order.Side.BUY), "152.1 should be 15210 ticks of 0.01");
+        assertEquals(150L, api.getVolumeAtPrice("AAPL", 15210L, Order.Side.BUY), "Both orders should rest on the same level");
+        assertEquals(152.1, TickSize.of(0.01).toPrice(15210L), "Ticks should convert back to the exact decimal price");
+    }
+
+    @Test
+    public void testCancelFromMiddleOfLevel() {
+        api.placeOrder("u1", "META", px(480.0), 10, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        String middle = api.placeOrder("u2", "META", px(480.0), 20, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u3", "META", px(480.0), 30, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+
+        assertTrue(api.cancelOrder(middle), "Middle order should be cancelled");
+        assertFalse(api.cancelOrder(middle), "Order cannot be cancelled twice");
+        assertFalse(api.cancelOrder("unknown"), "Unknown orders cannot be cancelled");
+        assertEquals(40L, api.getVolumeAtPrice("META", px(480.0), Order.Side.SELL), "Only the cancelled volume should leave the level");
+
+        // The cancelled order must really be gone from the queue, 40 fills exactly the remaining two
+        api.placeOrder("u4", "META", px(480.0), 40, Order.Side.BUY, OrderBookAPI.Type.FillOrKill);
+        assertEquals(0L, api.getVolumeAtPrice("META", px(480.0), Order.Side.SELL), "Level should be fully consumed");
+        assertEquals(-1L, api.quotePrice("META", Order.Side.SELL), "No asks should remain");
+    }
+
+    @Test
+    public void testDepthThroughPrice() {
+        api.placeOrder("u1", "ORCL", px(120.0), 10, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u2", "ORCL", px(121.0), 20, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        String far = api.placeOrder("u3", "ORCL", px(125.0), 40, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u4", "ORCL", px(119.0), 5, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u5", "ORCL", px(118.0), 7, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+
+        assertEquals(30L, api.getDepthThroughPrice("ORCL", px(124.0), Order.Side.SELL), "Asks at or below 124.0");
+        assertEquals(70L, api.getDepthThroughPrice("ORCL", px(125.0), Order.Side.SELL), "Asks at or below 125.0");
+        assertEquals(12L, api.getDepthThroughPrice("ORCL", px(118.0), Order.Side.BUY), "Bids at or above 118.0");
+        assertEquals(5L, api.getDepthThroughPrice("ORCL", px(118.5), Order.Side.BUY), "Bids at or above 118.5");
+
+        // Fills and cancels must keep the index in step with the book
+        api.placeOrder("u6", "ORCL", px(120.0), 4, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        api.cancelOrder(far);
+        assertEquals(26L, api.getDepthThroughPrice("ORCL", px(200.0), Order.Side.SELL), "Asks after a partial fill and a cancel");
+    }
+
+    @Test
+    public void testPartialFillKeepsTimePriority() {
+        String first = api.placeOrder("u1", "AMD", px(160.0), 100, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u2", "AMD", px(160.0), 50, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+
+        // Partially fills the first order, which must stay at the front of the level
+        api.placeOrder("u3", "AMD", px(160.0), 30, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        assertEquals(120L, api.getVolumeAtPrice("AMD", px(160.0), Order.Side.SELL), "Level volume should drop by the fill");
+
+        // The next 70 shares come entirely from the first order, cancelling it afterwards must fail
+        api.placeOrder("u4", "AMD", px(160.0), 70, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        assertFalse(api.cancelOrder(first), "First order should have been filled before the second one");
+        assertEquals(50L, api.getVolumeAtPrice("AMD", px(160.0), Order.Side.SELL), "Second order should be untouched");
+    }
+
+    @Test
+    public void testMatchingDoesNotAllocatePerFill() {
+        assertNoAllocationPerFill(api);
+    }
+
+    // Resting order IDs go to the trade log as their UUID halves, not formatted per fill
+    @Test
+    public void testOffHeapMatchingDoesNotAllocatePerFill() {
+        assertNoAllocationPerFill(new OrderBookAPI(OrderStoreType.OFF_HEAP));
+    }
+
+    private void assertNoAllocationPerFill(OrderBookAPI api) {
+        // Warm up so the matching path is compiled before measuring
+        for (int i = 0; i < 50; i++) {
+            sweepRestingAsks(api, 200);
+        }
+
+        long fewFills = sweepRestingAsks(api, 10);
+        long manyFills = sweepRestingAsks(api, 2010);
+        double bytesPerFill = (manyFills - fewFills) / 2000.0;
+        assertTrue(bytesPerFill < 1.0, "Matching allocated " + bytesPerFill + " bytes per fill");
+    }
+
+    // Rests one-share asks on distinct levels, then measures the bytes allocated by a single buy
+    // order that sweeps all of them
+    private long sweepRestingAsks(OrderBookAPI api, int fills) {
+        for (int i = 0; i < fills; i++) {
+            api.placeOrder("seller", "SWEEP", px(100.0) + i, 1, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        api.placeOrder("buyer", "SWEEP", px(100.0) + fills, fills, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        assertEquals(-1L, api.quotePrice("SWEEP", Order.Side.SELL), "Sweep should consume every resting ask");
+        return allocated;
     }
 
     @Test
     public void testMultipleOrdersSamePrice() {
-        api.placeOrder("u1", "NFLX", 500.0, 100, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
-        api.placeOrder("u2", "NFLX", 500.0, 200, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u1", "NFLX", px(500.0), 100, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u2", "NFLX", px(500.0), 200, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
 
-        assertEquals(500.0, api.quotePrice("NFLX", Order.Side.BUY), 0.001);
-        assertEquals(300L, api.getVolumeAtPrice("NFLX", 500.0, Order.Side.BUY), "Total volume at 500.0 should be 300");
+        assertEquals(px(500.0), api.quotePrice("NFLX", Order.Side.BUY));
+        assertEquals(300L, api.getVolumeAtPrice("NFLX", px(500.0), Order.Side.BUY), "Total volume at 500.0 should be 300");
     }
 
     @Test
     public void testOrderTypes_FOK_and_GTC() {
         // Setup: Add a SELL order for TSLA at 700.0, 100 shares (GTC)
-        api.placeOrder("seller1", "TSLA", 700.0, 100, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("seller1", "TSLA", px(700.0), 100, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
 
 
         // === FOK Test: Should succeed ===
-        String fokSuccess = api.placeOrder("buyer1", "TSLA", 700.0, 100, Order.Side.BUY, OrderBookAPI.Type.FillOrKill);
+        String fokSuccess = api.placeOrder("buyer1", "TSLA", px(700.0), 100, Order.Side.BUY, OrderBookAPI.Type.FillOrKill);
         assertNotNull(fokSuccess, "FOK order should succeed when fully matchable");
-        assertEquals(0L, api.getVolumeAtPrice("TSLA", 700.0, Order.Side.SELL), "Volume should be 0 after FOK match");
+        assertEquals(0L, api.getVolumeAtPrice("TSLA", px(700.0), Order.Side.SELL), "Volume should be 0 after FOK match");
 
         // Setup again for failure test
-        api.placeOrder("seller2", "TSLA", 705.0, 50, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("seller2", "TSLA", px(705.0), 50, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
 
         // === FOK Test: Should fail ===
-        String fokFail = api.placeOrder("buyer2", "TSLA", 705.0, 100, Order.Side.BUY, OrderBookAPI.Type.FillOrKill);
+        String fokFail = api.placeOrder("buyer2", "TSLA", px(705.0), 100, Order.Side.BUY, OrderBookAPI.Type.FillOrKill);
         assertNull(fokFail, "FOK order should fail if full volume is not available");
-        assertEquals(50L, api.getVolumeAtPrice("TSLA", 705.0, Order.Side.SELL), "Volume should remain unchanged after failed FOK");
+        assertEquals(50L, api.getVolumeAtPrice("TSLA", px(705.0), Order.Side.SELL), "Volume should remain unchanged after failed FOK");
 
         // === GTC Test: Always accepted and added ===
-        String gtcOrder = api.placeOrder("buyer3", "TSLA", 695.0, 70, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        String gtcOrder = api.placeOrder("buyer3", "TSLA", px(695.0), 70, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
         assertNotNull(gtcOrder, "GTC order should always be placed");
-        assertEquals(70L, api.getVolumeAtPrice("TSLA", 695.0, Order.Side.BUY), "GTC order volume should be reflected");
+        assertEquals(70L, api.getVolumeAtPrice("TSLA", px(695.0), Order.Side.BUY), "GTC order volume should be reflected");
     }
 
     @Test
     public void testCrossingOrdersAndDifferentTypes() {
         // === TSLA ===
         // GoodTilCancel Buy @ 700 x 100
-        api.placeOrder("u1", "TSLA", 700.0, 100, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u1", "TSLA", px(700.0), 100, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
         // FOK Sell @ 700 x 100 (should match fully)
-        String sellFOK1 = api.placeOrder("u2", "TSLA", 700.0, 100, Order.Side.SELL, OrderBookAPI.Type.FillOrKill);
+        String sellFOK1 = api.placeOrder("u2", "TSLA", px(700.0), 100, Order.Side.SELL, OrderBookAPI.Type.FillOrKill);
         assertNotNull(sellFOK1, "TSLA sell FOK should match and succeed");
 
         // FOK Buy @ 695 x 100 (no matching sell, should fail)
-        String buyFOKFail = api.placeOrder("u3", "TSLA", 695.0, 100, Order.Side.BUY, OrderBookAPI.Type.FillOrKill);
+        String buyFOKFail = api.placeOrder("u3", "TSLA", px(695.0), 100, Order.Side.BUY, OrderBookAPI.Type.FillOrKill);
         assertNull(buyFOKFail, "TSLA buy FOK at 695 should fail (no sellers)");
 
         // === AMZN ===
         // GoodTilCancel Sell @ 3300 x 50
-        api.placeOrder("u4", "AMZN", 3300.0, 50, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u4", "AMZN", px(3300.0), 50, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
         // GoodTilCancel Buy @ 3305 x 30 (partial match)
-        String buyGTC = api.placeOrder("u5", "AMZN", 3305.0, 30, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        String buyGTC = api.placeOrder("u5", "AMZN", px(3305.0), 30, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
         assertNotNull(sellFOK1, "AMZN buy GTC should match and succeed");
         // Remaining: Sell 3300 x 20
 
         // === NFLX ===
         // Add Buy and Sell orders at different prices
-        api.placeOrder("u6", "NFLX", 510.0, 60, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
-        api.placeOrder("u7", "NFLX", 515.0, 90, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
-        api.placeOrder("u8", "NFLX", 520.0, 30, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
-        api.placeOrder("u9", "NFLX", 515.0, 40, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel); // matches 90 at 515. Remainder should be 50
+        api.placeOrder("u6", "NFLX", px(510.0), 60, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u7", "NFLX", px(515.0), 90, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u8", "NFLX", px(520.0), 30, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u9", "NFLX", px(515.0), 40, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel); // matches 90 at 515. Remainder should be 50
 
         // === TSLA Checks ===
-        assertEquals(-1.0, api.quotePrice("TSLA", Order.Side.BUY), "No TSLA buy orders left");
-        assertEquals(-1.0, api.quotePrice("TSLA", Order.Side.SELL), "No TSLA sell orders left");
+        assertEquals(-1L, api.quotePrice("TSLA", Order.Side.BUY), "No TSLA buy orders left");
+        assertEquals(-1L, api.quotePrice("TSLA", Order.Side.SELL), "No TSLA sell orders left");
 
         // === AMZN Checks ===
-        assertEquals(3300.0, api.quotePrice("AMZN", Order.Side.SELL), 0.001, "Remaining AMZN ask should be 3300");
-        assertEquals(20L, api.getVolumeAtPrice("AMZN", 3300.0, Order.Side.SELL), "Remaining AMZN ask volume should be 20");
-        assertEquals(-1.0, api.quotePrice("AMZN", Order.Side.BUY), "All AMZN buys should be filled");
+        assertEquals(px(3300.0), api.quotePrice("AMZN", Order.Side.SELL), "Remaining AMZN ask should be 3300");
+        assertEquals(20L, api.getVolumeAtPrice("AMZN", px(3300.0), Order.Side.SELL), "Remaining AMZN ask volume should be 20");
+        assertEquals(-1L, api.quotePrice("AMZN", Order.Side.BUY), "All AMZN buys should be filled");
 
         // === NFLX Checks ===
-        assertEquals(515.0, api.quotePrice("NFLX", Order.Side.BUY), 0.001, "Best NFLX buy should be 510");
-        assertEquals(60L, api.getVolumeAtPrice("NFLX", 510.0, Order.Side.BUY), "Volume at 510 should be 60");
-        assertEquals(520.0, api.quotePrice("NFLX", Order.Side.SELL), 0.001, "Best NFLX sell should be 520");
-        assertEquals(30L, api.getVolumeAtPrice("NFLX", 520.0, Order.Side.SELL), "Remaining NFLX ask should be 30");
+        assertEquals(px(515.0), api.quotePrice("NFLX", Order.Side.BUY), "Best NFLX buy should be 510");
+        assertEquals(60L, api.getVolumeAtPrice("NFLX", px(510.0), Order.Side.BUY), "Volume at 510 should be 60");
+        assertEquals(px(520.0), api.quotePrice("NFLX", Order.Side.SELL), "Best NFLX sell should be 520");
+        assertEquals(30L, api.getVolumeAtPrice("NFLX", px(520.0), Order.Side.SELL), "Remaining NFLX ask should be 30");
+    }
+
+    @Test
+    public void testLadderPriceLevels() {
+        PriceLevelType.register("LADR", PriceLevelType.LADDER);
+
+        api.placeOrder("u1", "LADR", px(100.0), 10, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u2", "LADR", px(101.0), 20, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        // Far outside the initial ladder window, must still be found and ordered correctly
+        api.placeOrder("u3", "LADR", px(90000.0), 30, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        assertEquals(px(100.0), api.quotePrice("LADR", Order.Side.SELL), "Best ask should be 100.0");
+
+        // Sweep the two near levels, the far level becomes the best ask
+        api.placeOrder("u4", "LADR", px(101.0), 30, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        assertEquals(px(90000.0), api.quotePrice("LADR", Order.Side.SELL), "Best ask should move to 90000.0");
+        assertEquals(30L, api.getVolumeAtPrice("LADR", px(90000.0), Order.Side.SELL), "Far level should keep its volume");
+        assertEquals(-1L, api.quotePrice("LADR", Order.Side.BUY), "Buy order should be fully filled");
     }
 
     @Test
     public void testMarketOrders() {
-        api.placeOrder("u1", "MSFT", 310.0, 20, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
-        api.placeOrder("u2", "MSFT", 312.0, 20, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
-        api.placeOrder("u3", "MSFT", 314.0, 20, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
-        api.placeOrder("u4", "MSFT", 311.0, 50, Order.Side.SELL, OrderBookAPI.Type.MarketOrder);
+        api.placeOrder("u1", "MSFT", px(310.0), 20, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u2", "MSFT", px(312.0), 20, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u3", "MSFT", px(314.0), 20, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("u4", "MSFT", px(311.0), 50, Order.Side.SELL, OrderBookAPI.Type.MarketOrder);
+
+        assertEquals(10L, api.getVolumeAtPrice("MSFT", px(310.0), Order.Side.BUY), "There should be 10 left on buy side");
+        assertEquals(0L, api.getVolumeAtPrice("MSFT", px(310.0), Order.Side.SELL), "There should be 0 on sell side");
+        assertEquals(px(310.0), api.getStockPrice("MSFT"));
+    }
 
-        assertEquals(10L, api.getVolumeAtPrice("MSFT", 310, Order.Side.BUY), "There should be 10 left on buy side");
-        assertEquals(0L, api.getVolumeAtPrice("MSFT", 310, Order.Side.SELL), "There should be 0 on sell side");
-        assertEquals(310.0, api.getStockPrice("MSFT"));
+    @Test
+    public void testOrderJournalRollsAndReopens() throws IOException {
+        Path directory = Files.createTempDirectory("journal-test");
+        // Header plus three records per segment, so ten records span four segments
+        long segmentSize = 4L * OrderJournal.RECORD_SIZE;
+        try (OrderJournal journal = new OrderJournal(directory, segmentSize, OrderJournal.FsyncPolicy.NONE, 0)) {
+            for (int i = 0; i < 6; i++) {
+                journal.append(journalRequest(i), 1_000 + i);
+            }
+        }
+        // A reopened journal continues the sequence after the last complete record
+        try (OrderJournal journal = new OrderJournal(directory, segmentSize, OrderJournal.FsyncPolicy.EVERY_BATCH, 0)) {
+            assertEquals(7L, journal.getNextSequence(), "Sequence should continue after reopening");
+            for (int i = 6; i < 10; i++) {
+                journal.append(journalRequest(i), 1_000 + i);
+            }
+            journal.endBatch();
+        }
+
+        List<String> decoded = new ArrayList<>();
+        long count = OrderJournalReader.forEach(directory, 4, entry -> decoded.add(entry.sequence + " " + entry.timestamp + " "
+                + entry.request.userId + " " + entry.request.price + " " + entry.request.side + " " + entry.request.orderType));
+        assertEquals(7L, count, "Records from sequence 4 on should be read back");
+        assertEquals("4 1003 user3 103 SELL GoodTilCancel", decoded.get(0));
+        assertEquals("10 1009 user9 109 SELL GoodTilCancel", decoded.get(6));
+    }
+
+    @Test
+    public void testJournalDropsSegmentsSnapshotsCover() throws IOException {
+        Path directory = Files.createTempDirectory("journal-retention-test");
+        // Three records per segment: sequences 1, 4, 7 and 10 start one each
+        try (OrderJournal journal = new OrderJournal(directory, 4L * OrderJournal.RECORD_SIZE, OrderJournal.FsyncPolicy.NONE, 0)) {
+            for (int i = 0; i < 10; i++) {
+                journal.append(journalRequest(i), 1_000 + i);
+            }
+            assertEquals(1, OrderJournal.deleteSegmentsBefore(directory, 6), "Only the segment ending before 6 is covered");
+            assertEquals(1, OrderJournal.deleteSegmentsBefore(directory, 7));
+            assertEquals(1, OrderJournal.deleteSegmentsBefore(directory, 100), "The newest segment is kept");
+            journal.append(journalRequest(10), 1_010);
+        }
+        List<Long> sequences = new ArrayList<>();
+        OrderJournalReader.forEach(directory, 1, entry -> sequences.add(entry.sequence));
+        assertEquals(List.of(10L, 11L), sequences);
     }
 
+    @Test
+    public void testOrdersWithoutVolumeOrPriceAreRejected() {
+        for (long volume : new long[]{0, -5}) {
+            OrderAck ack = new OrderAck();
+            assertNull(api.placeOrder(null, "user", "VOL", px(10.0), volume, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel, ack));
+            assertEquals(OrderAck.Status.REJECTED, ack.getStatus(), "No volume should not count as filled");
+        }
+        OrderAck limit = new OrderAck();
+        assertNull(api.placeOrder(null, "user", "VOL", 0, 10, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel, limit));
+        assertEquals(OrderAck.Status.REJECTED, limit.getStatus());
+        OrderAck market = new OrderAck();
+        api.placeOrder(null, "user", "VOL", 0, 10, Order.Side.BUY, OrderBookAPI.Type.MarketOrder, market);
+        assertEquals(OrderAck.Status.CANCELLED, market.getStatus(), "A market order needs no price of its own");
+        assertEquals(-1L, api.quotePrice("VOL", Order.Side.BUY), "Nothing should rest");
+    }
+
+    @Test
+    public void testJournalFieldWidthsAreCheckedUpFront() {
+        OrderJournal.checkFields("SIXTEENCHARSYMBL", "u".repeat(32), "o".repeat(40));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> OrderJournal.checkFields("SEVENTEENCHARSYMB", "u1", null));
+        assertEquals("stockSymbol holds at most 16 characters", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> OrderJournal.checkFields("AAPL", "u".repeat(33), null));
+        assertThrows(IllegalArgumentException.class, () -> OrderJournal.checkFields("AAPL", null, "o".repeat(41)));
+        // Written a byte per character, anything else would replay under another name
+        e = assertThrows(IllegalArgumentException.class, () -> OrderJournal.checkFields("AAPL", "us\u00e9r", null));
+        assertEquals("userId must be ASCII", e.getMessage());
+    }
+
+    private TradeRequest journalRequest(int i) {
+        TradeRequest request = new TradeRequest(TradeRequest.RequestType.PLACE_ORDER);
+        request.userId = "user" + i;
+        request.stockSymbol = "JRNL";
+        request.price = 100 + i;
+        request.volume = 10;
+        request.side = i % 2 == 0 ? Order.Side.BUY : Order.Side.SELL;
+        request.orderType = OrderBookAPI.Type.GoodTilCancel;
+        return request;
+    }
+
+    @Test
+    public void testTradeIdsAreSequentialAndCommitted() throws InterruptedException {
+        Order buyer = new Order.Builder("buyer").stockSymbol("TID").price(px(10.0)).volume(1).side(Order.Side.BUY).build();
+        Order seller = new Order.Builder("seller").stockSymbol("TID").price(px(10.0)).volume(1).side(Order.Side.SELL).build();
+
+        long first = TradeLogger.logTrade(buyer, seller, px(10.0), 1, System.currentTimeMillis());
+        long last = first;
+        for (int i = 0; i < 100; i++) {
+            long next = TradeLogger.logTrade(buyer, seller, px(10.0), 1, System.currentTimeMillis());
+            assertTrue(next > last, "Trade IDs should increase");
+            last = next;
+        }
+        assertTrue(TradeLogger.awaitCommitted(last, 5, TimeUnit.SECONDS), "Trades should be committed within the latency bound");
+        assertTrue(TradeLogger.getCommittedTradeId() >= last);
+    }
+
+    @Test
+    public void testTradeLogShowsEveryTick() throws Exception {
+        assertEquals(2, TickSize.of(0.01).getDecimals());
+        assertEquals(2, TickSize.of(0.25).getDecimals());
+        assertEquals(3, TickSize.of(0.005).getDecimals());
+        assertEquals(2, TickSize.of(5).getDecimals());
+
+        TickSize.register("FINE", 0.005);
+        Order buyer = new Order.Builder("buyer").stockSymbol("FINE").price(2001).volume(1).side(Order.Side.BUY).build();
+        Order seller = new Order.Builder("seller").stockSymbol("FINE").price(2001).volume(1).side(Order.Side.SELL).build();
+        long tradeId = TradeLogger.logTrade(buyer, seller, 2001, 1, System.currentTimeMillis());
+        assertTrue(TradeLogger.awaitCommitted(tradeId, 5, TimeUnit.SECONDS));
+        String line = Files.readAllLines(TradeLogger.getLogFile()).stream()
+                .filter(l -> l.startsWith(String.format("%012d ", tradeId))).findFirst().orElseThrow();
+        assertTrue(line.contains(" FINE 10.005 1 "), line);
+    }
+
+    @Test
+    public void testTradeLogFormatsPackedOrderIds() throws Exception {
+        OrderBookAPI offHeap = new OrderBookAPI(OrderStoreType.OFF_HEAP);
+        String resting = offHeap.placeOrder("seller", "PACK", px(10.0), 5, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        OrderAck ack = new OrderAck();
+        offHeap.placeOrder(null, "buyer", "PACK", px(10.0), 5, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel, ack);
+        long tradeId = ack.getFills().get(0).getTradeId();
+        assertTrue(TradeLogger.awaitCommitted(tradeId, 5, TimeUnit.SECONDS));
+        String line = Files.readAllLines(TradeLogger.getLogFile()).stream()
+                .filter(l -> l.startsWith(String.format("%012d ", tradeId))).findFirst().orElseThrow();
+        assertTrue(line.endsWith(" " + ack.getOrderId() + " buyer " + resting + " seller"), line);
+    }
+
+    @Test
+    public void testTradeLoggerCommitsOnShutdownAndRestarts() throws InterruptedException {
+        Order buyer = new Order.Builder("buyer").stockSymbol("TLS").price(px(10.0)).volume(1).side(Order.Side.BUY).build();
+        Order seller = new Order.Builder("seller").stockSymbol("TLS").price(px(10.0)).volume(1).side(Order.Side.SELL).build();
+
+        long before = TradeLogger.logTrade(buyer, seller, px(10.0), 1, System.currentTimeMillis());
+        TradeLogger.shutdown();
+        assertTrue(TradeLogger.getCommittedTradeId() >= before, "Shutdown should commit the pending trades");
+
+        long after = TradeLogger.logTrade(buyer, seller, px(10.0), 1, System.currentTimeMillis());
+        assertEquals(before + 1, after, "Trade IDs should continue after a restart");
+        assertTrue(TradeLogger.awaitCommitted(after, 5, TimeUnit.SECONDS), "A trade after shutdown should start the writer again");
+    }
+
+    @Test
+    public void testShardRecoversFromSnapshotAndJournal() throws IOException {
+        Path root = Files.createTempDirectory("recovery-test");
+        ShardPersistence persistence = new ShardPersistence(root.resolve("journal"), root.resolve("snapshots"),
+                1 << 16, OrderJournal.FsyncPolicy.NONE, 0, 0);
+
+        MatchingShard first = startShard(persistence);
+        first.submit(placeRequest("u1", px(10.0), 100, Order.Side.SELL));
+        first.submit(placeRequest("u2", px(10.0), 50, Order.Side.SELL));
+        first.submit(placeRequest("u3", px(11.0), 70, Order.Side.SELL));
+        first.submit(placeRequest("u4", px(9.0), 40, Order.Side.BUY));
+        first.submit(placeRequest("u5", px(10.0), 30, Order.Side.BUY));
+        first.stop(); // processes everything queued and writes a snapshot
+        List<String> book = restingOrders(first.getOrderBookAPI());
+        assertEquals(4, book.size());
+
+        // Restored from the snapshot alone, including order IDs and time priority
+        MatchingShard second = startShard(persistence);
+        assertEquals(book, restingOrders(second.getOrderBookAPI()));
+        assertEquals(px(10.0), second.getOrderBookAPI().getStockPrice("RCV"));
+
+        TradeRequest cancel = new TradeRequest(TradeRequest.RequestType.CANCEL_ORDER);
+        cancel.orderId = book.get(0).split(" ")[0];
+        second.submit(cancel);
+        second.submit(placeRequest("u6", px(11.0), 20, Order.Side.BUY));
+        second.stop();
+        book = restingOrders(second.getOrderBookAPI());
+
+        // Without snapshots the whole journal is replayed and must rebuild the same book
+        try (var files = Files.walk(root.resolve("snapshots"))) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+        MatchingShard third = startShard(persistence);
+        assertEquals(book, restingOrders(third.getOrderBookAPI()));
+        assertEquals(px(10.0), third.getOrderBookAPI().getStockPrice("RCV"));
+        third.stop();
+    }
+
+    @Test
+    public void testLatencyHistogramPercentilesAndIntervals() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100_000; nanos++) {
+            histogram.record(nanos * 100); // 100ns to 10ms, uniformly
+        }
+        LatencyHistogram.Snapshot first = histogram.intervalSnapshot();
+        assertEquals(100_000, first.getCount());
+        assertEquals(5_000_000, first.getValueAtPercentile(50), 5_000_000 * 0.016);
+        assertEquals(9_900_000, first.getValueAtPercentile(99), 9_900_000 * 0.016);
+        assertEquals(9_990_000, first.getValueAtPercentile(99.9), 9_990_000 * 0.016);
+        assertEquals(10_000_000, first.getMax(), 10_000_000 * 0.016);
+        assertTrue(first.getMax() >= 10_000_000, "Max should not under-report");
+
+        // Reading starts a new interval
+        histogram.record(42);
+        LatencyHistogram.Snapshot second = histogram.intervalSnapshot();
+        assertEquals(1, second.getCount());
+        assertEquals(42, second.getValueAtPercentile(50));
+        assertEquals(42, second.getMax());
+        assertEquals(0, histogram.intervalSnapshot().getCount());
+    }
+
+    @Test
+    public void testSymbolActivityCounters() {
+        api.placeOrder("s1", "ACT", px(10.0), 100, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("s2", "ACT", px(10.0), 100, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("s3", "ACT", px(10.5), 100, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        String bid = api.placeOrder("b1", "ACT", px(9.0), 100, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        // Takes both orders at 10.00 and part of the one at 10.50
+        api.placeOrder("b2", "ACT", px(10.5), 250, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        api.cancelOrder(bid);
+
+        List<SymbolActivity> activities = new ArrayList<>();
+        api.forEachSymbolActivity(activities::add);
+        assertEquals(1, activities.size());
+        SymbolActivity activity = activities.get(0);
+        assertEquals("ACT", activity.getSymbol());
+        assertEquals(5, activity.getOrders());
+        assertEquals(3, activity.getFills());
+        assertEquals(250, activity.getFilledVolume());
+        assertEquals(1, activity.getOrderCount(Order.Side.SELL));
+        assertEquals(1, activity.getLevelCount(Order.Side.SELL));
+        assertEquals(0, activity.getOrderCount(Order.Side.BUY));
+        assertEquals(0, activity.getLevelCount(Order.Side.BUY));
+    }
+
+    @Test
+    public void testBatchSubmissionKeepsOrderAcrossShards() {
+        // Far more requests than ring slots, so each shard's share goes in several runs
+        TradeRequestProcessor processor = new TradeRequestProcessor(2, 64);
+        processor.startProcessing();
+        List<TradeRequest> batch = new ArrayList<>();
+        String[] symbols = {"BA", "BB", "BC"};
+        for (int i = 0; i < 500; i++) {
+            TradeRequest request = new TradeRequest(TradeRequest.RequestType.PLACE_ORDER);
+            request.userId = "u" + i;
+            request.stockSymbol = symbols[i % symbols.length];
+            request.price = px(10.0) - i % 10;
+            request.volume = 10;
+            request.side = Order.Side.BUY;
+            request.orderType = OrderBookAPI.Type.GoodTilCancel;
+            request.orderId = "batch-" + i;
+            batch.add(request);
+        }
+        // Cancels without a symbol reach every shard, after the order they cancel
+        TradeRequest cancel = new TradeRequest(TradeRequest.RequestType.CANCEL_ORDER);
+        cancel.orderId = "batch-0";
+        batch.add(cancel);
+        processor.submitBatch(batch);
+        processor.stopProcessing();
+
+        long resting = 0;
+        for (String symbol : symbols) {
+            resting += processor.getOrderBookAPI(symbol).getDepthThroughPrice(symbol, 0, Order.Side.BUY) / 10;
+        }
+        assertEquals(499, resting);
+        assertEquals(160, processor.getOrderBookAPI("BA").getVolumeAtPrice("BA", px(10.0), Order.Side.BUY));
+    }
+
+    @Test
+    public void testAcksCarryOrderIdFillsAndStatus() throws Exception {
+        TradeRequestProcessor processor = new TradeRequestProcessor(2, 64);
+        processor.startProcessing();
+        try {
+            OrderAck sell = submitWithAck(processor, ackRequest(TradeRequest.RequestType.PLACE_ORDER, px(10.0), 100, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel));
+            assertEquals(OrderAck.Status.RESTING, sell.getStatus());
+            assertNotNull(sell.getOrderId());
+            assertEquals(100, sell.getRemainingVolume());
+
+            OrderAck buy = submitWithAck(processor, ackRequest(TradeRequest.RequestType.PLACE_ORDER, px(10.5), 150, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel));
+            assertEquals(OrderAck.Status.PARTIALLY_FILLED, buy.getStatus());
+            assertEquals(1, buy.getFills().size());
+            assertEquals(10.0, buy.getFills().get(0).getPrice(), 1e-9);
+            assertEquals(100, buy.getFilledVolume());
+            assertEquals(50, buy.getRemainingVolume());
+
+            OrderAck fok = submitWithAck(processor, ackRequest(TradeRequest.RequestType.PLACE_ORDER, px(10.5), 10, Order.Side.BUY, OrderBookAPI.Type.FillOrKill));
+            assertEquals(OrderAck.Status.REJECTED, fok.getStatus());
+
+            OrderAck market = submitWithAck(processor, ackRequest(TradeRequest.RequestType.PLACE_MARKET_ORDER, 0, 80, Order.Side.SELL, OrderBookAPI.Type.MarketOrder));
+            assertEquals(OrderAck.Status.CANCELLED, market.getStatus());
+            assertEquals(50, market.getFilledVolume());
+            assertEquals(30, market.getRemainingVolume());
+
+            // A bare order ID goes to both shards, only the owner can cancel it
+            OrderAck rest = submitWithAck(processor, ackRequest(TradeRequest.RequestType.PLACE_ORDER, px(11.0), 10, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel));
+            TradeRequest cancel = new TradeRequest(TradeRequest.RequestType.CANCEL_ORDER);
+            cancel.orderId = rest.getOrderId();
+            assertEquals(OrderAck.Status.CANCELLED, submitWithAck(processor, cancel).getStatus());
+            assertEquals(OrderAck.Status.REJECTED, submitWithAck(processor, cancel).getStatus());
+        } finally {
+            processor.stopProcessing();
+        }
+    }
+
+    @Test
+    public void testDepthFeedSnapshotThenChanges() throws Exception {
+        // Top levels come from the depth index, including prices kept outside its window
+        DepthIndex index = new DepthIndex(4, 8);
+        index.add(100, 5);
+        index.add(101, 7);
+        index.add(5000, 9);
+        long[] prices = new long[4];
+        long[] volumes = new long[4];
+        assertEquals(3, index.topLevels(false, 100, 4, prices, volumes));
+        assertArrayEquals(new long[]{100, 101, 5000}, Arrays.copyOf(prices, 3));
+        assertEquals(2, index.topLevels(true, 5000, 2, prices, volumes));
+        assertArrayEquals(new long[]{5000, 101}, Arrays.copyOf(prices, 2));
+        assertArrayEquals(new long[]{9, 7}, Arrays.copyOf(volumes, 2));
+
+        TradeRequestProcessor processor = new TradeRequestProcessor(1, 64);
+        processor.startProcessing();
+        try {
+            submitWithAck(processor, placeRequest("s1", px(10.00), 100, Order.Side.SELL));
+            submitWithAck(processor, placeRequest("s2", px(10.01), 50, Order.Side.SELL));
+            submitWithAck(processor, placeRequest("b1", px(9.99), 30, Order.Side.BUY));
+
+            BlockingQueue<DepthUpdate> updates = new LinkedBlockingQueue<>();
+            DepthSubscription subscription = processor.subscribeDepth("RCV", 2, updates::add);
+            DepthUpdate snapshot = updates.poll(5, TimeUnit.SECONDS);
+            assertNotNull(snapshot);
+            assertTrue(snapshot.isSnapshot());
+            assertEquals(List.of("9.99:30"), levels(snapshot.getBids()));
+            assertEquals(List.of("10.0:100", "10.01:50"), levels(snapshot.getAsks()));
+
+            // Deeper than the view, nothing to send
+            submitWithAck(processor, placeRequest("s3", px(10.02), 70, Order.Side.SELL));
+            // Takes out the best ask, so 10.02 moves into view
+            submitWithAck(processor, placeRequest("b2", px(10.00), 100, Order.Side.BUY));
+            DepthUpdate update = updates.poll(5, TimeUnit.SECONDS);
+            assertNotNull(update);
+            assertFalse(update.isSnapshot());
+            assertTrue(update.getSequence() > snapshot.getSequence());
+            assertEquals(List.of(), levels(update.getBids()));
+            assertEquals(List.of("10.02:70", "10.0:0"), levels(update.getAsks()));
+
+            subscription.close();
+            submitWithAck(processor, placeRequest("s4", px(10.01), 10, Order.Side.SELL));
+            assertNull(updates.poll(200, TimeUnit.MILLISECONDS));
+        } finally {
+            processor.stopProcessing();
+        }
+    }
+
+    @Test
+    public void testTopOfBookFollowsTheBook() {
+        assertSame(TopOfBook.EMPTY, api.getTopOfBook("TOB"));
+        api.placeOrder("s1", "TOB", px(10.5), 300, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        String bid = api.placeOrder("b1", "TOB", px(10.0), 100, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("b2", "TOB", px(10.0), 50, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+
+        TopOfBook.Quote quote = api.getTopOfBook("TOB");
+        assertEquals(px(10.0), quote.bidPrice);
+        assertEquals(150, quote.bidVolume);
+        assertEquals(px(10.5), quote.askPrice);
+        assertEquals(300, quote.askVolume);
+        assertEquals(0, quote.lastPrice);
+        assertEquals(3, quote.sequence);
+
+        api.placeOrder("b3", "TOB", px(10.5), 100, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        api.cancelOrder(bid);
+        quote = api.getTopOfBook("TOB");
+        assertEquals(50, quote.bidVolume);
+        assertEquals(200, quote.askVolume);
+        assertEquals(px(10.5), quote.lastPrice);
+        assertEquals(5, quote.sequence);
+
+        // A rejected fill or kill changes nothing, so nothing is published
+        api.placeOrder("b4", "TOB", px(10.5), 1000, Order.Side.BUY, OrderBookAPI.Type.FillOrKill);
+        assertEquals(5, api.getTopOfBook("TOB").sequence);
+    }
+
+    @Test
+    public void testTopOfBookReadsAreNeverTorn() throws InterruptedException {
+        // Every published state has as much volume at the bid as the bid price in ticks, or no bid
+        int rounds = 200_000;
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i <= rounds; i++) {
+                String id = api.placeOrder("w", "SEQ", i, i, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+                api.cancelOrder(id);
+            }
+        });
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            long lastSequence = 0;
+            while (writer.isAlive() && failure.get() == null) {
+                TopOfBook.Quote quote = api.getTopOfBook("SEQ");
+                if (quote.bidPrice == -1 ? quote.bidVolume != 0 : quote.bidVolume != quote.bidPrice) {
+                    failure.set("torn read " + quote.bidPrice + "/" + quote.bidVolume);
+                }
+                if (quote.sequence < lastSequence) {
+                    failure.set("sequence went back from " + lastSequence + " to " + quote.sequence);
+                }
+                lastSequence = quote.sequence;
+            }
+        });
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+        assertNull(failure.get());
+        assertEquals(2L * rounds, api.getTopOfBook("SEQ").sequence);
+    }
+
+    @Test
+    public void testBinaryGatewayRoundTrips() throws Exception {
+        TradeRequestProcessor processor = new TradeRequestProcessor(2, 64);
+        processor.startProcessing();
+        OrderGateway gateway = new OrderGateway(processor, 0);
+        gateway.start();
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", gateway.getPort()))) {
+            ByteBuffer out = ByteBuffer.allocate(256);
+            ByteBuffer in = ByteBuffer.allocate(4096);
+
+            BinaryProtocol.putNewOrder(out, 1, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel, "GATE", "seller", px(10.0), 100);
+            BinaryProtocol.ExecutionReport sell = roundTrip(channel, out, in);
+            assertEquals(1, sell.clientId);
+            assertEquals(OrderAck.Status.RESTING, sell.status);
+            assertNotNull(sell.orderId);
+            assertEquals(100, sell.remainingVolume);
+
+            BinaryProtocol.putMarketOrder(out, 2, Order.Side.BUY, "GATE", "buyer", 40);
+            BinaryProtocol.ExecutionReport buy = roundTrip(channel, out, in);
+            assertEquals(OrderAck.Status.FILLED, buy.status);
+            assertEquals(40, buy.filledVolume);
+            assertArrayEquals(new long[]{px(10.0)}, buy.fillPrices);
+            assertArrayEquals(new long[]{40}, buy.fillVolumes);
+
+            BinaryProtocol.putCancel(out, 3, "GATE", sell.orderId);
+            assertEquals(OrderAck.Status.CANCELLED, roundTrip(channel, out, in).status);
+            BinaryProtocol.putCancel(out, 4, "GATE", sell.orderId);
+            BinaryProtocol.ExecutionReport cancelled = roundTrip(channel, out, in);
+            assertEquals(OrderAck.Status.REJECTED, cancelled.status);
+            assertNotNull(cancelled.reason, "A reject should say why");
+            assertNull(sell.reason);
+
+            // Rejected on the gateway without reaching a shard
+            BinaryProtocol.putNewOrder(out, 5, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel, "GATE", "buyer", px(10.0), 0);
+            BinaryProtocol.ExecutionReport invalid = roundTrip(channel, out, in);
+            assertEquals(5, invalid.clientId);
+            assertEquals(OrderAck.Status.REJECTED, invalid.status);
+            assertNull(invalid.orderId);
+            assertEquals("Missing symbol, side, user or volume", invalid.reason);
+        } finally {
+            gateway.stop();
+            processor.stopProcessing();
+        }
+    }
+
+    // Sends what is in out and waits for the one report it answers with
+    private static BinaryProtocol.ExecutionReport roundTrip(SocketChannel channel, ByteBuffer out, ByteBuffer in) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+        in.clear();
+        while (in.position() < 2 || in.position() < in.getShort(0)) {
+            assertTrue(channel.read(in) >= 0, "Gateway closed the connection");
+        }
+        in.flip();
+        return BinaryProtocol.getExecutionReport(in);
+    }
+
+    @Test
+    public void testOffHeapStoreKeepsTheSameBook() {
+        OrderBookAPI heap = new OrderBookAPI(OrderStoreType.HEAP);
+        OrderBookAPI offHeap = new OrderBookAPI(OrderStoreType.OFF_HEAP);
+        heap.setTradeLogging(false);
+        offHeap.setTradeLogging(false);
+        Random random = new Random(7);
+        List<String> ids = new ArrayList<>();
+        for (int step = 0; step < 20_000; step++) {
+            if (!ids.isEmpty() && random.nextInt(3) == 0) {
+                String id = ids.remove(random.nextInt(ids.size()));
+                assertEquals(heap.cancelOrder(id), offHeap.cancelOrder(id));
+                continue;
+            }
+            String id = UUID.randomUUID().toString();
+            String symbol = "OFF" + random.nextInt(3);
+            Order.Side side = random.nextBoolean() ? Order.Side.BUY : Order.Side.SELL;
+            // Mostly resting orders around 100.00, some crossing
+            long price = px(100.0) + (side == Order.Side.BUY ? -1 : 1) * (random.nextInt(40) - 3);
+            long volume = 1 + random.nextInt(200);
+            String user = "user" + random.nextInt(5);
+            assertEquals(heap.placeOrder(id, user, symbol, price, volume, side, OrderBookAPI.Type.GoodTilCancel),
+                    offHeap.placeOrder(id, user, symbol, price, volume, side, OrderBookAPI.Type.GoodTilCancel));
+            ids.add(id);
+        }
+        assertEquals(restingOrders(heap), restingOrders(offHeap));
+        for (int s = 0; s < 3; s++) {
+            for (Order.Side side : Order.Side.values()) {
+                assertEquals(heap.quotePrice("OFF" + s, side), offHeap.quotePrice("OFF" + s, side));
+            }
+        }
+
+        // Off heap order IDs are UUIDs, anything else is turned away before it touches the book
+        OrderAck ack = new OrderAck();
+        assertNull(offHeap.placeOrder("not-a-uuid", "user", "OFF0", px(1.0), 10, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel, ack));
+        assertEquals(OrderAck.Status.REJECTED, ack.getStatus());
+        assertFalse(offHeap.cancelOrder("not-a-uuid"));
+    }
+
+    @Test
+    public void testOrderLogLinesParseBack() throws IOException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        OrderJournalReader.Entry entry = new OrderJournalReader.Entry();
+        OrderJournalReader.parse("00000009 2025-04-21 00:44:47.800 SNAP 489.94 223 lzHJLzEP SELL PLACE_ORDER", entry, dateFormat);
+        assertEquals(9, entry.sequence);
+        assertEquals("SNAP", entry.request.stockSymbol);
+        assertEquals(48994, entry.request.price);
+        assertEquals(223, entry.request.volume);
+        assertEquals("lzHJLzEP", entry.request.userId);
+        assertEquals(Order.Side.SELL, entry.request.side);
+        assertEquals(OrderBookAPI.Type.GoodTilCancel, entry.request.orderType);
+        assertNull(entry.request.orderId);
+
+        // What format writes comes back the same, cancels without a symbol included
+        entry.request.clear();
+        entry.request.type = TradeRequest.RequestType.CANCEL_ORDER;
+        entry.request.orderId = UUID.randomUUID().toString();
+        entry.sequence = 0x1A;
+        String line = OrderJournalReader.format(entry, dateFormat);
+        OrderJournalReader.Entry parsed = new OrderJournalReader.Entry();
+        OrderJournalReader.parse(line, parsed, dateFormat);
+        assertEquals(line, OrderJournalReader.format(parsed, dateFormat));
+        assertNull(parsed.request.stockSymbol);
+        assertEquals(entry.request.orderId, parsed.request.orderId);
+
+        assertThrows(IOException.class, () -> OrderJournalReader.parse("not a log line", parsed, dateFormat));
+    }
+
+    @Test
+    public void testAdmissionControlBoundsTheRing() throws Exception {
+        // Not started yet, so nothing drains while the ring fills up
+        MatchingShard shard = new MatchingShard(0, new OrderBookAPI(), 16);
+        shard.setAdmissionLimits(8, 3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Admission.ACCEPTED, shard.offer(placeRequest("firehose", px(1.0), 1, Order.Side.BUY)));
+        }
+        // The firehose has its share, everyone else still gets in up to the high water mark
+        assertEquals(Admission.USER_BUSY, shard.offer(placeRequest("firehose", px(1.0), 1, Order.Side.BUY)));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Admission.ACCEPTED, shard.offer(placeRequest("user" + i, px(1.0), 1, Order.Side.BUY)));
+        }
+        assertEquals(Admission.SHARD_BUSY, shard.offer(placeRequest("quiet", px(1.0), 1, Order.Side.BUY)));
+        Admission[] batch = shard.offerBatch(List.of(placeRequest("quiet", px(1.0), 1, Order.Side.BUY), cancelRequest()));
+        assertEquals(Admission.SHARD_BUSY, batch[0]);
+        assertEquals(Admission.ACCEPTED, batch[1]);
+
+        // Cancels still get in, up to their own ring of 4
+        for (int i = 0; i < 2; i++) {
+            assertEquals(Admission.ACCEPTED, shard.offer(cancelRequest()));
+        }
+        TradeRequest last = cancelRequest();
+        last.ack = new CompletableFuture<>();
+        assertEquals(Admission.ACCEPTED, shard.offer(last));
+        assertEquals(Admission.SHARD_BUSY, shard.offer(cancelRequest()));
+
+        shard.start();
+        try {
+            last.ack.get(5, TimeUnit.SECONDS);
+            assertEquals(8, shard.getOrderBookAPI().getVolumeAtPrice("RCV", px(1.0), Order.Side.BUY));
+            // Drained, the firehose's places are given back
+            for (int i = 0; i < 3; i++) {
+                assertEquals(Admission.ACCEPTED, shard.offer(placeRequest("firehose", px(1.0), 1, Order.Side.BUY)));
+            }
+        } finally {
+            shard.stop();
+        }
+    }
+
+    @Test
+    public void testCancelsOvertakeQueuedOrders() throws Exception {
+        Path root = Files.createTempDirectory("cancel-lane-test");
+        ShardPersistence persistence = new ShardPersistence(root.resolve("journal"), root.resolve("snapshots"),
+                1 << 16, OrderJournal.FsyncPolicy.NONE, 0, 0);
+        MatchingShard first = startShard(persistence);
+        TradeRequest maker = placeRequest("maker", px(10.0), 100, Order.Side.SELL);
+        maker.orderId = "maker-quote";
+        first.submit(maker);
+        first.stop();
+
+        // Queued before the worker starts: takers that would lift the stale quote, then its cancel,
+        // then an order and its cancel, which must not overtake it
+        MatchingShard second = new MatchingShard(0, 1, new OrderBookAPI(), 1024, persistence);
+        for (int i = 0; i < 3; i++) {
+            second.submit(placeRequest("taker" + i, px(10.0), 10, Order.Side.BUY));
+        }
+        TradeRequest pull = cancelRequest();
+        pull.orderId = "maker-quote";
+        pull.ack = new CompletableFuture<>();
+        second.submit(pull);
+        TradeRequest late = placeRequest("late", px(12.0), 5, Order.Side.SELL);
+        late.orderId = "late-quote";
+        second.submit(late);
+        TradeRequest pullLate = cancelRequest();
+        pullLate.orderId = "late-quote";
+        pullLate.ack = new CompletableFuture<>();
+        second.submit(pullLate);
+        second.start();
+        second.awaitRecovered();
+
+        assertEquals(OrderAck.Status.CANCELLED, pull.ack.get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(OrderAck.Status.CANCELLED, pullLate.ack.get(5, TimeUnit.SECONDS).getStatus());
+        second.stop();
+        OrderBookAPI book = second.getOrderBookAPI();
+        assertEquals(30, book.getVolumeAtPrice("RCV", px(10.0), Order.Side.BUY), "The takers found nothing to lift");
+        assertEquals(0, book.getVolumeAtPrice("RCV", px(10.0), Order.Side.SELL));
+        assertEquals(0, book.getVolumeAtPrice("RCV", px(12.0), Order.Side.SELL));
+
+        // The journal holds them in the order they were processed, so a replay agrees
+        try (var files = Files.walk(root.resolve("snapshots"))) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+        MatchingShard third = startShard(persistence);
+        assertEquals(restingOrders(book), restingOrders(third.getOrderBookAPI()));
+        third.stop();
+    }
+
+    @Test
+    public void testAmendKeepsPriorityOnlyWhenReducing() throws Exception {
+        OrderBookAPI api = new OrderBookAPI();
+        String first = api.placeOrder("first", "AMD", px(10.0), 100, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        String second = api.placeOrder("second", "AMD", px(10.0), 50, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        api.placeOrder("bidder", "AMD", px(9.0), 20, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+
+        // Reduced in place, still first in line
+        OrderAck reduced = new OrderAck();
+        assertTrue(api.amendOrder(first, 0, 60, true, reduced));
+        assertEquals(OrderAck.Status.RESTING, reduced.getStatus());
+        assertEquals(110, api.getVolumeAtPrice("AMD", px(10.0), Order.Side.SELL));
+        assertEquals(110, api.getDepthThroughPrice("AMD", px(10.0), Order.Side.SELL));
+        api.placeOrder("taker", "AMD", px(10.0), 60, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel);
+        assertFalse(api.hasOrder(first));
+        assertEquals(50, api.getVolumeAtPrice("AMD", px(10.0), Order.Side.SELL));
+
+        // Repriced through the bid, it trades there and the rest rests under the same ID
+        OrderAck moved = new OrderAck();
+        assertTrue(api.amendOrder(second, px(9.0), 50, false, moved));
+        assertEquals(OrderAck.Status.PARTIALLY_FILLED, moved.getStatus());
+        assertEquals(20, moved.getFilledVolume());
+        assertEquals(0, api.getVolumeAtPrice("AMD", px(10.0), Order.Side.SELL));
+        assertEquals(30, api.getVolumeAtPrice("AMD", px(9.0), Order.Side.SELL));
+
+        // Growing it sends it to the back of its level
+        String third = api.placeOrder("third", "AMD", px(9.0), 10, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        OrderAck notReducing = new OrderAck();
+        assertFalse(api.amendOrder(second, 0, 40, true, notReducing));
+        assertEquals(OrderAck.Status.REJECTED, notReducing.getStatus());
+        assertTrue(api.amendOrder(second, 0, 40, false, new OrderAck()));
+        OrderAck lifted = new OrderAck();
+        api.placeOrder(null, "lifter", "AMD", px(9.0), 10, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel, lifted);
+        assertEquals(10, lifted.getFilledVolume());
+        assertFalse(api.hasOrder(third));
+        assertEquals(40, api.getVolumeAtPrice("AMD", px(9.0), Order.Side.SELL));
+
+        // Amends are not new orders, whichever way they are applied
+        long[] placed = new long[1];
+        api.forEachSymbolActivity(activity -> {
+            if (activity.getSymbol().equals("AMD")) placed[0] = activity.getOrders();
+        });
+        assertEquals(6, placed[0]);
+
+        OrderAck missing = new OrderAck();
+        assertFalse(api.amendOrder("no-such-order", 0, 10, false, missing));
+        assertEquals(OrderAck.Status.REJECTED, missing.getStatus());
+        assertFalse(api.amendOrder(second, 0, 0, false, new OrderAck()));
+
+        // Through a shard: a reduce-only amend queued after a price change of the same order waits for it
+        MatchingShard shard = new MatchingShard(0, new OrderBookAPI(), 64);
+        TradeRequest place = placeRequest("amender", px(10.0), 100, Order.Side.SELL);
+        place.orderId = "amended";
+        shard.submit(place);
+        TradeRequest reprice = new TradeRequest(TradeRequest.RequestType.AMEND_ORDER);
+        reprice.orderId = "amended";
+        reprice.stockSymbol = "RCV";
+        reprice.price = px(11.0);
+        reprice.volume = 80;
+        shard.submit(reprice);
+        TradeRequest resize = new TradeRequest(TradeRequest.RequestType.AMEND_ORDER);
+        resize.orderId = "amended";
+        resize.stockSymbol = "RCV";
+        resize.volume = 30;
+        resize.reduceOnly = true;
+        resize.ack = new CompletableFuture<>();
+        assertEquals(Admission.ACCEPTED, shard.offer(resize));
+        shard.start();
+        try {
+            assertEquals(OrderAck.Status.RESTING, resize.ack.get(5, TimeUnit.SECONDS).getStatus());
+            assertEquals(30, shard.getOrderBookAPI().getVolumeAtPrice("RCV", px(11.0), Order.Side.SELL));
+        } finally {
+            shard.stop();
+        }
+    }
+
+    @Test
+    public void testGrowingAmendQueuesWithOrders() throws Exception {
+        // Admission checked like an order, while a reduce-only amend still gets in
+        MatchingShard full = new MatchingShard(0, new OrderBookAPI(), 16);
+        full.setAdmissionLimits(1, 16);
+        assertEquals(Admission.ACCEPTED, full.offer(placeRequest("filler", px(1.0), 1, Order.Side.BUY)));
+        assertEquals(Admission.SHARD_BUSY, full.offer(amendRequest("grown", 50, false)));
+        assertEquals(Admission.ACCEPTED, full.offer(amendRequest("grown", 5, true)));
+
+        Path root = Files.createTempDirectory("amend-lane-test");
+        ShardPersistence persistence = new ShardPersistence(root.resolve("journal"), root.resolve("snapshots"),
+                1 << 16, OrderJournal.FsyncPolicy.NONE, 0, 0);
+        MatchingShard first = startShard(persistence);
+        TradeRequest quote = placeRequest("grower", px(10.0), 10, Order.Side.SELL);
+        quote.orderId = "grown";
+        first.submit(quote);
+        first.stop();
+
+        // The quote rests once recovered; a taker queued ahead of the growing amend trades first
+        MatchingShard second = new MatchingShard(0, 1, new OrderBookAPI(), 1024, persistence);
+        second.submit(placeRequest("taker", px(10.0), 5, Order.Side.BUY));
+        TradeRequest grow = amendRequest("grown", 20, false);
+        grow.ack = new CompletableFuture<>();
+        assertEquals(Admission.ACCEPTED, second.offer(grow));
+        second.start();
+        second.awaitRecovered();
+        try {
+            assertEquals(OrderAck.Status.RESTING, grow.ack.get(5, TimeUnit.SECONDS).getStatus());
+            assertEquals(20, second.getOrderBookAPI().getVolumeAtPrice("RCV", px(10.0), Order.Side.SELL));
+        } finally {
+            second.stop();
+        }
+    }
+
+    @Test
+    public void testBookReadsRunOnTheOwningShard() throws Exception {
+        TradeRequestProcessor processor = new TradeRequestProcessor(2, 1024);
+        processor.startProcessing();
+        try {
+            for (int i = 0; i < 3; i++) {
+                submitWithAck(processor, ackRequest(TradeRequest.RequestType.PLACE_ORDER, px(10.0 + i), 10, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel));
+            }
+            assertEquals(10, (long) processor.getVolumeAtPrice("ACK", px(11.0), Order.Side.SELL).get(5, TimeUnit.SECONDS));
+            assertEquals(20, (long) processor.getDepthThroughPrice("ACK", px(11.0), Order.Side.SELL).get(5, TimeUnit.SECONDS));
+            assertEquals(0, (long) processor.getVolumeAtPrice("ACK-UNSEEN", px(11.0), Order.Side.SELL).get(5, TimeUnit.SECONDS));
+            processor.printOrderBooks().get(5, TimeUnit.SECONDS);
+        } finally {
+            processor.stopProcessing();
+        }
+    }
+
+    @Test
+    public void testNameRegistryKeysAndKeyedBook() throws Exception {
+        int key = NameRegistry.SYMBOLS.keyOf("REG0");
+        assertEquals(key, NameRegistry.SYMBOLS.keyOf(new String("REG0")));
+        assertEquals("REG0", NameRegistry.SYMBOLS.nameOf(key));
+        assertEquals(key + 1, NameRegistry.SYMBOLS.keyOf("REG1"));
+        // Lookups leave unknown names unregistered
+        assertEquals(NameRegistry.NONE, NameRegistry.SYMBOLS.find("REG-UNSEEN"));
+        assertEquals(NameRegistry.NONE, NameRegistry.SYMBOLS.find("REG-UNSEEN"));
+        assertEquals(-1, api.quotePrice("REG-UNSEEN2", Order.Side.BUY));
+        assertEquals(NameRegistry.NONE, NameRegistry.SYMBOLS.find("REG-UNSEEN2"));
+
+        // Enough symbols to grow the book's per-symbol arrays, placed by name and by key
+        for (int i = 0; i < 200; i++) {
+            String symbol = "REG" + i;
+            api.placeOrder("seller", symbol, px(10.0) + i, 5, Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+            api.placeOrder(null, NameRegistry.USERS.keyOf("buyer"), NameRegistry.SYMBOLS.keyOf(symbol), px(10.0) + i, 2,
+                    Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel, null);
+        }
+        for (int i = 0; i < 200; i++) {
+            String symbol = "REG" + i;
+            assertEquals(px(10.0) + i, api.getStockPrice(symbol));
+            assertEquals(3, api.getVolumeAtPrice(symbol, px(10.0) + i, Order.Side.SELL));
+            assertEquals(px(10.0) + i, api.getTopOfBook(symbol).askPrice);
+        }
+        List<String> resting = restingOrders(api);
+        assertEquals(200, resting.size());
+        assertTrue(resting.get(0).contains(" seller "));
+
+        // Requests resolve their keys on the way into a shard
+        MatchingShard shard = startShard(null);
+        try {
+            TradeRequest request = placeRequest("keyed", px(1.0), 1, Order.Side.BUY);
+            request.ack = new CompletableFuture<>();
+            shard.submit(request);
+            assertEquals(OrderAck.Status.RESTING, request.ack.get(5, TimeUnit.SECONDS).getStatus());
+            assertEquals(px(1.0), shard.getOrderBookAPI().quotePrice(NameRegistry.SYMBOLS.find("RCV"), Order.Side.BUY));
+        } finally {
+            shard.stop();
+        }
+    }
+
+    private static List<String> levels(List<DepthUpdate.Level> levels) {
+        List<String> result = new ArrayList<>();
+        for (DepthUpdate.Level level : levels) {
+            result.add(level.getPrice() + ":" + level.getVolume());
+        }
+        return result;
+    }
+
+    private OrderAck submitWithAck(TradeRequestProcessor processor, TradeRequest request) throws Exception {
+        request.ack = new CompletableFuture<>();
+        processor.submitRequest(request);
+        return request.ack.get(5, TimeUnit.SECONDS);
+    }
+
+    private TradeRequest ackRequest(TradeRequest.RequestType type, long price, long volume, Order.Side side, OrderBookAPI.Type orderType) {
+        TradeRequest request = new TradeRequest(type);
+        request.userId = "acker";
+        request.stockSymbol = "ACK";
+        request.price = price;
+        request.volume = volume;
+        request.side = side;
+        request.orderType = orderType;
+        return request;
+    }
+
+    private MatchingShard startShard(ShardPersistence persistence) {
+        MatchingShard shard = new MatchingShard(0, 1, new OrderBookAPI(), 1024, persistence);
+        shard.start();
+        shard.awaitRecovered();
+        return shard;
+    }
+
+    private TradeRequest cancelRequest() {
+        TradeRequest request = new TradeRequest(TradeRequest.RequestType.CANCEL_ORDER);
+        request.orderId = UUID.randomUUID().toString();
+        request.stockSymbol = "RCV";
+        return request;
+    }
+
+    private TradeRequest amendRequest(String orderId, long volume, boolean reduceOnly) {
+        TradeRequest request = new TradeRequest(TradeRequest.RequestType.AMEND_ORDER);
+        request.orderId = orderId;
+        request.stockSymbol = "RCV";
+        request.volume = volume;
+        request.reduceOnly = reduceOnly;
+        return request;
+    }
+
+    private TradeRequest placeRequest(String userId, long price, long volume, Order.Side side) {
+        TradeRequest request = new TradeRequest(TradeRequest.RequestType.PLACE_ORDER);
+        request.userId = userId;
+        request.stockSymbol = "RCV";
+        request.price = price;
+        request.volume = volume;
+        request.side = side;
+        request.orderType = OrderBookAPI.Type.GoodTilCancel;
+        return request;
+    }
+
+    private List<String> restingOrders(OrderBookAPI book) {
+        List<String> orders = new ArrayList<>();
+        book.forEachRestingOrder(order -> orders.add(order.getOrderId() + " " + order.getUserId() + " "
+                + order.getPrice() + " " + order.getVolume() + " " + order.getSide()));
+        return orders;
+    }
 }
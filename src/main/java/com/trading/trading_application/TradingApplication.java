@@ -1,6 +1,5 @@
 package com.trading.trading_application;
 
-import com.trading.trading_application.utils.OrderLogger;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
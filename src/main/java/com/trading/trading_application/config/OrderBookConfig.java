@@ -1,15 +1,130 @@
 // src/main/java/com/trading/trading_application/config/OrderBookConfig.java
 package com.trading.trading_application.config;
 
-import com.trading.trading_application.API.OrderBookAPI;
+import com.trading.trading_application.gateway.OrderGateway;
+import com.trading.trading_application.lib.OrderStoreType;
+import com.trading.trading_application.lib.PriceLevelType;
+import com.trading.trading_application.lib.TickSize;
+import com.trading.trading_application.service.ShardPersistence;
+import com.trading.trading_application.service.TradeRequestProcessor;
+import com.trading.trading_application.utils.OrderJournal;
+import com.trading.trading_application.utils.TradeLogger;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.file.Paths;
+
 @Configuration
 public class OrderBookConfig {
 
+    @Value("${trading.tick-size.default:0.01}")
+    private double defaultTickSize;
+
+    // Per-symbol overrides as a comma separated list of SYMBOL:tickSize pairs
+    @Value("${trading.tick-size.symbols:}")
+    private String symbolTickSizes;
+
+    @Value("${trading.price-levels.default:HEAP}")
+    private PriceLevelType defaultPriceLevels;
+
+    // Per-symbol overrides as a comma separated list of SYMBOL:HEAP|LADDER pairs
+    @Value("${trading.price-levels.symbols:}")
+    private String symbolPriceLevels;
+
+    @Value("${trading.order-store:HEAP}")
+    private OrderStoreType orderStore;
+
+    @Value("${trading.journal.directory:journal}")
+    private String journalDirectory;
+
+    @Value("${trading.journal.segment-size:67108864}")
+    private long journalSegmentSize;
+
+    @Value("${trading.journal.fsync-policy:INTERVAL}")
+    private OrderJournal.FsyncPolicy journalFsyncPolicy;
+
+    @Value("${trading.journal.fsync-interval-ms:100}")
+    private long journalFsyncIntervalMillis;
+
+    @Value("${trading.snapshot.directory:snapshots}")
+    private String snapshotDirectory;
+
+    @Value("${trading.snapshot.interval-seconds:60}")
+    private long snapshotIntervalSeconds;
+
+    @Value("${trading.trades.log-file:TradeLogs.txt}")
+    private String tradeLogFile;
+
+    @Value("${trading.trades.batch-size:1024}")
+    private int tradeBatchSize;
+
+    @Value("${trading.trades.max-latency-us:1000}")
+    private long tradeMaxLatencyMicros;
+
+    @Value("${trading.trades.fsync:false}")
+    private boolean tradeFsync;
+
+    @PostConstruct
+    public void configureTradeLog() {
+        TradeLogger.configure(Paths.get(tradeLogFile), tradeBatchSize, tradeMaxLatencyMicros, tradeFsync);
+    }
+
+    @PostConstruct
+    public void registerPriceLevelTypes() {
+        PriceLevelType.setDefault(defaultPriceLevels);
+        for (String entry : symbolPriceLevels.split(",")) {
+            if (entry.isBlank()) continue;
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid price level entry, expected SYMBOL:HEAP|LADDER but got " + entry);
+            }
+            PriceLevelType.register(parts[0].trim(), PriceLevelType.valueOf(parts[1].trim().toUpperCase()));
+        }
+    }
+
+    @PostConstruct
+    public void configureOrderStore() {
+        OrderStoreType.setDefault(orderStore);
+    }
+
+    @PostConstruct
+    public void registerTickSizes() {
+        TickSize.setDefault(defaultTickSize);
+        for (String entry : symbolTickSizes.split(",")) {
+            if (entry.isBlank()) continue;
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid tick size entry, expected SYMBOL:tickSize but got " + entry);
+            }
+            TickSize.register(parts[0].trim(), Double.parseDouble(parts[1].trim()));
+        }
+    }
+
+    // Each shard is a single matching thread owning its own order book partition,
+    // fed through a pre-allocated ring of ringSize request slots (must be a power of two).
+    // Shards journal every request and snapshot their partition, and recover both on start.
+    // Ingress turns orders away once a ring holds highWaterMark requests or their user holds
+    // maxQueuedPerUser of them.
+    @Bean
+    public TradeRequestProcessor tradeRequestProcessor(@Value("${trading.engine.shards:4}") int shards,
+                                                       @Value("${trading.engine.ring-size:65536}") int ringSize,
+                                                       @Value("${trading.ingress.high-water-mark:49152}") int highWaterMark,
+                                                       @Value("${trading.ingress.max-queued-per-user:4096}") int maxQueuedPerUser) {
+        ShardPersistence persistence = new ShardPersistence(Paths.get(journalDirectory), Paths.get(snapshotDirectory),
+                journalSegmentSize, journalFsyncPolicy, journalFsyncIntervalMillis, snapshotIntervalSeconds * 1000);
+        TradeRequestProcessor processor = new TradeRequestProcessor(shards, ringSize, persistence);
+        processor.setAdmissionLimits(highWaterMark, maxQueuedPerUser);
+        return processor;
+    }
+
+    // Binary TCP order entry feeding the same processor, off unless a port is set, on loopback
+    // unless an address is set
     @Bean
-    public OrderBookAPI orderBookAPI() {
-        return new OrderBookAPI();
+    public OrderGateway orderGateway(TradeRequestProcessor processor,
+                                     @Value("${trading.gateway.address:127.0.0.1}") String address,
+                                     @Value("${trading.gateway.port:-1}") int port) {
+        return new OrderGateway(processor, address, port);
     }
 }
@@ -0,0 +1,42 @@
+package com.trading.trading_application.controller;
+
+import com.trading.trading_application.utils.LatencyHistogram;
+import com.trading.trading_application.utils.StageLatency;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// GET /actuator/latency: p50, p99, p99.9 and max of every pipeline stage in microseconds, over the
+// interval since the previous read. Each read starts a new interval, so poll it from one place.
+@Component
+@Endpoint(id = "latency")
+public class LatencyEndpoint {
+
+    @ReadOperation
+    public Map<String, Object> latency() {
+        Map<String, Object> stages = new LinkedHashMap<>();
+        for (StageLatency stage : StageLatency.values()) {
+            LatencyHistogram.Snapshot snapshot = stage.getHistogram().intervalSnapshot();
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("intervalMillis", snapshot.endMillis - snapshot.startMillis);
+            values.put("count", snapshot.getCount());
+            values.put("p50", micros(snapshot.getValueAtPercentile(50)));
+            values.put("p99", micros(snapshot.getValueAtPercentile(99)));
+            values.put("p99.9", micros(snapshot.getValueAtPercentile(99.9)));
+            values.put("max", micros(snapshot.getMax()));
+            stages.put(stage.name().toLowerCase(Locale.ROOT), values);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("unit", "microseconds");
+        result.put("stages", stages);
+        return result;
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+}
@@ -0,0 +1,77 @@
+package com.trading.trading_application.controller;
+
+import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.lib.SymbolActivity;
+import com.trading.trading_application.service.TradeRequestProcessor;
+import com.trading.trading_application.utils.TradeLogger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// GET /actuator/orderbook: request queue depth of every shard, the trade log's queue and lag,
+// and per symbol the order and fill rates since the previous read, running totals and the resting
+// orders and price levels on each side. Values are read while the shards keep matching, so they
+// are a close approximation rather than one consistent cut.
+@Component
+@Endpoint(id = "orderbook")
+public class OrderBookMetricsEndpoint {
+
+    @Autowired private TradeRequestProcessor processor;
+
+    // Totals seen on the previous read, to turn them into rates
+    private final Map<String, long[]> previousTotals = new HashMap<>();
+    private long previousNanos = System.nanoTime();
+
+    @ReadOperation
+    public synchronized Map<String, Object> metrics() {
+        long now = System.nanoTime();
+        double seconds = Math.max(now - previousNanos, 1) / 1e9;
+        previousNanos = now;
+
+        Map<String, Object> queues = new LinkedHashMap<>();
+        for (int shard = 0; shard < processor.getShardCount(); shard++) {
+            queues.put("shard-" + shard, processor.getQueueDepth(shard));
+        }
+        queues.put("tradeLog", TradeLogger.getQueueDepth());
+
+        Map<String, Object> symbols = new TreeMap<>();
+        processor.forEachSymbolActivity(activity -> {
+            long orders = activity.getOrders();
+            long fills = activity.getFills();
+            long[] previous = previousTotals.computeIfAbsent(activity.getSymbol(), s -> new long[2]);
+
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("ordersPerSec", (orders - previous[0]) / seconds);
+            values.put("fillsPerSec", (fills - previous[1]) / seconds);
+            values.put("orders", orders);
+            values.put("fills", fills);
+            values.put("filledVolume", activity.getFilledVolume());
+            values.put("bids", side(activity, Order.Side.BUY));
+            values.put("asks", side(activity, Order.Side.SELL));
+            symbols.put(activity.getSymbol(), values);
+
+            previous[0] = orders;
+            previous[1] = fills;
+        });
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("intervalSeconds", seconds);
+        result.put("queues", queues);
+        result.put("tradeLogLag", TradeLogger.getLag());
+        result.put("symbols", symbols);
+        return result;
+    }
+
+    private static Map<String, Object> side(SymbolActivity activity, Order.Side side) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("orders", activity.getOrderCount(side));
+        values.put("levels", activity.getLevelCount(side));
+        return values;
+    }
+}
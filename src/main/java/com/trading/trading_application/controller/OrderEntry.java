@@ -0,0 +1,19 @@
+package com.trading.trading_application.controller;
+
+import com.trading.trading_application.API.OrderBookAPI.Type;
+import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.lib.TradeRequest;
+
+// One item of a batch request body, with the same fields the single order endpoints take as
+// request parameters. Which fields are required depends on the type.
+public class OrderEntry {
+    public TradeRequest.RequestType type;
+    public String userId;
+    public String stockSymbol;
+    public Double price; // limit orders, and amends that change the price
+    public Long volume;
+    public Order.Side side;
+    public Type orderType;
+    public String orderId; // cancels and amends only
+    public Boolean reduceOnly; // amends only, see TradingController.amendOrder
+}
@@ -1,24 +1,43 @@
 // src/main/java/com/trading/trading_application/controller/TradingController.java
 package com.trading.trading_application.controller;
 
-import com.trading.trading_application.API.OrderBookAPI;
 import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.lib.OrderAck;
+import com.trading.trading_application.lib.TickSize;
+import com.trading.trading_application.lib.TopOfBook;
 import com.trading.trading_application.lib.TradeRequest;
+import com.trading.trading_application.service.Admission;
+import com.trading.trading_application.service.DepthSubscription;
 import com.trading.trading_application.service.TradeRequestProcessor;
+import com.trading.trading_application.utils.OrderJournal;
+import com.trading.trading_application.utils.StageLatency;
 import com.trading.trading_application.API.OrderBookAPI.Type;
-import com.trading.trading_application.utils.OrderLogger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api")
 public class TradingController {
 
     @Autowired private TradeRequestProcessor processor;
-    @Autowired private OrderBookAPI api;
 
+    // Order endpoints answer once the matching thread has processed the request, with the order ID,
+    // fills and final status. The servlet thread is released while the request is in the engine.
+    // A saturated shard turns requests away at once with 429 Too Many Requests and the reason.
     @PostMapping("/placeOrder")
-    public String placeOrder(
+    public CompletableFuture<OrderAck> placeOrder(
             @RequestParam String userId,
             @RequestParam String stockSymbol,
             @RequestParam double price,
@@ -26,68 +45,279 @@ public class TradingController {
             @RequestParam Order.Side side,
             @RequestParam Type orderType
     ) {
+        long start = System.nanoTime();
         TradeRequest request = new TradeRequest(TradeRequest.RequestType.PLACE_ORDER);
         request.userId = userId;
         request.stockSymbol = stockSymbol;
-        request.price = price;
+        request.price = TickSize.forSymbol(stockSymbol).toTicks(price);
         request.volume = volume;
         request.side = side;
         request.orderType = orderType;
 
-        processor.submitRequest(request);
-        OrderLogger.requestQueue.offer(request);
-
-        return "Order Queued";
+        return submit(request, start);
     }
 
     @PostMapping("/placeMarketOrder")
-    public String placeMarketOrder(
+    public CompletableFuture<OrderAck> placeMarketOrder(
             @RequestParam String userId,
             @RequestParam String stockSymbol,
             @RequestParam long volume,
             @RequestParam Order.Side side
     ) {
+        long start = System.nanoTime();
         TradeRequest request = new TradeRequest(TradeRequest.RequestType.PLACE_MARKET_ORDER);
         //System.out.println("Received order request from " + userId + " for " + stockSymbol);
         request.userId = userId;
         request.stockSymbol = stockSymbol;
         request.volume = volume;
-        request.price = api.getStockPrice(stockSymbol);
+        request.price = processor.getTopOfBook(stockSymbol).lastPrice;
         request.side = side;
         request.orderType = Type.MarketOrder;
 
-        processor.submitRequest(request);
-        OrderLogger.requestQueue.offer(request);
-
-        return "Market Order Queued";
+        return submit(request, start);
     }
 
     @DeleteMapping("/cancelOrder")
-    public String cancelOrder(@RequestParam String orderId) {
+    public CompletableFuture<OrderAck> cancelOrder(
+            @RequestParam String orderId,
+            @RequestParam(required = false) String stockSymbol
+    ) {
+        long start = System.nanoTime();
         TradeRequest request = new TradeRequest(TradeRequest.RequestType.CANCEL_ORDER);
         request.orderId = orderId;
+        request.stockSymbol = stockSymbol;
+
+        return submit(request, start);
+    }
+
+    // Changes a resting order's remaining volume and, given one, its price. Taking volume off at the
+    // same price keeps the order's time priority; any other change sends it to the back of its new
+    // level, where it may trade like a new order. A new price needs the symbol for its tick size.
+    // A reduce-only amend skips the queue of new orders, and is rejected if it would not only
+    // take volume off; any other amend queues and is admission checked like a new order.
+    @PatchMapping("/amendOrder")
+    public CompletableFuture<OrderAck> amendOrder(
+            @RequestParam String orderId,
+            @RequestParam long volume,
+            @RequestParam(required = false) Double price,
+            @RequestParam(required = false) String stockSymbol,
+            @RequestParam(defaultValue = "false") boolean reduceOnly
+    ) {
+        long start = System.nanoTime();
+        TradeRequest request;
+        try {
+            request = amendRequest(orderId, volume, price, stockSymbol, reduceOnly);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(OrderAck.rejected(orderId, e.getMessage()));
+        }
+
+        return submit(request, start);
+    }
+
+    // Places, market orders, cancels and amends in one body, queued together. Answers with one ack per item,
+    // in order, once all of them have been processed; invalid items and items a saturated shard
+    // turned away are rejected without queueing.
+    @PostMapping("/batch")
+    public CompletableFuture<List<OrderAck>> submitBatch(@RequestBody List<OrderEntry> entries) {
+        long start = System.nanoTime();
+        List<CompletableFuture<OrderAck>> acks = new ArrayList<>(entries.size());
+        List<TradeRequest> requests = new ArrayList<>(entries.size());
+        for (OrderEntry entry : entries) {
+            try {
+                TradeRequest request = toRequest(entry);
+                OrderJournal.checkFields(request.stockSymbol, request.userId, request.orderId);
+                request.ack = new CompletableFuture<>();
+                requests.add(request);
+                acks.add(request.ack);
+            } catch (IllegalArgumentException e) {
+                acks.add(CompletableFuture.completedFuture(OrderAck.rejected(entry != null ? entry.orderId : null, e.getMessage())));
+            }
+        }
+
+        Admission[] admissions = processor.offerBatch(requests);
+        for (int i = 0; i < admissions.length; i++) {
+            if (admissions[i] != Admission.ACCEPTED) {
+                requests.get(i).ack.complete(OrderAck.rejected(requests.get(i).orderId, admissions[i].getReason()));
+            }
+        }
+        StageLatency.CONTROLLER_ACCEPT.recordSince(start);
+
+        return CompletableFuture.allOf(acks.toArray(new CompletableFuture[0]))
+                .thenApply(done -> acks.stream().map(CompletableFuture::join).toList());
+    }
+
+    // Invalid orders and requests that would not fit the journal are rejected here rather than
+    // by the matching thread
+    private CompletableFuture<OrderAck> submit(TradeRequest request, long start) {
+        try {
+            if (request.type == TradeRequest.RequestType.PLACE_ORDER || request.type == TradeRequest.RequestType.PLACE_MARKET_ORDER) {
+                checkOrder(request);
+            }
+            OrderJournal.checkFields(request.stockSymbol, request.userId, request.orderId);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(OrderAck.rejected(request.orderId, e.getMessage()));
+        }
+        request.ack = new CompletableFuture<>();
+        Admission admission = processor.offerRequest(request);
+        if (admission != Admission.ACCEPTED) {
+            throw new RejectedException(admission);
+        }
+        StageLatency.CONTROLLER_ACCEPT.recordSince(start);
+        return request.ack;
+    }
+
+    static class RejectedException extends RuntimeException {
+        RejectedException(Admission admission) {
+            super(admission.getReason());
+        }
+    }
+
+    @ExceptionHandler(RejectedException.class)
+    public ResponseEntity<OrderAck> rejected(RejectedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(OrderAck.rejected(null, e.getMessage()));
+    }
 
-        processor.submitRequest(request);
+    private TradeRequest toRequest(OrderEntry entry) {
+        if (entry == null || entry.type == null) {
+            throw new IllegalArgumentException("type is required");
+        }
+        TradeRequest request = new TradeRequest(entry.type);
+        if (entry.type == TradeRequest.RequestType.CANCEL_ORDER) {
+            request.orderId = require(entry.orderId, "orderId");
+            request.stockSymbol = entry.stockSymbol;
+            return request;
+        }
+        if (entry.type == TradeRequest.RequestType.AMEND_ORDER) {
+            return amendRequest(require(entry.orderId, "orderId"), require(entry.volume, "volume"), entry.price, entry.stockSymbol,
+                    Boolean.TRUE.equals(entry.reduceOnly));
+        }
 
-        return "Cancel Request Queued";
+        request.userId = require(entry.userId, "userId");
+        request.stockSymbol = require(entry.stockSymbol, "stockSymbol");
+        request.volume = require(entry.volume, "volume");
+        request.side = require(entry.side, "side");
+        if (entry.type == TradeRequest.RequestType.PLACE_MARKET_ORDER) {
+            request.price = processor.getTopOfBook(request.stockSymbol).lastPrice;
+            request.orderType = Type.MarketOrder;
+        } else {
+            request.price = TickSize.forSymbol(request.stockSymbol).toTicks(require(entry.price, "price"));
+            request.orderType = require(entry.orderType, "orderType");
+        }
+        checkOrder(request);
+        return request;
+    }
+
+    private static TradeRequest amendRequest(String orderId, long volume, Double price, String stockSymbol, boolean reduceOnly) {
+        if (volume <= 0) {
+            throw new IllegalArgumentException("volume must be positive");
+        }
+        if (reduceOnly && price != null) {
+            throw new IllegalArgumentException("a reduce-only amend keeps the price");
+        }
+        TradeRequest request = new TradeRequest(TradeRequest.RequestType.AMEND_ORDER);
+        request.orderId = orderId;
+        request.volume = volume;
+        request.stockSymbol = stockSymbol;
+        request.reduceOnly = reduceOnly;
+        if (price != null) {
+            request.price = TickSize.forSymbol(require(stockSymbol, "stockSymbol")).toTicks(price);
+            if (request.price <= 0) {
+                throw new IllegalArgumentException("price must be positive");
+            }
+        }
+        return request;
+    }
+
+    // A new order needs volume, a limit order a price of at least one tick as well; -1 would
+    // read as an empty side
+    private static void checkOrder(TradeRequest request) {
+        if (request.volume <= 0) {
+            throw new IllegalArgumentException("volume must be positive");
+        }
+        if (request.orderType != Type.MarketOrder && request.price <= 0) {
+            throw new IllegalArgumentException("price must be positive");
+        }
+    }
+
+    private static <T> T require(T value, String field) {
+        if (value == null) {
+            throw new IllegalArgumentException(field + " is required");
+        }
+        return value;
     }
 
     @GetMapping("/quotePrice")
     public double getQuotePrice(@RequestParam String stockSymbol, @RequestParam Order.Side side) {
-        return api.quotePrice(stockSymbol, side);
+        long ticks = processor.getTopOfBook(stockSymbol).bestPrice(side);
+        return ticks != -1 ? TickSize.forSymbol(stockSymbol).toPrice(ticks) : -1.0;
+    }
+
+    @GetMapping("/topOfBook")
+    public Map<String, Object> getTopOfBook(@RequestParam String stockSymbol) {
+        TopOfBook.Quote quote = processor.getTopOfBook(stockSymbol);
+        TickSize tickSize = TickSize.forSymbol(stockSymbol);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("symbol", stockSymbol);
+        body.put("bidPrice", quote.bidPrice != -1 ? tickSize.toPrice(quote.bidPrice) : -1.0);
+        body.put("bidVolume", quote.bidVolume);
+        body.put("askPrice", quote.askPrice != -1 ? tickSize.toPrice(quote.askPrice) : -1.0);
+        body.put("askVolume", quote.askVolume);
+        body.put("lastPrice", tickSize.toPrice(quote.lastPrice));
+        body.put("sequence", quote.sequence);
+        return body;
     }
 
+    // Book reads are answered by the shard owning the symbol, between its batches, never from
+    // this thread while the shard changes the book
     @GetMapping("/volumeAtPrice")
-    public long getVolumeAtPrice(
+    public CompletableFuture<Long> getVolumeAtPrice(
             @RequestParam String stockSymbol,
             @RequestParam double price,
             @RequestParam Order.Side side
     ) {
-        return api.getVolumeAtPrice(stockSymbol, price, side);
+        long ticks = TickSize.forSymbol(stockSymbol).toTicks(price);
+        return processor.getVolumeAtPrice(stockSymbol, ticks, side);
+    }
+
+    @GetMapping("/depthThroughPrice")
+    public CompletableFuture<Long> getDepthThroughPrice(
+            @RequestParam String stockSymbol,
+            @RequestParam double price,
+            @RequestParam Order.Side side
+    ) {
+        long ticks = TickSize.forSymbol(stockSymbol).toTicks(price);
+        return processor.getDepthThroughPrice(stockSymbol, ticks, side);
+    }
+
+    // Server-sent L2 depth of a symbol: a "snapshot" event with the top levels of each side, then
+    // "update" events with the levels that changed. Replaces polling /volumeAtPrice.
+    // Levels out of range are answered with 400 Bad Request before the stream opens.
+    @GetMapping(path = "/marketData", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamDepth(
+            @RequestParam String stockSymbol,
+            @RequestParam(defaultValue = "10") int levels
+    ) {
+        SseEmitter emitter = new SseEmitter(0L); // open until the client goes away
+        DepthSubscription subscription;
+        try {
+            subscription = processor.subscribeDepth(stockSymbol, levels, update -> emitter.send(
+                    SseEmitter.event()
+                            .name(update.isSnapshot() ? "snapshot" : "update")
+                            .id(Long.toString(update.getSequence()))
+                            .data(update)));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(error -> subscription.close());
+        return emitter;
     }
 
     @PostMapping("/print")
-    public void printOrderbook() {
-        api.printOrderBook();
+    public CompletableFuture<Void> printOrderbook() {
+        return processor.printOrderBooks();
     }
 }
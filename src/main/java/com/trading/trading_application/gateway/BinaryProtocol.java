@@ -0,0 +1,208 @@
+package com.trading.trading_application.gateway;
+
+import com.trading.trading_application.API.OrderBookAPI;
+import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.lib.OrderAck;
+import com.trading.trading_application.lib.TickSize;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Fixed-layout binary messages of the order gateway, big-endian. Every message starts with its
+// total length in bytes (u16) and its type (one ASCII byte). Strings are ASCII, padded with zero
+// bytes, prices are in ticks of the symbol's tick size and clientId is echoed back in the report.
+//
+//   New order 'N'         clientId i64, side u8 (0 buy, 1 sell), orderType u8 (0 fill or kill,
+//                         1 good til cancel), symbol 8, userId 16, price i64, volume i64
+//   Market order 'M'      clientId i64, side u8, symbol 8, userId 16, volume i64
+//   Cancel 'C'            clientId i64, symbol 8, orderId 36
+//   Execution report 'E'  clientId i64, status u8 (OrderAck.Status ordinal), orderId 36,
+//                         filled i64, remaining i64, fill count u16, then per fill:
+//                         tradeId i64, price i64, volume i64; then reason length u8 and the
+//                         reason, why the request was rejected (empty when it was not)
+public final class BinaryProtocol {
+
+    public static final byte NEW_ORDER = 'N';
+    public static final byte MARKET_ORDER = 'M';
+    public static final byte CANCEL = 'C';
+    public static final byte EXECUTION_REPORT = 'E';
+
+    public static final int HEADER_LENGTH = 3;
+    public static final int SYMBOL_LENGTH = 8;
+    public static final int USER_ID_LENGTH = 16;
+    public static final int ORDER_ID_LENGTH = 36;
+
+    public static final int NEW_ORDER_LENGTH = HEADER_LENGTH + 8 + 1 + 1 + SYMBOL_LENGTH + USER_ID_LENGTH + 8 + 8;
+    public static final int MARKET_ORDER_LENGTH = HEADER_LENGTH + 8 + 1 + SYMBOL_LENGTH + USER_ID_LENGTH + 8;
+    public static final int CANCEL_LENGTH = HEADER_LENGTH + 8 + SYMBOL_LENGTH + ORDER_ID_LENGTH;
+    static final int REPORT_FIXED_LENGTH = HEADER_LENGTH + 8 + 1 + ORDER_ID_LENGTH + 8 + 8 + 2 + 1;
+    static final int FILL_LENGTH = 8 + 8 + 8;
+    // Longer reasons are cut short
+    public static final int MAX_REASON_LENGTH = 0xFF;
+    // The length field is a u16, so a report carries at most this many fills
+    public static final int MAX_REPORT_FILLS = (0xFFFF - REPORT_FIXED_LENGTH - MAX_REASON_LENGTH) / FILL_LENGTH;
+
+    // Offsets within a message of the fields every request starts with
+    static final int TYPE_OFFSET = 2;
+    static final int CLIENT_ID_OFFSET = HEADER_LENGTH;
+
+    private BinaryProtocol() {
+    }
+
+    // Decoded execution report, for clients
+    public static class ExecutionReport {
+        public final long clientId;
+        public final OrderAck.Status status;
+        public final String orderId; // null when the request was rejected before it had one
+        public final long filledVolume;
+        public final long remainingVolume;
+        public final long[] tradeIds;
+        public final long[] fillPrices;
+        public final long[] fillVolumes;
+        public final String reason; // null unless rejected
+
+        ExecutionReport(long clientId, OrderAck.Status status, String orderId, long filledVolume, long remainingVolume,
+                        long[] tradeIds, long[] fillPrices, long[] fillVolumes, String reason) {
+            this.clientId = clientId;
+            this.status = status;
+            this.orderId = orderId;
+            this.filledVolume = filledVolume;
+            this.remainingVolume = remainingVolume;
+            this.tradeIds = tradeIds;
+            this.fillPrices = fillPrices;
+            this.fillVolumes = fillVolumes;
+            this.reason = reason;
+        }
+    }
+
+    // Length of the message starting at the buffer's position, or -1 until its length field is in
+    public static int frameLength(ByteBuffer buffer) {
+        if (buffer.remaining() < 2) return -1;
+        return buffer.getShort(buffer.position()) & 0xFFFF;
+    }
+
+    public static void putNewOrder(ByteBuffer buffer, long clientId, Order.Side side, OrderBookAPI.Type orderType,
+                                   String symbol, String userId, long price, long volume) {
+        putHeader(buffer, NEW_ORDER_LENGTH, NEW_ORDER);
+        buffer.putLong(clientId);
+        buffer.put((byte) side.ordinal());
+        buffer.put((byte) orderType.ordinal());
+        putAscii(buffer, symbol, SYMBOL_LENGTH);
+        putAscii(buffer, userId, USER_ID_LENGTH);
+        buffer.putLong(price);
+        buffer.putLong(volume);
+    }
+
+    public static void putMarketOrder(ByteBuffer buffer, long clientId, Order.Side side, String symbol, String userId, long volume) {
+        putHeader(buffer, MARKET_ORDER_LENGTH, MARKET_ORDER);
+        buffer.putLong(clientId);
+        buffer.put((byte) side.ordinal());
+        putAscii(buffer, symbol, SYMBOL_LENGTH);
+        putAscii(buffer, userId, USER_ID_LENGTH);
+        buffer.putLong(volume);
+    }
+
+    public static void putCancel(ByteBuffer buffer, long clientId, String symbol, String orderId) {
+        putHeader(buffer, CANCEL_LENGTH, CANCEL);
+        buffer.putLong(clientId);
+        putAscii(buffer, symbol, SYMBOL_LENGTH);
+        putAscii(buffer, orderId, ORDER_ID_LENGTH);
+    }
+
+    static int reportLength(OrderAck ack) {
+        return REPORT_FIXED_LENGTH + Math.min(ack.getFills().size(), MAX_REPORT_FILLS) * FILL_LENGTH + reasonLength(ack);
+    }
+
+    private static int reasonLength(OrderAck ack) {
+        String reason = ack.getStatus() == OrderAck.Status.REJECTED ? ack.getMessage() : null;
+        return reason != null ? Math.min(reason.length(), MAX_REASON_LENGTH) : 0;
+    }
+
+    // Fill prices go back to ticks of the symbol. Fills beyond MAX_REPORT_FILLS are left out, the
+    // filled volume still covers them.
+    static void putExecutionReport(ByteBuffer buffer, long clientId, String symbol, OrderAck ack) {
+        List<OrderAck.Fill> fills = ack.getFills();
+        int fillCount = Math.min(fills.size(), MAX_REPORT_FILLS);
+        putHeader(buffer, reportLength(ack), EXECUTION_REPORT);
+        buffer.putLong(clientId);
+        buffer.put((byte) ack.getStatus().ordinal());
+        putAscii(buffer, ack.getOrderId(), ORDER_ID_LENGTH);
+        buffer.putLong(ack.getFilledVolume());
+        buffer.putLong(ack.getRemainingVolume());
+        buffer.putShort((short) fillCount);
+        TickSize tickSize = fillCount > 0 ? TickSize.forSymbol(symbol) : null;
+        for (int i = 0; i < fillCount; i++) {
+            OrderAck.Fill fill = fills.get(i);
+            buffer.putLong(fill.getTradeId());
+            buffer.putLong(tickSize.toTicks(fill.getPrice()));
+            buffer.putLong(fill.getVolume());
+        }
+        int reasonLength = reasonLength(ack);
+        buffer.put((byte) reasonLength);
+        for (int i = 0; i < reasonLength; i++) {
+            char c = ack.getMessage().charAt(i);
+            buffer.put((byte) (c < 128 ? c : '?'));
+        }
+    }
+
+    // Reads the report starting at the buffer's position, which must hold all of it
+    public static ExecutionReport getExecutionReport(ByteBuffer buffer) {
+        int start = buffer.position();
+        int length = frameLength(buffer);
+        if (buffer.get(start + TYPE_OFFSET) != EXECUTION_REPORT) {
+            throw new IllegalArgumentException("Not an execution report: " + (char) buffer.get(start + TYPE_OFFSET));
+        }
+        buffer.position(start + HEADER_LENGTH);
+        long clientId = buffer.getLong();
+        OrderAck.Status status = OrderAck.Status.values()[buffer.get()];
+        String orderId = getAscii(buffer, buffer.position(), ORDER_ID_LENGTH);
+        buffer.position(buffer.position() + ORDER_ID_LENGTH);
+        long filled = buffer.getLong();
+        long remaining = buffer.getLong();
+        int fillCount = buffer.getShort() & 0xFFFF;
+        long[] tradeIds = new long[fillCount];
+        long[] prices = new long[fillCount];
+        long[] volumes = new long[fillCount];
+        for (int i = 0; i < fillCount; i++) {
+            tradeIds[i] = buffer.getLong();
+            prices[i] = buffer.getLong();
+            volumes[i] = buffer.getLong();
+        }
+        int reasonLength = buffer.get() & 0xFF;
+        String reason = reasonLength > 0 ? getAscii(buffer, buffer.position(), reasonLength) : null;
+        buffer.position(start + length);
+        return new ExecutionReport(clientId, status, orderId.isEmpty() ? null : orderId, filled, remaining, tradeIds, prices, volumes,
+                reason);
+    }
+
+    private static void putHeader(ByteBuffer buffer, int length, byte type) {
+        buffer.putShort((short) length);
+        buffer.put(type);
+    }
+
+    // Null writes an empty field, longer values are rejected rather than cut short
+    static void putAscii(ByteBuffer buffer, String value, int width) {
+        int length = value != null ? value.length() : 0;
+        if (length > width) {
+            throw new IllegalArgumentException("'" + value + "' is longer than " + width + " bytes");
+        }
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+        for (int i = length; i < width; i++) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    // Field at an absolute offset, without its padding
+    static String getAscii(ByteBuffer buffer, int offset, int width) {
+        int length = 0;
+        while (length < width && buffer.get(offset + length) != 0) {
+            length++;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,345 @@
+package com.trading.trading_application.gateway;
+
+import com.trading.trading_application.API.OrderBookAPI;
+import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.lib.OrderAck;
+import com.trading.trading_application.lib.TradeRequest;
+import com.trading.trading_application.service.Admission;
+import com.trading.trading_application.service.MatchingShard;
+import com.trading.trading_application.service.TradeRequestProcessor;
+import com.trading.trading_application.utils.OrderJournal;
+import com.trading.trading_application.utils.StageLatency;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// TCP order entry in the BinaryProtocol format, next to the REST controller. It has no
+// authentication of its own, so it listens on loopback unless given another address. One selector thread
+// reads every connection, has each message admitted by the owning shard and decodes it straight
+// into the ring slot the shard claims for it, rejecting it right away when the shard turns it away.
+// Execution reports are encoded by the matching thread into the connection's outbound buffer and
+// written out by the selector thread.
+public class OrderGateway {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // A client that lets this much of its reports pile up is disconnected
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    private final TradeRequestProcessor processor;
+    private final String address;
+    private final int port;
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread thread;
+    private volatile boolean running;
+    // Connections with reports to write, handed over by matching threads
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+    // Slot being filled, selector thread only
+    private final MatchingShard.Claim claim = new MatchingShard.Claim();
+
+    // A negative port disables the gateway, 0 picks a free one. Listens on loopback only.
+    public OrderGateway(TradeRequestProcessor processor, int port) {
+        this(processor, InetAddress.getLoopbackAddress().getHostAddress(), port);
+    }
+
+    // Same, on the given interface address, 0.0.0.0 for all of them
+    public OrderGateway(TradeRequestProcessor processor, String address, int port) {
+        this.processor = processor;
+        this.address = address;
+        this.port = port;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (port < 0) return;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(address, port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        thread = new Thread(this::run, "OrderGateway");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("Order gateway listening on " + address + " port " + getPort());
+    }
+
+    // Port actually bound, -1 while not running
+    public int getPort() {
+        try {
+            return server != null ? ((InetSocketAddress) server.getLocalAddress()).getPort() : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) return;
+        running = false;
+        selector.wakeup();
+        thread.join();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                Connection connection;
+                while ((connection = pendingWrites.poll()) != null) {
+                    connection.flush();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    connection = (Connection) key.attachment();
+                    if (key.isReadable()) connection.read();
+                    if (key.isValid() && key.isWritable()) connection.flush();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Order gateway stopped: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection connection) connection.close();
+            }
+            try {
+                server.close();
+                selector.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close order gateway: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    // Decodes one complete message into a slot of the owning shard's ring
+    private void dispatch(Connection connection, ByteBuffer in, int length) {
+        long start = System.nanoTime();
+        int base = in.position();
+        byte type = in.get(base + BinaryProtocol.TYPE_OFFSET);
+        long clientId = in.getLong(base + BinaryProtocol.CLIENT_ID_OFFSET);
+        int offset = base + BinaryProtocol.CLIENT_ID_OFFSET + 8;
+
+        TradeRequest.RequestType requestType;
+        Order.Side side = null;
+        OrderBookAPI.Type orderType = null;
+        String symbol;
+        String userId = null;
+        String orderId = null;
+        long price = 0;
+        long volume = 0;
+        switch (type) {
+            case BinaryProtocol.NEW_ORDER -> {
+                if (length != BinaryProtocol.NEW_ORDER_LENGTH) {
+                    connection.reject(clientId, "Bad new order length " + length);
+                    return;
+                }
+                requestType = TradeRequest.RequestType.PLACE_ORDER;
+                side = side(in.get(offset));
+                orderType = orderType(in.get(offset + 1));
+                offset += 2;
+                symbol = BinaryProtocol.getAscii(in, offset, BinaryProtocol.SYMBOL_LENGTH);
+                offset += BinaryProtocol.SYMBOL_LENGTH;
+                userId = BinaryProtocol.getAscii(in, offset, BinaryProtocol.USER_ID_LENGTH);
+                offset += BinaryProtocol.USER_ID_LENGTH;
+                price = in.getLong(offset);
+                volume = in.getLong(offset + 8);
+                if (orderType == null || price <= 0) {
+                    connection.reject(clientId, "Bad order type or price");
+                    return;
+                }
+            }
+            case BinaryProtocol.MARKET_ORDER -> {
+                if (length != BinaryProtocol.MARKET_ORDER_LENGTH) {
+                    connection.reject(clientId, "Bad market order length " + length);
+                    return;
+                }
+                requestType = TradeRequest.RequestType.PLACE_MARKET_ORDER;
+                side = side(in.get(offset));
+                orderType = OrderBookAPI.Type.MarketOrder;
+                offset += 1;
+                symbol = BinaryProtocol.getAscii(in, offset, BinaryProtocol.SYMBOL_LENGTH);
+                offset += BinaryProtocol.SYMBOL_LENGTH;
+                userId = BinaryProtocol.getAscii(in, offset, BinaryProtocol.USER_ID_LENGTH);
+                offset += BinaryProtocol.USER_ID_LENGTH;
+                volume = in.getLong(offset);
+            }
+            case BinaryProtocol.CANCEL -> {
+                if (length != BinaryProtocol.CANCEL_LENGTH) {
+                    connection.reject(clientId, "Bad cancel length " + length);
+                    return;
+                }
+                requestType = TradeRequest.RequestType.CANCEL_ORDER;
+                symbol = BinaryProtocol.getAscii(in, offset, BinaryProtocol.SYMBOL_LENGTH);
+                orderId = BinaryProtocol.getAscii(in, offset + BinaryProtocol.SYMBOL_LENGTH, BinaryProtocol.ORDER_ID_LENGTH);
+            }
+            default -> {
+                connection.reject(clientId, "Unknown message type " + (char) type);
+                return;
+            }
+        }
+        if (symbol.isEmpty() || (requestType != TradeRequest.RequestType.CANCEL_ORDER && (side == null || userId.isEmpty() || volume <= 0))) {
+            connection.reject(clientId, "Missing symbol, side, user or volume");
+            return;
+        }
+        // The protocol's fields are narrower than the journal's today, this keeps it that way
+        try {
+            OrderJournal.checkFields(symbol, userId, orderId);
+        } catch (IllegalArgumentException e) {
+            connection.reject(clientId, e.getMessage());
+            return;
+        }
+
+        MatchingShard shard = processor.getShard(symbol);
+        Admission admission = shard.claim(requestType, userId, orderId, claim);
+        if (admission != Admission.ACCEPTED) {
+            connection.reject(clientId, admission.getReason());
+            return;
+        }
+        CompletableFuture<OrderAck> ack = new CompletableFuture<>();
+        ack.thenAccept(result -> connection.report(clientId, symbol, result));
+        TradeRequest request = claim.getSlot();
+        request.type = requestType;
+        request.userId = userId;
+        request.stockSymbol = symbol;
+        request.price = price;
+        request.volume = volume;
+        request.side = side;
+        request.orderType = orderType;
+        request.orderId = orderId;
+        request.ack = ack;
+        shard.publish(claim);
+        StageLatency.CONTROLLER_ACCEPT.recordSince(start);
+    }
+
+    private static Order.Side side(byte value) {
+        return value == 0 ? Order.Side.BUY : value == 1 ? Order.Side.SELL : null;
+    }
+
+    // Limit order types only, market orders have their own message
+    private static OrderBookAPI.Type orderType(byte value) {
+        return value == 0 ? OrderBookAPI.Type.FillOrKill : value == 1 ? OrderBookAPI.Type.GoodTilCancel : null;
+    }
+
+    private final class Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        // Reports not yet written, in write mode, guarded by this
+        private final ByteBuffer out = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        private boolean flushQueued;
+        private boolean overflowed;
+        private volatile boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        // Selector thread
+        void read() {
+            try {
+                if (channel.read(in) < 0) {
+                    close();
+                    return;
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            in.flip();
+            while (true) {
+                int length = BinaryProtocol.frameLength(in);
+                if (length < 0) break;
+                if (length < BinaryProtocol.HEADER_LENGTH + 8) {
+                    // Framing is lost, nothing after this can be trusted
+                    close();
+                    return;
+                }
+                if (in.remaining() < length) break;
+                dispatch(this, in, length);
+                in.position(in.position() + length);
+            }
+            in.compact();
+        }
+
+        // Any thread: matching threads report outcomes, the selector thread rejects bad messages
+        void report(long clientId, String symbol, OrderAck ack) {
+            synchronized (this) {
+                if (closed || overflowed) return;
+                if (out.remaining() < BinaryProtocol.reportLength(ack)) {
+                    overflowed = true;
+                } else {
+                    BinaryProtocol.putExecutionReport(out, clientId, symbol, ack);
+                }
+                if (flushQueued) return;
+                flushQueued = true;
+            }
+            pendingWrites.add(this);
+            selector.wakeup();
+        }
+
+        void reject(long clientId, String message) {
+            report(clientId, null, OrderAck.rejected(null, message));
+        }
+
+        // Selector thread
+        void flush() {
+            synchronized (this) {
+                flushQueued = false;
+                if (closed) return;
+                if (overflowed) {
+                    System.err.println("Order gateway client too slow reading its reports, disconnecting");
+                    close();
+                    return;
+                }
+                try {
+                    out.flip();
+                    channel.write(out);
+                    out.compact();
+                } catch (IOException e) {
+                    close();
+                    return;
+                }
+                key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            }
+        }
+
+        void close() {
+            closed = true;
+            if (key != null) key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+        }
+    }
+}
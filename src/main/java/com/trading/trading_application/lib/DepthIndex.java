@@ -0,0 +1,188 @@
+package com.trading.trading_application.lib;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Cumulative resting volume by tick price for one side of a stock, kept as a Fenwick tree over a
+// sliding window of ticks. StockOrders updates it on every add, fill and cancel, so
+// "volume at or below / above price X" is answered in O(log window) instead of a scan over levels.
+// Like the ladder, the window re-centres and grows on demand, and prices too far from the rest
+// of the book for the maximum window are tracked in a small sorted overflow map.
+public class DepthIndex {
+
+    public static final int DEFAULT_INITIAL_WINDOW = 1 << 10;
+    public static final int DEFAULT_MAX_WINDOW = 1 << 20;
+
+    private final int maxWindow;
+
+    private long[] tree;        // Fenwick tree, 1-based
+    private long[] volumes;     // Raw volume per tick, 0-based
+    private long base;          // Tick price of volumes[0]
+    private long windowVolume;
+    private long totalVolume;
+    private final TreeMap<Long, Long> overflow = new TreeMap<>();
+
+    public DepthIndex() {
+        this(DEFAULT_INITIAL_WINDOW, DEFAULT_MAX_WINDOW);
+    }
+
+    public DepthIndex(int initialWindow, int maxWindow) {
+        if (initialWindow < 1 || initialWindow > maxWindow) {
+            throw new IllegalArgumentException("Depth window must be positive and initial <= max.");
+        }
+        this.maxWindow = maxWindow;
+        this.tree = new long[initialWindow + 1];
+        this.volumes = new long[initialWindow];
+    }
+
+    public long getTotalVolume() {
+        return totalVolume;
+    }
+
+    // Volume resting at exactly the given price
+    public long volumeAt(long price) {
+        long index = price - base;
+        if (index >= 0 && index < volumes.length) {
+            return volumes[(int) index];
+        }
+        Long volume = overflow.isEmpty() ? null : overflow.get(price);
+        return volume != null ? volume : 0;
+    }
+
+    // Adds delta (negative for fills and cancels) to the volume resting at the given price
+    public void add(long price, long delta) {
+        if (delta == 0) return;
+        totalVolume += delta;
+
+        long index = price - base;
+        if (index < 0 || index >= volumes.length) {
+            if (windowVolume == 0) {
+                base = price - (volumes.length >>> 1);
+                absorbOverflow();
+            } else if (!refit(price)) {
+                overflow.merge(price, delta, (a, b) -> a + b == 0 ? null : a + b);
+                return;
+            }
+            index = price - base;
+        }
+        int i = (int) index;
+        volumes[i] += delta;
+        windowVolume += delta;
+        for (int node = i + 1; node < tree.length; node += node & -node) {
+            tree[node] += delta;
+        }
+    }
+
+    // Total volume at prices at or below the given price
+    public long volumeAtOrBelow(long price) {
+        long total = 0;
+        long index = price - base;
+        if (index >= volumes.length - 1) {
+            total = windowVolume;
+        } else if (index >= 0) {
+            for (int node = (int) index + 1; node > 0; node -= node & -node) {
+                total += tree[node];
+            }
+        }
+        if (!overflow.isEmpty()) {
+            for (long volume : overflow.headMap(price, true).values()) {
+                total += volume;
+            }
+        }
+        return total;
+    }
+
+    // Total volume at prices at or above the given price
+    public long volumeAtOrAbove(long price) {
+        return totalVolume - volumeAtOrBelow(price - 1);
+    }
+
+    // Fills in up to n occupied prices and their volumes, best first, starting the scan at the
+    // side's best price. Bids are best highest first, asks lowest first. Returns the count.
+    public int topLevels(boolean highestFirst, long bestPrice, int n, long[] prices, long[] levelVolumes) {
+        Iterator<Map.Entry<Long, Long>> outside = (highestFirst ? overflow.descendingMap() : overflow).entrySet().iterator();
+        Map.Entry<Long, Long> pending = outside.hasNext() ? outside.next() : null;
+        int step = highestFirst ? -1 : 1;
+        long start = Math.max(0, Math.min(bestPrice - base, volumes.length - 1));
+        int i = (int) start;
+        long remaining = windowVolume; // window volume not visited yet, the scan stops once it is 0
+        int count = 0;
+        while (count < n) {
+            while (remaining > 0 && volumes[i] == 0) i += step;
+            boolean inWindow = remaining > 0;
+            if (pending != null && (!inWindow || (highestFirst ? pending.getKey() > base + i : pending.getKey() < base + i))) {
+                prices[count] = pending.getKey();
+                levelVolumes[count++] = pending.getValue();
+                pending = outside.hasNext() ? outside.next() : null;
+            } else if (inWindow) {
+                prices[count] = base + i;
+                levelVolumes[count++] = volumes[i];
+                remaining -= volumes[i];
+                i += step;
+            } else {
+                break;
+            }
+        }
+        return count;
+    }
+
+    // Rebuilds the window around the live window volume and the new price, growing it if
+    // needed. Returns false when the combined span would exceed the maximum window.
+    private boolean refit(long price) {
+        int low = 0;
+        while (volumes[low] == 0) low++;
+        int high = volumes.length - 1;
+        while (volumes[high] == 0) high--;
+
+        long lowPrice = Math.min(price, base + low);
+        long highPrice = Math.max(price, base + high);
+        long span = highPrice - lowPrice + 1;
+        if (span > maxWindow) {
+            return false;
+        }
+
+        int capacity = volumes.length;
+        while (capacity < span * 2 && capacity < maxWindow) {
+            capacity = (int) Math.min((long) capacity << 1, maxWindow);
+        }
+        long newBase = lowPrice - (capacity - span) / 2;
+        long[] newVolumes = new long[capacity];
+        for (int i = low; i <= high; i++) {
+            newVolumes[(int) (base + i - newBase)] = volumes[i];
+        }
+        volumes = newVolumes;
+        base = newBase;
+        rebuildTree();
+        absorbOverflow();
+        return true;
+    }
+
+    // Moves overflow volume the current window covers back into the tree
+    private void absorbOverflow() {
+        if (overflow.isEmpty()) return;
+        Map<Long, Long> covered = overflow.subMap(base, true, base + volumes.length - 1, true);
+        for (Map.Entry<Long, Long> entry : covered.entrySet()) {
+            int i = (int) (entry.getKey() - base);
+            volumes[i] += entry.getValue();
+            windowVolume += entry.getValue();
+            for (int node = i + 1; node < tree.length; node += node & -node) {
+                tree[node] += entry.getValue();
+            }
+        }
+        covered.clear();
+    }
+
+    // O(window) Fenwick construction from the raw volumes
+    private void rebuildTree() {
+        tree = new long[volumes.length + 1];
+        for (int i = 0; i < volumes.length; i++) {
+            int node = i + 1;
+            tree[node] += volumes[i];
+            int parent = node + (node & -node);
+            if (parent < tree.length) {
+                tree[parent] += tree[node];
+            }
+        }
+    }
+}
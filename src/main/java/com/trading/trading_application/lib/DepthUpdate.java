@@ -0,0 +1,63 @@
+package com.trading.trading_application.lib;
+
+import java.util.List;
+
+// One message of the L2 depth feed. The first message of a stream is a snapshot of the top levels
+// of each side; every later one lists only the levels that changed since the previous message,
+// with their new total volume, and volume 0 for a level that left the view. Slow consumers get
+// fewer, conflated messages that still take them straight to the latest book.
+public class DepthUpdate {
+
+    public static class Level {
+        private final double price;
+        private final long volume;
+
+        public Level(double price, long volume) {
+            this.price = price;
+            this.volume = volume;
+        }
+
+        public double getPrice() {
+            return price;
+        }
+
+        public long getVolume() {
+            return volume;
+        }
+    }
+
+    private final String symbol;
+    private final long sequence;
+    private final boolean snapshot;
+    private final List<Level> bids;
+    private final List<Level> asks;
+
+    public DepthUpdate(String symbol, long sequence, boolean snapshot, List<Level> bids, List<Level> asks) {
+        this.symbol = symbol;
+        this.sequence = sequence;
+        this.snapshot = snapshot;
+        this.bids = bids;
+        this.asks = asks;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    // Version of the symbol's depth this message brings the client to, increasing within a stream
+    public long getSequence() {
+        return sequence;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    public List<Level> getBids() {
+        return bids;
+    }
+
+    public List<Level> getAsks() {
+        return asks;
+    }
+}
@@ -1,22 +1,25 @@
 package com.trading.trading_application.lib;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.function.LongConsumer;
 
+// Orders resting at one price level in time priority. The queue is an intrusive doubly linked
+// list of order handles: the prev/next links live in the order store, so any order can be
+// unlinked in O(1) and the level itself holds no per-order objects.
 public class FixedPriceOrderQueue {
 
-    private final double price;
+    private final long price;
     private long totalVolume;
-    private final Queue<Order> orders;
+    private long head = OrderStore.NONE;
+    private long tail = OrderStore.NONE;
+    private int size;
 
-    public FixedPriceOrderQueue(double price) {
+    public FixedPriceOrderQueue(long price) {
         this.price = price;
         this.totalVolume = 0;
-        this.orders = new LinkedList<>();
     }
 
     // Getter for price
-    public double getPrice() {
+    public long getPrice() {
         return price;
     }
 
@@ -25,43 +28,90 @@ public class FixedPriceOrderQueue {
         return totalVolume;
     }
 
-    // Getter for queue (read-only purposes)
-    public Queue<Order> getOrders() {
-        return new LinkedList<>(orders); // return a copy to prevent external modification
+    // Number of orders resting at this level
+    public int size() {
+        return size;
     }
 
-    // Add an order to the queue
-    public void addOrder(Order order) {
-        if (order.getPrice() != this.price) {
+    public boolean isEmpty() {
+        return head == OrderStore.NONE;
+    }
+
+    // Visits the order handles front to back
+    public void forEachOrder(OrderStore store, LongConsumer action) {
+        for (long order = head; order != OrderStore.NONE; order = store.getNext(order)) {
+            action.accept(order);
+        }
+    }
+
+    // Add an order to the back of the queue
+    public void addOrder(OrderStore store, long order) {
+        if (store.getPrice(order) != this.price) {
             throw new IllegalArgumentException("Order price does not match the queue price level.");
         }
 
-        orders.add(order);
-        totalVolume += order.getVolume();
+        store.setPrev(order, tail);
+        store.setNext(order, OrderStore.NONE);
+        if (tail == OrderStore.NONE) {
+            head = order;
+        } else {
+            store.setNext(tail, order);
+        }
+        tail = order;
+        size++;
+        totalVolume += store.getVolume(order);
     }
 
-    // Optionally, a method to remove the head order (e.g., after full execution)
-    public Order pollOrder() {
-        Order order = orders.poll();
-        if (order != null) {
-            totalVolume -= order.getVolume();
+    // Removes the head order (e.g., after full execution), NONE if the level is empty
+    public long pollOrder(OrderStore store) {
+        long order = head;
+        if (order != OrderStore.NONE) {
+            unlink(store, order);
+            totalVolume -= store.getVolume(order);
             if (totalVolume < 0) totalVolume = 0; // safety check
         }
         return order;
     }
 
-    public Order peekOrder() {
-        Order order = orders.peek();
-        if(order != null){
-            return order;
-        }
-        return null;
+    public long peekOrder() {
+        return head;
     }
 
+    // Unlinks an order resting on this level in O(1)
+    public void removeOrder(OrderStore store, long order) {
+        unlink(store, order);
+        totalVolume -= store.getVolume(order);
+        if (totalVolume < 0) totalVolume = 0; // safety check
+    }
+
+
+    // Takes volume off an order where it stands, it keeps its place in the queue
+    public void reduceOrder(OrderStore store, long order, long delta) {
+        store.setVolume(order, store.getVolume(order) - delta);
+        totalVolume -= delta;
+    }
 
     // Adjust total volume manually (e.g., after a partial fill)
     public void adjustTotalVolume(long delta) {
         this.totalVolume += delta;
         if (this.totalVolume < 0) this.totalVolume = 0; // safety
     }
+
+    private void unlink(OrderStore store, long order) {
+        long prev = store.getPrev(order);
+        long next = store.getNext(order);
+        if (prev == OrderStore.NONE) {
+            head = next;
+        } else {
+            store.setNext(prev, next);
+        }
+        if (next == OrderStore.NONE) {
+            tail = prev;
+        } else {
+            store.setPrev(next, prev);
+        }
+        store.setPrev(order, OrderStore.NONE);
+        store.setNext(order, OrderStore.NONE);
+        size--;
+    }
 }
@@ -0,0 +1,151 @@
+package com.trading.trading_application.lib;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Keeps the Order objects themselves: a handle is a slot in an array of them, and the queue links
+// live on the orders. Freed slots are chained into a free list for reuse, so freeing never allocates.
+public class HeapOrderStore implements OrderStore {
+
+    private Order[] orders = new Order[1024];
+    private int[] nextFree = new int[1024];
+    private int used; // slots handed out at least once
+    private int freeHead = -1;
+    private final Map<String, Order> byId = new HashMap<>();
+
+    @Override
+    public boolean acceptsOrderId(String orderId) {
+        return true;
+    }
+
+    @Override
+    public long add(Order order) {
+        if (order.handle != NONE) {
+            throw new IllegalArgumentException("Order is already resting on a price level.");
+        }
+        int slot;
+        if (freeHead != -1) {
+            slot = freeHead;
+            freeHead = nextFree[slot];
+        } else {
+            if (used == orders.length) {
+                orders = Arrays.copyOf(orders, orders.length * 2);
+                nextFree = Arrays.copyOf(nextFree, orders.length);
+            }
+            slot = used++;
+        }
+        orders[slot] = order;
+        order.handle = slot;
+        order.prev = NONE;
+        order.next = NONE;
+        byId.put(order.getOrderId(), order);
+        return slot;
+    }
+
+    @Override
+    public void free(long handle) {
+        Order order = orders[(int) handle];
+        orders[(int) handle] = null;
+        byId.remove(order.getOrderId());
+        order.handle = NONE;
+        nextFree[(int) handle] = freeHead;
+        freeHead = (int) handle;
+    }
+
+    @Override
+    public long find(String orderId) {
+        Order order = byId.get(orderId);
+        return order != null ? order.handle : NONE;
+    }
+
+    @Override
+    public int size() {
+        return byId.size();
+    }
+
+    @Override
+    public long getPrice(long handle) {
+        return orders[(int) handle].getPrice();
+    }
+
+    @Override
+    public long getVolume(long handle) {
+        return orders[(int) handle].getVolume();
+    }
+
+    @Override
+    public void setVolume(long handle, long volume) {
+        orders[(int) handle].setVolume(volume);
+    }
+
+    @Override
+    public long getTimestamp(long handle) {
+        return orders[(int) handle].getTimestamp();
+    }
+
+    @Override
+    public Order.Side getSide(long handle) {
+        return orders[(int) handle].getSide();
+    }
+
+    @Override
+    public String getStockSymbol(long handle) {
+        return orders[(int) handle].getStockSymbol();
+    }
+
+    @Override
+    public int getSymbolKey(long handle) {
+        return orders[(int) handle].getSymbolKey();
+    }
+
+    @Override
+    public String getUserId(long handle) {
+        return orders[(int) handle].getUserId();
+    }
+
+    @Override
+    public String getOrderId(long handle) {
+        return orders[(int) handle].getOrderId();
+    }
+
+    @Override
+    public boolean packsOrderIds() {
+        return false;
+    }
+
+    @Override
+    public long getOrderIdHigh(long handle) {
+        throw new UnsupportedOperationException("Order IDs are kept as strings");
+    }
+
+    @Override
+    public long getOrderIdLow(long handle) {
+        throw new UnsupportedOperationException("Order IDs are kept as strings");
+    }
+
+    @Override
+    public long getPrev(long handle) {
+        return orders[(int) handle].prev;
+    }
+
+    @Override
+    public void setPrev(long handle, long prev) {
+        orders[(int) handle].prev = prev;
+    }
+
+    @Override
+    public long getNext(long handle) {
+        return orders[(int) handle].next;
+    }
+
+    @Override
+    public void setNext(long handle, long next) {
+        orders[(int) handle].next = next;
+    }
+
+    @Override
+    public Order toOrder(long handle) {
+        return orders[(int) handle];
+    }
+}
@@ -0,0 +1,89 @@
+package com.trading.trading_application.lib;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+// Price levels kept in a binary heap ordered best price first, plus a map for direct level lookup.
+// Emptied levels are dropped from the map straight away but only leave the heap once they reach the top.
+public class HeapPriceLevels implements PriceLevels {
+
+    private final Comparator<FixedPriceOrderQueue> comparator;
+    private final PriorityQueue<FixedPriceOrderQueue> priceHeap;
+    private final PriceLevelMap priceToQueueMap;
+
+    public HeapPriceLevels(StockOrders.Side side) {
+        this.comparator = (a, b) -> side == StockOrders.Side.BUY
+                ? Long.compare(b.getPrice(), a.getPrice())
+                : Long.compare(a.getPrice(), b.getPrice());
+        this.priceHeap = new PriorityQueue<>(comparator);
+        this.priceToQueueMap = new PriceLevelMap();
+    }
+
+    @Override
+    public FixedPriceOrderQueue get(long price) {
+        return priceToQueueMap.get(price);
+    }
+
+    @Override
+    public FixedPriceOrderQueue getOrCreate(long price) {
+        FixedPriceOrderQueue queue = priceToQueueMap.get(price);
+        if (queue == null) {
+            queue = new FixedPriceOrderQueue(price);
+            priceToQueueMap.put(price, queue);
+            priceHeap.offer(queue);
+        }
+        return queue;
+    }
+
+    @Override
+    public FixedPriceOrderQueue best() {
+        cleanupHeap();
+        return priceHeap.peek();
+    }
+
+    @Override
+    public void remove(FixedPriceOrderQueue level) {
+        if (priceToQueueMap.get(level.getPrice()) == level) {
+            priceToQueueMap.remove(level.getPrice());
+        }
+        if (priceHeap.peek() == level) {
+            priceHeap.poll();
+        }
+    }
+
+    @Override
+    public int size() {
+        return priceToQueueMap.size();
+    }
+
+    @Override
+    public void forEachBestFirst(Consumer<FixedPriceOrderQueue> action) {
+        FixedPriceOrderQueue[] levels = new FixedPriceOrderQueue[priceToQueueMap.size()];
+        int n = 0;
+        for (int slot = 0; slot < priceToQueueMap.capacity(); slot++) {
+            FixedPriceOrderQueue queue = priceToQueueMap.levelAt(slot);
+            if (queue != null) levels[n++] = queue;
+        }
+        Arrays.sort(levels, 0, n, comparator);
+        for (int i = 0; i < n; i++) {
+            action.accept(levels[i]);
+        }
+    }
+
+    // Removes empty or already detached levels from the heap top. A detached level can share its
+    // price with a newer live level, so only the exact instance held by the map counts as live.
+    private void cleanupHeap() {
+        while (!priceHeap.isEmpty()) {
+            FixedPriceOrderQueue top = priceHeap.peek();
+            if (!top.isEmpty() && priceToQueueMap.get(top.getPrice()) == top) {
+                return;
+            }
+            priceHeap.poll();
+            if (priceToQueueMap.get(top.getPrice()) == top) {
+                priceToQueueMap.remove(top.getPrice());
+            }
+        }
+    }
+}
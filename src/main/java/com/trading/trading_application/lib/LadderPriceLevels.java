@@ -0,0 +1,215 @@
+package com.trading.trading_application.lib;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+// Price levels stored in a tick-indexed array covering a sliding window of prices.
+// An occupancy bitmap and a best-price cursor make insert, best-price lookup and level removal
+// constant time; finding the next best level after the best one empties scans the bitmap 64 ticks
+// per word. The window re-centres and grows when a price falls outside it, and prices too far
+// from the rest of the book to fit the maximum window are kept in a small sorted overflow map.
+public class LadderPriceLevels implements PriceLevels {
+
+    public static final int DEFAULT_INITIAL_WINDOW = 1 << 10;
+    public static final int DEFAULT_MAX_WINDOW = 1 << 20;
+
+    private final StockOrders.Side side;
+    private final int maxWindow;
+
+    private FixedPriceOrderQueue[] window;
+    private long[] occupied;
+    private long base;          // Tick price of window[0]
+    private int windowLevels;   // Live levels inside the window
+    private int bestIndex = -1; // Window index of the best level, -1 if the window is empty
+    private final TreeMap<Long, FixedPriceOrderQueue> overflow = new TreeMap<>();
+
+    public LadderPriceLevels(StockOrders.Side side) {
+        this(side, DEFAULT_INITIAL_WINDOW, DEFAULT_MAX_WINDOW);
+    }
+
+    public LadderPriceLevels(StockOrders.Side side, int initialWindow, int maxWindow) {
+        if (Integer.bitCount(initialWindow) != 1 || Integer.bitCount(maxWindow) != 1
+                || initialWindow < 64 || initialWindow > maxWindow) {
+            throw new IllegalArgumentException("Ladder windows must be powers of two, at least 64 and initial <= max.");
+        }
+        this.side = side;
+        this.maxWindow = maxWindow;
+        this.window = new FixedPriceOrderQueue[initialWindow];
+        this.occupied = new long[initialWindow >>> 6];
+    }
+
+    @Override
+    public FixedPriceOrderQueue get(long price) {
+        long index = price - base;
+        if (index >= 0 && index < window.length) {
+            return window[(int) index];
+        }
+        return overflow.isEmpty() ? null : overflow.get(price);
+    }
+
+    @Override
+    public FixedPriceOrderQueue getOrCreate(long price) {
+        FixedPriceOrderQueue existing = get(price);
+        if (existing != null) return existing;
+
+        FixedPriceOrderQueue level = new FixedPriceOrderQueue(price);
+        if (windowLevels == 0) {
+            // Nothing pins the window, centre it on the new price
+            base = price - (window.length >>> 1);
+            absorbOverflow();
+        } else if (price - base < 0 || price - base >= window.length) {
+            if (!refit(price)) {
+                overflow.put(price, level);
+                return level;
+            }
+        }
+        place((int) (price - base), level);
+        return level;
+    }
+
+    @Override
+    public FixedPriceOrderQueue best() {
+        FixedPriceOrderQueue inWindow = bestIndex >= 0 ? window[bestIndex] : null;
+        if (overflow.isEmpty()) return inWindow;
+
+        Map.Entry<Long, FixedPriceOrderQueue> entry = side == StockOrders.Side.BUY
+                ? overflow.lastEntry()
+                : overflow.firstEntry();
+        FixedPriceOrderQueue outside = entry.getValue();
+        if (inWindow == null) return outside;
+        return isBetter(outside.getPrice(), inWindow.getPrice()) ? outside : inWindow;
+    }
+
+    @Override
+    public void remove(FixedPriceOrderQueue level) {
+        long index = level.getPrice() - base;
+        if (index >= 0 && index < window.length && window[(int) index] == level) {
+            int i = (int) index;
+            window[i] = null;
+            occupied[i >>> 6] &= ~(1L << i);
+            windowLevels--;
+            if (i == bestIndex) {
+                bestIndex = side == StockOrders.Side.BUY ? previousOccupied(i - 1) : nextOccupied(i + 1);
+            }
+            if (windowLevels == 0 && !overflow.isEmpty()) {
+                pullInOverflow();
+            }
+        } else if (overflow.get(level.getPrice()) == level) {
+            overflow.remove(level.getPrice());
+        }
+    }
+
+    @Override
+    public int size() {
+        return windowLevels + overflow.size();
+    }
+
+    @Override
+    public void forEachBestFirst(Consumer<FixedPriceOrderQueue> action) {
+        boolean buy = side == StockOrders.Side.BUY;
+        Iterable<FixedPriceOrderQueue> outside = buy ? overflow.descendingMap().values() : overflow.values();
+        // Overflow levels better than the window come first, the rest after the window
+        Iterator<FixedPriceOrderQueue> it = outside.iterator();
+        FixedPriceOrderQueue pending = it.hasNext() ? it.next() : null;
+        for (int i = bestIndex; i >= 0; i = buy ? previousOccupied(i - 1) : nextOccupied(i + 1)) {
+            while (pending != null && isBetter(pending.getPrice(), base + i)) {
+                action.accept(pending);
+                pending = it.hasNext() ? it.next() : null;
+            }
+            action.accept(window[i]);
+        }
+        while (pending != null) {
+            action.accept(pending);
+            pending = it.hasNext() ? it.next() : null;
+        }
+    }
+
+    private boolean isBetter(long price, long than) {
+        return side == StockOrders.Side.BUY ? price > than : price < than;
+    }
+
+    // Rebuilds the window so it covers the live window levels and the new price, growing it if
+    // needed. Returns false when the combined span would exceed the maximum window.
+    private boolean refit(long price) {
+        int low = nextOccupied(0);
+        int high = previousOccupied(window.length - 1);
+        long lowPrice = Math.min(price, base + low);
+        long highPrice = Math.max(price, base + high);
+        long span = highPrice - lowPrice + 1;
+        if (span > maxWindow) {
+            return false;
+        }
+
+        int capacity = window.length;
+        while (capacity < span * 2 && capacity < maxWindow) {
+            capacity <<= 1;
+        }
+        long newBase = lowPrice - (capacity - span) / 2;
+        FixedPriceOrderQueue[] newWindow = new FixedPriceOrderQueue[capacity];
+        long[] newOccupied = new long[capacity >>> 6];
+        for (int i = low; i >= 0; i = nextOccupied(i + 1)) {
+            int moved = (int) (base + i - newBase);
+            newWindow[moved] = window[i];
+            newOccupied[moved >>> 6] |= 1L << moved;
+        }
+        bestIndex = bestIndex < 0 ? -1 : (int) (base + bestIndex - newBase);
+        window = newWindow;
+        occupied = newOccupied;
+        base = newBase;
+        absorbOverflow();
+        return true;
+    }
+
+    // Once the window has emptied, re-centre it on the best overflow level
+    private void pullInOverflow() {
+        long centre = (side == StockOrders.Side.BUY ? overflow.lastKey() : overflow.firstKey());
+        base = centre - (window.length >>> 1);
+        absorbOverflow();
+    }
+
+    // Moves every overflow level the current window covers back into the array
+    private void absorbOverflow() {
+        if (overflow.isEmpty()) return;
+        Iterator<FixedPriceOrderQueue> it = overflow.subMap(base, true, base + window.length - 1, true).values().iterator();
+        while (it.hasNext()) {
+            FixedPriceOrderQueue level = it.next();
+            place((int) (level.getPrice() - base), level);
+            it.remove();
+        }
+    }
+
+    private void place(int index, FixedPriceOrderQueue level) {
+        window[index] = level;
+        occupied[index >>> 6] |= 1L << index;
+        windowLevels++;
+        if (bestIndex < 0 || (side == StockOrders.Side.BUY ? index > bestIndex : index < bestIndex)) {
+            bestIndex = index;
+        }
+    }
+
+    // First occupied window index at or above from, -1 if none
+    private int nextOccupied(int from) {
+        if (from >= window.length) return -1;
+        int word = from >>> 6;
+        long bits = occupied[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) return (word << 6) + Long.numberOfTrailingZeros(bits);
+            if (++word == occupied.length) return -1;
+            bits = occupied[word];
+        }
+    }
+
+    // Last occupied window index at or below from, -1 if none
+    private int previousOccupied(int from) {
+        if (from < 0) return -1;
+        int word = from >>> 6;
+        long bits = occupied[word] & (-1L >>> (63 - (from & 63)));
+        while (true) {
+            if (bits != 0) return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+            if (--word < 0) return -1;
+            bits = occupied[word];
+        }
+    }
+}
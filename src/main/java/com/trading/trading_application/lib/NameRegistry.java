@@ -0,0 +1,62 @@
+package com.trading.trading_application.lib;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Dense int keys for symbols and user IDs, assigned at first sight and kept for the life of the
+// process. Ingress resolves a name once and everything after it indexes arrays by the key.
+// Keys follow arrival order, so they differ between runs: nothing persisted or routed by may use them.
+public final class NameRegistry {
+
+    public static final NameRegistry SYMBOLS = new NameRegistry();
+    public static final NameRegistry USERS = new NameRegistry();
+
+    // Not a key, for names that were not resolved
+    public static final int NONE = -1;
+
+    private final ConcurrentHashMap<String, Integer> keys = new ConcurrentHashMap<>();
+    // Grown under the lock; a key is written to it before the key is published through keys
+    private volatile String[] names = new String[64];
+    private int size;
+
+    private NameRegistry() {
+    }
+
+    // Any thread. NONE for null.
+    public int keyOf(String name) {
+        if (name == null) return NONE;
+        Integer key = keys.get(name);
+        return key != null ? key : register(name);
+    }
+
+    // Any thread. NONE for a name never seen, which is left unregistered: for lookups that must
+    // not grow the registry, such as queries.
+    public int find(String name) {
+        if (name == null) return NONE;
+        Integer key = keys.get(name);
+        return key != null ? key : NONE;
+    }
+
+    // Any thread, for keys handed out by keyOf
+    public String nameOf(int key) {
+        return key >= 0 ? names[key] : null;
+    }
+
+    // Number of keys handed out, every key is below it
+    public int size() {
+        return keys.size();
+    }
+
+    private synchronized int register(String name) {
+        Integer existing = keys.get(name);
+        if (existing != null) return existing;
+        String[] current = names;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+        }
+        current[size] = name;
+        names = current;
+        keys.put(name, size);
+        return size++;
+    }
+}
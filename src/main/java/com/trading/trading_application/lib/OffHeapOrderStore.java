@@ -0,0 +1,338 @@
+package com.trading.trading_application.lib;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+import java.util.UUID;
+
+// Keeps resting orders outside the Java heap, so a deep book gives the garbage collector nothing
+// to trace or copy. Orders are fixed 64 byte records in slabs of native memory, added as the book
+// grows and never moved. A handle is a record number and freed records are chained into a free
+// list for reuse. Order IDs must be lower case UUIDs, stored as two longs and found through an
+// open addressing index that is off heap as well. Symbols and user IDs are stored as their
+// NameRegistry keys.
+public class OffHeapOrderStore implements OrderStore {
+
+    static final int RECORD_SIZE = 64;
+    private static final int SLAB_BITS = 16; // 65536 records, 4 MiB per slab
+    private static final int SLAB_MASK = (1 << SLAB_BITS) - 1;
+    private static final int INITIAL_INDEX_SLOTS = 1024;
+
+    // Record layout
+    private static final long PRICE = 0;
+    private static final long VOLUME = 8;
+    private static final long TIMESTAMP = 16;
+    private static final long ID_HIGH = 24;
+    private static final long ID_LOW = 32;
+    private static final long PREV = 40; // int record numbers, -1 for none
+    private static final long NEXT = 44; // also chains the free list
+    private static final long USER = 48;
+    private static final long SYMBOL = 52;
+    private static final long SIDE = 56;
+
+    // Slabs, released once the store is no longer reachable
+    private final Arena arena = Arena.ofAuto();
+    private MemorySegment[] slabs = new MemorySegment[16];
+    private int slabCount;
+    private int used; // records handed out at least once
+    private int freeHead = -1;
+    private int size;
+
+    // Record number plus one per slot, 0 for an empty slot, linear probing. Each index has an
+    // arena of its own, so the one a resize replaces is released once it is unreachable.
+    private MemorySegment index;
+    private int indexMask;
+
+    public OffHeapOrderStore() {
+        index = newIndex(INITIAL_INDEX_SLOTS);
+        indexMask = INITIAL_INDEX_SLOTS - 1;
+    }
+
+    @Override
+    public boolean acceptsOrderId(String orderId) {
+        if (orderId == null || orderId.length() != 36) return false;
+        for (int i = 0; i < 36; i++) {
+            char c = orderId.charAt(i);
+            boolean valid = i == 8 || i == 13 || i == 18 || i == 23
+                    ? c == '-'
+                    : (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f');
+            if (!valid) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public long add(Order order) {
+        String orderId = order.getOrderId();
+        if (!acceptsOrderId(orderId)) {
+            throw new IllegalArgumentException("Off-heap order storage needs lower case UUID order IDs, got " + orderId);
+        }
+        long high = idHigh(orderId);
+        long low = idLow(orderId);
+        if (find(high, low) != NONE) {
+            throw new IllegalArgumentException("Order " + orderId + " is already resting.");
+        }
+
+        long handle = allocate();
+        MemorySegment slab = slab(handle);
+        long base = (handle & SLAB_MASK) * RECORD_SIZE;
+        slab.set(ValueLayout.JAVA_LONG, base + PRICE, order.getPrice());
+        slab.set(ValueLayout.JAVA_LONG, base + VOLUME, order.getVolume());
+        slab.set(ValueLayout.JAVA_LONG, base + TIMESTAMP, order.getTimestamp());
+        slab.set(ValueLayout.JAVA_LONG, base + ID_HIGH, high);
+        slab.set(ValueLayout.JAVA_LONG, base + ID_LOW, low);
+        slab.set(ValueLayout.JAVA_INT, base + PREV, -1);
+        slab.set(ValueLayout.JAVA_INT, base + NEXT, -1);
+        slab.set(ValueLayout.JAVA_INT, base + USER, order.getUserKey());
+        slab.set(ValueLayout.JAVA_INT, base + SYMBOL, order.getSymbolKey());
+        slab.set(ValueLayout.JAVA_BYTE, base + SIDE, (byte) order.getSide().ordinal());
+
+        if ((size + 1) * 2L > indexMask + 1L) {
+            growIndex();
+        }
+        insert(handle, high, low);
+        size++;
+        return handle;
+    }
+
+    @Override
+    public void free(long handle) {
+        remove(handle);
+        size--;
+        setInt(handle, NEXT, freeHead);
+        freeHead = (int) handle;
+    }
+
+    @Override
+    public long find(String orderId) {
+        if (!acceptsOrderId(orderId)) return NONE;
+        return find(idHigh(orderId), idLow(orderId));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Native memory taken by records and the index
+    public long getReservedBytes() {
+        long bytes = index.byteSize();
+        for (int i = 0; i < slabCount; i++) {
+            bytes += slabs[i].byteSize();
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getPrice(long handle) {
+        return getLong(handle, PRICE);
+    }
+
+    @Override
+    public long getVolume(long handle) {
+        return getLong(handle, VOLUME);
+    }
+
+    @Override
+    public void setVolume(long handle, long volume) {
+        slab(handle).set(ValueLayout.JAVA_LONG, (handle & SLAB_MASK) * RECORD_SIZE + VOLUME, volume);
+    }
+
+    @Override
+    public long getTimestamp(long handle) {
+        return getLong(handle, TIMESTAMP);
+    }
+
+    @Override
+    public Order.Side getSide(long handle) {
+        byte side = slab(handle).get(ValueLayout.JAVA_BYTE, (handle & SLAB_MASK) * RECORD_SIZE + SIDE);
+        return side == 0 ? Order.Side.BUY : Order.Side.SELL;
+    }
+
+    @Override
+    public String getStockSymbol(long handle) {
+        return NameRegistry.SYMBOLS.nameOf(getInt(handle, SYMBOL));
+    }
+
+    @Override
+    public int getSymbolKey(long handle) {
+        return getInt(handle, SYMBOL);
+    }
+
+    @Override
+    public String getUserId(long handle) {
+        return NameRegistry.USERS.nameOf(getInt(handle, USER));
+    }
+
+    // Formatted from the stored UUID, so this allocates; the matching path reads the halves
+    @Override
+    public String getOrderId(long handle) {
+        return new UUID(getLong(handle, ID_HIGH), getLong(handle, ID_LOW)).toString();
+    }
+
+    @Override
+    public boolean packsOrderIds() {
+        return true;
+    }
+
+    @Override
+    public long getOrderIdHigh(long handle) {
+        return getLong(handle, ID_HIGH);
+    }
+
+    @Override
+    public long getOrderIdLow(long handle) {
+        return getLong(handle, ID_LOW);
+    }
+
+    @Override
+    public long getPrev(long handle) {
+        return getInt(handle, PREV);
+    }
+
+    @Override
+    public void setPrev(long handle, long prev) {
+        setInt(handle, PREV, (int) prev);
+    }
+
+    @Override
+    public long getNext(long handle) {
+        return getInt(handle, NEXT);
+    }
+
+    @Override
+    public void setNext(long handle, long next) {
+        setInt(handle, NEXT, (int) next);
+    }
+
+    @Override
+    public Order toOrder(long handle) {
+        return new Order.Builder(getUserId(handle))
+                .orderId(getOrderId(handle))
+                .userKey(getInt(handle, USER))
+                .stockSymbol(getStockSymbol(handle))
+                .symbolKey(getSymbolKey(handle))
+                .price(getPrice(handle))
+                .volume(getVolume(handle))
+                .timestamp(getTimestamp(handle))
+                .side(getSide(handle))
+                .build();
+    }
+
+    private long allocate() {
+        if (freeHead != -1) {
+            long handle = freeHead;
+            freeHead = getInt(handle, NEXT);
+            return handle;
+        }
+        if (used == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Off-heap order store is full.");
+        }
+        if ((used & SLAB_MASK) == 0) {
+            if (slabCount == slabs.length) {
+                slabs = Arrays.copyOf(slabs, slabs.length * 2);
+            }
+            slabs[slabCount++] = arena.allocate((long) RECORD_SIZE << SLAB_BITS, RECORD_SIZE);
+        }
+        return used++;
+    }
+
+    private MemorySegment slab(long handle) {
+        return slabs[(int) (handle >>> SLAB_BITS)];
+    }
+
+    private long getLong(long handle, long field) {
+        return slab(handle).get(ValueLayout.JAVA_LONG, (handle & SLAB_MASK) * RECORD_SIZE + field);
+    }
+
+    private int getInt(long handle, long field) {
+        return slab(handle).get(ValueLayout.JAVA_INT, (handle & SLAB_MASK) * RECORD_SIZE + field);
+    }
+
+    private void setInt(long handle, long field, int value) {
+        slab(handle).set(ValueLayout.JAVA_INT, (handle & SLAB_MASK) * RECORD_SIZE + field, value);
+    }
+
+    private long find(long high, long low) {
+        int slot = hash(high, low) & indexMask;
+        while (true) {
+            int entry = index.getAtIndex(ValueLayout.JAVA_INT, slot);
+            if (entry == 0) return NONE;
+            long handle = entry - 1;
+            if (getLong(handle, ID_HIGH) == high && getLong(handle, ID_LOW) == low) return handle;
+            slot = (slot + 1) & indexMask;
+        }
+    }
+
+    private void insert(long handle, long high, long low) {
+        int slot = hash(high, low) & indexMask;
+        while (index.getAtIndex(ValueLayout.JAVA_INT, slot) != 0) {
+            slot = (slot + 1) & indexMask;
+        }
+        index.setAtIndex(ValueLayout.JAVA_INT, slot, (int) handle + 1);
+    }
+
+    // Backward shift deletion: later entries of the probe run move up so no tombstones are needed
+    private void remove(long handle) {
+        int slot = hash(getLong(handle, ID_HIGH), getLong(handle, ID_LOW)) & indexMask;
+        while (index.getAtIndex(ValueLayout.JAVA_INT, slot) != (int) handle + 1) {
+            slot = (slot + 1) & indexMask;
+        }
+        int hole = slot;
+        int next = (hole + 1) & indexMask;
+        while (true) {
+            int entry = index.getAtIndex(ValueLayout.JAVA_INT, next);
+            if (entry == 0) break;
+            int home = hash(getLong(entry - 1, ID_HIGH), getLong(entry - 1, ID_LOW)) & indexMask;
+            if (((next - home) & indexMask) >= ((next - hole) & indexMask)) {
+                index.setAtIndex(ValueLayout.JAVA_INT, hole, entry);
+                hole = next;
+            }
+            next = (next + 1) & indexMask;
+        }
+        index.setAtIndex(ValueLayout.JAVA_INT, hole, 0);
+    }
+
+    private void growIndex() {
+        MemorySegment old = index;
+        int oldSlots = indexMask + 1;
+        index = newIndex(oldSlots * 2);
+        indexMask = oldSlots * 2 - 1;
+        for (int slot = 0; slot < oldSlots; slot++) {
+            int entry = old.getAtIndex(ValueLayout.JAVA_INT, slot);
+            if (entry != 0) {
+                insert(entry - 1, getLong(entry - 1, ID_HIGH), getLong(entry - 1, ID_LOW));
+            }
+        }
+    }
+
+    private MemorySegment newIndex(int slots) {
+        MemorySegment segment = Arena.ofAuto().allocate((long) slots * Integer.BYTES, Integer.BYTES);
+        segment.fill((byte) 0);
+        return segment;
+    }
+
+    private static int hash(long high, long low) {
+        long h = (high ^ low) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    // The two halves of a UUID in its 8-4-4-4-12 form, as UUID.fromString reads them
+    private static long idHigh(String id) {
+        return hex(id, 14, 18, hex(id, 9, 13, hex(id, 0, 8, 0)));
+    }
+
+    private static long idLow(String id) {
+        return hex(id, 24, 36, hex(id, 19, 23, 0));
+    }
+
+    // Shifts the hex digits in [from, to) of the string onto the end of value
+    private static long hex(String s, int from, int to, long value) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            value = (value << 4) | (c <= '9' ? c - '0' : c - 'a' + 10);
+        }
+        return value;
+    }
+}
@@ -1,6 +1,5 @@
 package com.trading.trading_application.lib;
 
-import java.util.Date;
 import java.util.UUID;
 
 public class Order {
@@ -10,12 +9,20 @@ public class Order {
     }
 
     private final String stockSymbol;
-    private final double price;
+    private final long price; // in ticks
     private long volume;
-    private final Date timestamp;
+    private final long timestamp; // epoch millis
     private final String userId;
     private final String orderId;
     private final Side side;
+    // NameRegistry keys of stockSymbol and userId
+    private final int symbolKey;
+    private final int userKey;
+
+    // Handle and queue links while a HeapOrderStore holds the order
+    long handle = OrderStore.NONE;
+    long prev = OrderStore.NONE;
+    long next = OrderStore.NONE;
 
     // Private constructor to enforce use of builder
     private Order(Builder builder) {
@@ -26,6 +33,8 @@ public class Order {
         this.userId = builder.userId;
         this.orderId = builder.orderId;
         this.side = builder.side;
+        this.symbolKey = builder.symbolKey;
+        this.userKey = builder.userKey;
     }
 
     // Public getters
@@ -33,7 +42,7 @@ public class Order {
         return stockSymbol;
     }
 
-    public double getPrice() {
+    public long getPrice() {
         return price;
     }
 
@@ -41,7 +50,7 @@ public class Order {
         return volume;
     }
 
-    public Date getTimestamp() {
+    public long getTimestamp() {
         return timestamp;
     }
 
@@ -57,25 +66,44 @@ public class Order {
         return side;
     }
 
+    public int getSymbolKey() {
+        return symbolKey;
+    }
+
+    public int getUserKey() {
+        return userKey;
+    }
+
     // Public method to adjust volume
     public void adjustVolume(long delta) {
         this.volume += delta;
         if (this.volume < 0) this.volume = 0;
     }
 
+    void setVolume(long volume) {
+        this.volume = volume;
+    }
+
     // Static Builder class
     public static class Builder {
         private String stockSymbol;
-        private double price;
+        private long price;
         private long volume;
-        private Date timestamp;
+        private long timestamp;
         private final String userId;
-        private final String orderId;
+        private String orderId;
         private Side side;
+        private int symbolKey = NameRegistry.NONE;
+        private int userKey = NameRegistry.NONE;
 
         public Builder(String userId) {
             this.userId = userId;
-            this.orderId = UUID.randomUUID().toString();
+        }
+
+        // Keeps an existing order ID instead of a fresh one, used when recovering orders
+        public Builder orderId(String orderId) {
+            this.orderId = orderId;
+            return this;
         }
 
         public Builder stockSymbol(String stockSymbol) {
@@ -83,7 +111,19 @@ public class Order {
             return this;
         }
 
-        public Builder price(double price) {
+        // Keys already resolved by the caller, looked up from the names otherwise
+        public Builder symbolKey(int symbolKey) {
+            this.symbolKey = symbolKey;
+            return this;
+        }
+
+        public Builder userKey(int userKey) {
+            this.userKey = userKey;
+            return this;
+        }
+
+        // Price in ticks of the stock's tick size
+        public Builder price(long price) {
             this.price = price;
             return this;
         }
@@ -93,7 +133,7 @@ public class Order {
             return this;
         }
 
-        public Builder timestamp(Date timestamp) {
+        public Builder timestamp(long timestamp) {
             this.timestamp = timestamp;
             return this;
         }
@@ -104,8 +144,17 @@ public class Order {
         }
 
         public Order build() {
-            if (timestamp == null) {
-                this.timestamp = new Date();
+            if (orderId == null) {
+                this.orderId = UUID.randomUUID().toString();
+            }
+            if (timestamp == 0) {
+                this.timestamp = System.currentTimeMillis();
+            }
+            if (symbolKey == NameRegistry.NONE) {
+                this.symbolKey = NameRegistry.SYMBOLS.keyOf(stockSymbol);
+            }
+            if (userKey == NameRegistry.NONE) {
+                this.userKey = NameRegistry.USERS.keyOf(userId);
             }
             return new Order(this);
         }
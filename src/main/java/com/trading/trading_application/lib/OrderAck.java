@@ -0,0 +1,101 @@
+package com.trading.trading_application.lib;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Outcome of one request, filled in by the matching thread that processed it and handed to the
+// client once complete. Only requests that asked for an acknowledgement get one, so the matching
+// loop records fills here only for those.
+public class OrderAck {
+
+    public enum Status {
+        RESTING,          // on the book, nothing filled yet
+        PARTIALLY_FILLED, // part filled, the rest is on the book
+        FILLED,
+        CANCELLED,        // a cancelled order, or a market order's unfilled remainder
+        REJECTED          // not executed at all, see the message
+    }
+
+    public static class Fill {
+        private final long tradeId;
+        private final double price;
+        private final long volume;
+
+        Fill(long tradeId, double price, long volume) {
+            this.tradeId = tradeId;
+            this.price = price;
+            this.volume = volume;
+        }
+
+        public long getTradeId() {
+            return tradeId;
+        }
+
+        public double getPrice() {
+            return price;
+        }
+
+        public long getVolume() {
+            return volume;
+        }
+    }
+
+    private String orderId;
+    private Status status;
+    private String message;
+    private long filledVolume;
+    private long remainingVolume;
+    private List<Fill> fills = Collections.emptyList();
+
+    public static OrderAck rejected(String orderId, String message) {
+        OrderAck ack = new OrderAck();
+        ack.reject(orderId, message);
+        return ack;
+    }
+
+    // Records one execution, price in ticks of the symbol
+    public void addFill(String symbol, long tradeId, long price, long volume) {
+        if (fills.isEmpty()) {
+            fills = new ArrayList<>();
+        }
+        fills.add(new Fill(tradeId, TickSize.forSymbol(symbol).toPrice(price), volume));
+        filledVolume += volume;
+    }
+
+    public void complete(String orderId, Status status, long remainingVolume) {
+        this.orderId = orderId;
+        this.status = status;
+        this.remainingVolume = remainingVolume;
+    }
+
+    public void reject(String orderId, String message) {
+        this.orderId = orderId;
+        this.status = Status.REJECTED;
+        this.message = message;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getFilledVolume() {
+        return filledVolume;
+    }
+
+    public long getRemainingVolume() {
+        return remainingVolume;
+    }
+
+    public List<Fill> getFills() {
+        return fills;
+    }
+}
@@ -1,120 +1,200 @@
 package com.trading.trading_application.lib;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
 
+// Symbols are addressed by their NameRegistry key: each side, the last price and the activity of a
+// symbol sit at its key in an array, so the matching path indexes instead of hashing strings.
+// Keys are shared by every partition, so a partition's arrays have gaps for other shards' symbols.
 public class OrderBook {
 
-    private final Map<String, StockOrders> BIDS;
-    private final Map<String, StockOrders> ASKS;
-    private final Map<String, Order> OrderMap;
-    private final Map<String, Double> ExecutionPrice;
+    private StockOrders[] BIDS;
+    private StockOrders[] ASKS;
+    // Every resting order of the book, found by ID through the store
+    private final OrderStore store;
+    // Last execution price in ticks, 0 until the symbol trades
+    private long[] ExecutionPrice;
+    private SymbolActivity[] activities;
+    // The same activities by name, concurrent so metrics can walk it from other threads
+    private final Map<String, SymbolActivity> Activity;
 
     public OrderBook() {
-        this.BIDS = new HashMap<>();
-        this.ASKS = new HashMap<>();
-        this.OrderMap = new HashMap<>();
-        this.ExecutionPrice = new HashMap<>();
+        this(OrderStoreType.getDefault().create());
+    }
+
+    public OrderBook(OrderStore store) {
+        this.BIDS = new StockOrders[64];
+        this.ASKS = new StockOrders[64];
+        this.store = store;
+        this.ExecutionPrice = new long[64];
+        this.activities = new SymbolActivity[64];
+        this.Activity = new ConcurrentHashMap<>();
+    }
+
+    // Grows the per-symbol arrays together so the key is in range of all of them
+    private void ensureCapacity(int symbol) {
+        if (symbol < BIDS.length) return;
+        int length = Math.max(symbol + 1, BIDS.length * 2);
+        BIDS = Arrays.copyOf(BIDS, length);
+        ASKS = Arrays.copyOf(ASKS, length);
+        ExecutionPrice = Arrays.copyOf(ExecutionPrice, length);
+        activities = Arrays.copyOf(activities, length);
     }
 
     // Add a new order to the appropriate side
     public void addOrder(Order order) {
-        String symbol = order.getStockSymbol();
+        int symbol = order.getSymbolKey();
+        ensureCapacity(symbol);
         StockOrders.Side side = order.getSide() == Order.Side.BUY ? StockOrders.Side.BUY : StockOrders.Side.SELL;
-        Map<String, StockOrders> bookSide = side == StockOrders.Side.BUY ? BIDS : ASKS;
+        StockOrders[] bookSide = side == StockOrders.Side.BUY ? BIDS : ASKS;
 
-        bookSide.computeIfAbsent(symbol, s -> new StockOrders(side)).addOrder(order);
-        OrderMap.put(order.getOrderId(), order);
+        StockOrders stockOrders = bookSide[symbol];
+        if (stockOrders == null) {
+            stockOrders = newSide(symbol, side);
+            bookSide[symbol] = stockOrders;
+        }
+        stockOrders.addOrder(store.add(order));
     }
 
-    public Order getOrder(String orderId){
-        return OrderMap.get(orderId);
+    private StockOrders newSide(int symbol, StockOrders.Side side) {
+        String name = NameRegistry.SYMBOLS.nameOf(symbol);
+        StockOrders stockOrders = new StockOrders(side, PriceLevelType.forSymbol(name), store);
+        SymbolActivity activity = getActivity(symbol);
+        if (side == StockOrders.Side.BUY) {
+            activity.bids = stockOrders;
+        } else {
+            activity.asks = stockOrders;
+        }
+        return stockOrders;
     }
 
-    // Get best bid price for a stock symbol
-    public Double getBestBid(String symbol) {
-        StockOrders stockBids = BIDS.get(symbol);
-        return stockBids != null ? stockBids.getBestPrice() : null;
+    private SymbolActivity getActivity(int symbol) {
+        ensureCapacity(symbol);
+        SymbolActivity activity = activities[symbol];
+        if (activity == null) {
+            String name = NameRegistry.SYMBOLS.nameOf(symbol);
+            activity = new SymbolActivity(name);
+            activities[symbol] = activity;
+            Activity.put(name, activity);
+        }
+        return activity;
     }
 
-    // Get best ask price for a stock symbol
-    public Double getBestAsk(String symbol) {
-        StockOrders stockAsks = ASKS.get(symbol);
-        return stockAsks != null ? stockAsks.getBestPrice() : null;
+    // Side of a symbol, null when it has none
+    private static StockOrders side(StockOrders[] bookSide, int symbol) {
+        return symbol >= 0 && symbol < bookSide.length ? bookSide[symbol] : null;
     }
 
-    public boolean getStockAvailability(String symbol, Order.Side side) {
-        if(side == Order.Side.BUY){
-            return BIDS.containsKey(symbol);
-        }
-        else{
-            return ASKS.containsKey((symbol));
-        }
+    // Counts an order placed for the symbol
+    public void recordOrder(int symbol) {
+        getActivity(symbol).orders++;
     }
 
-    public long getTotalStockVolume(String symbol, Order.Side side) {
-        if(side == Order.Side.BUY){
-            return BIDS.containsKey(symbol) ? BIDS.get(symbol).getTotalVolume() : 0;
-        }
-        else{
-            return ASKS.containsKey(symbol) ? ASKS.get(symbol).getTotalVolume() : 0;
-        }
+    // Counts the executions of one incoming order
+    public void recordFills(int symbol, int fills, long volume) {
+        SymbolActivity activity = getActivity(symbol);
+        activity.fills += fills;
+        activity.filledVolume += volume;
     }
 
-    public long getStockVolumeAtPrice(String symbol, Order.Side side, double price) {
-        if(side == Order.Side.BUY){
-            Map<Double, FixedPriceOrderQueue> pricetoQueueMap = BIDS.containsKey(symbol) ? BIDS.get(symbol).getPriceToQueueMap() : null;
-            if(pricetoQueueMap == null) return 0;
-            return pricetoQueueMap.containsKey(price) ?  pricetoQueueMap.get(price).getTotalVolume() :  0;
-        }
-        else{
-            Map<Double, FixedPriceOrderQueue> pricetoQueueMap = ASKS.containsKey(symbol) ? ASKS.get(symbol).getPriceToQueueMap() : null;
-            if(pricetoQueueMap == null) return 0;
-            return pricetoQueueMap.containsKey(price) ?  pricetoQueueMap.get(price).getTotalVolume() :  0;
-        }
+    // Republishes the symbol's top of book, a no-op when it did not change
+    public void publishTopOfBook(int symbol) {
+        SymbolActivity activity = getActivity(symbol);
+        FixedPriceOrderQueue bid = activity.bids != null ? activity.bids.peekTopQueue() : null;
+        FixedPriceOrderQueue ask = activity.asks != null ? activity.asks.peekTopQueue() : null;
+        activity.topOfBook.publish(
+                bid != null ? bid.getPrice() : -1, bid != null ? bid.getTotalVolume() : 0,
+                ask != null ? ask.getPrice() : -1, ask != null ? ask.getTotalVolume() : 0,
+                getPrice(symbol));
     }
 
-    // Get all orders by side for a stock
-    public StockOrders getOrdersBySide(String symbol, Order.Side side) {
-        return side == Order.Side.BUY ? BIDS.get(symbol) : ASKS.get(symbol);
+    // Latest published top of book, safe to call from any thread
+    public TopOfBook.Quote getTopOfBook(String symbol) {
+        SymbolActivity activity = Activity.get(symbol);
+        return activity != null ? activity.topOfBook.read() : TopOfBook.EMPTY;
     }
 
-    // Remove a specific order by object
-    public boolean removeOrder(Order order) {
-        String symbol = order.getStockSymbol();
-        Map<String, StockOrders> bookSide = order.getSide() == Order.Side.BUY ? BIDS : ASKS;
+    // Safe to call from any thread
+    public void forEachActivity(Consumer<SymbolActivity> action) {
+        Activity.values().forEach(action);
+    }
 
-        StockOrders stockOrders = bookSide.get(symbol);
-        return stockOrders != null && stockOrders.removeOrder(order);
+    public OrderStore getStore() {
+        return store;
     }
 
-    private long getTotalSellVolumeBelow(String stock, double priceThreshold) {
-        StockOrders sellBook = ASKS.get(stock);
-        if (sellBook == null) return 0;
+    // Handle of a resting order, OrderStore.NONE if there is none with this ID
+    public long findOrder(String orderId){
+        return store.find(orderId);
+    }
 
-        long total = 0;
-        for (Map.Entry<Double, FixedPriceOrderQueue> entry : sellBook.getPriceToQueueMap().entrySet()) {
-            if (entry.getKey() <= priceThreshold) {
-                total += entry.getValue().getTotalVolume();
-            }
-        }
-        return total;
+    // Get best bid price in ticks for a stock symbol, -1 if there are no bids
+    public long getBestBid(int symbol) {
+        StockOrders stockBids = side(BIDS, symbol);
+        return stockBids != null ? stockBids.getBestPrice() : -1;
     }
 
-    private long getTotalBuyVolumeAbove(String stock, double priceThreshold) {
-        StockOrders buyBook = BIDS.get(stock);
-        if (buyBook == null) return 0;
+    // Get best ask price in ticks for a stock symbol, -1 if there are no asks
+    public long getBestAsk(int symbol) {
+        StockOrders stockAsks = side(ASKS, symbol);
+        return stockAsks != null ? stockAsks.getBestPrice() : -1;
+    }
 
-        long total = 0;
-        for (Map.Entry<Double, FixedPriceOrderQueue> entry : buyBook.getPriceToQueueMap().entrySet()) {
-            if (entry.getKey() >= priceThreshold) {
-                total += entry.getValue().getTotalVolume();
-            }
+    public boolean getStockAvailability(int symbol, Order.Side side) {
+        return getOrdersBySide(symbol, side) != null;
+    }
+
+    public long getTotalStockVolume(int symbol, Order.Side side) {
+        StockOrders stockOrders = getOrdersBySide(symbol, side);
+        return stockOrders != null ? stockOrders.getTotalVolume() : 0;
+    }
+
+    public long getStockVolumeAtPrice(int symbol, Order.Side side, long price) {
+        StockOrders stockOrders = getOrdersBySide(symbol, side);
+        if(stockOrders == null) return 0;
+        FixedPriceOrderQueue queue = stockOrders.getLevel(price);
+        return queue != null ? queue.getTotalVolume() : 0;
+    }
+
+    // Get all orders by side for a stock, null if that side has never had orders
+    public StockOrders getOrdersBySide(int symbol, Order.Side side) {
+        return side(side == Order.Side.BUY ? BIDS : ASKS, symbol);
+    }
+
+    // Remove a resting order by handle, it is freed from the store
+    public boolean removeOrder(long order) {
+        StockOrders stockOrders = getOrdersBySide(store.getSymbolKey(order), store.getSide(order));
+        if (stockOrders != null && stockOrders.removeOrder(order)) {
+            store.free(order);
+            return true;
         }
-        return total;
+        return false;
+    }
+
+    // Takes volume off a resting order by handle, where it stands in its level
+    public void reduceOrder(long order, long delta) {
+        getOrdersBySide(store.getSymbolKey(order), store.getSide(order)).reduceOrder(order, delta);
+    }
+
+    // Forget an order that left the book through a full fill
+    public void removeFilledOrder(long order) {
+        store.free(order);
+    }
+
+    private long getTotalSellVolumeBelow(int stock, long priceThreshold) {
+        StockOrders sellBook = side(ASKS, stock);
+        return sellBook != null ? sellBook.getVolumeThrough(priceThreshold) : 0;
     }
 
-    public long getCrossableVolume(String stock, Order.Side side, double price) {
+    private long getTotalBuyVolumeAbove(int stock, long priceThreshold) {
+        StockOrders buyBook = side(BIDS, stock);
+        return buyBook != null ? buyBook.getVolumeThrough(priceThreshold) : 0;
+    }
+
+    public long getCrossableVolume(int stock, Order.Side side, long price) {
         if (side == Order.Side.BUY) {
             // A BUY order can cross with existing SELL orders priced <= price
             return getTotalBuyVolumeAbove(stock, price);
@@ -127,46 +207,76 @@ public class OrderBook {
         return 0;
     }
 
-    public double getPrice(String symbol){
-        return ExecutionPrice.containsKey(symbol) ? ExecutionPrice.get(symbol) : 0.0;
+    // Last execution price in ticks, 0 if the stock has not traded yet
+    public long getPrice(int symbol){
+        return symbol >= 0 && symbol < ExecutionPrice.length ? ExecutionPrice[symbol] : 0;
     }
 
-    public void updatePrice(String symbol, Double price){
-        ExecutionPrice.put(symbol, price);
+    public void updatePrice(int symbol, long price){
+        ensureCapacity(symbol);
+        ExecutionPrice[symbol] = price;
     }
 
 
 
+    // Visits every resting order, each side best price first and each level in time priority,
+    // so adding them back in the same order rebuilds an identical book
+    public void forEachRestingOrder(Consumer<Order> action) {
+        for (StockOrders stockOrders : BIDS) {
+            if (stockOrders != null) {
+                stockOrders.forEachOrder(order -> action.accept(store.toOrder(order)));
+            }
+        }
+        for (StockOrders stockOrders : ASKS) {
+            if (stockOrders != null) {
+                stockOrders.forEachOrder(order -> action.accept(store.toOrder(order)));
+            }
+        }
+    }
+
+    // Symbols that have traded, by name
+    public void forEachLastPrice(ObjLongConsumer<String> action) {
+        for (int symbol = 0; symbol < ExecutionPrice.length; symbol++) {
+            if (ExecutionPrice[symbol] != 0) {
+                action.accept(NameRegistry.SYMBOLS.nameOf(symbol), ExecutionPrice[symbol]);
+            }
+        }
+    }
+
     public void printOrderBook() {
         System.out.println("========== ORDER BOOK ==========");
 
         System.out.println("\n--- BIDS (Buy Orders) ---");
-        for (String symbol : BIDS.keySet()) {
-            System.out.println("Stock: " + symbol);
-            StockOrders stockOrders = BIDS.get(symbol);
-            stockOrders.printSide();
-        }
+        printSide(BIDS);
 
         System.out.println("\n--- ASKS (Sell Orders) ---");
-        for (String symbol : ASKS.keySet()) {
-            System.out.println("Stock: " + symbol);
-            StockOrders stockOrders = ASKS.get(symbol);
-            stockOrders.printSide();
-        }
+        printSide(ASKS);
 
         System.out.println("========== END ==========");
     }
 
+    private static void printSide(StockOrders[] bookSide) {
+        for (int symbol = 0; symbol < bookSide.length; symbol++) {
+            if (bookSide[symbol] == null) continue;
+            String name = NameRegistry.SYMBOLS.nameOf(symbol);
+            System.out.println("Stock: " + name);
+            bookSide[symbol].printSide(TickSize.forSymbol(name));
+        }
+    }
+
     public void printLastExecutionPrices() {
         System.out.println("====== LAST EXECUTION PRICES ======");
-        if (ExecutionPrice.isEmpty()) {
-            System.out.println("No trades have been executed yet.");
-        } else {
-            System.out.printf("%-10s | %-10s\n", "Symbol", "Last Price");
-            System.out.println("-----------------------------");
-            for (Map.Entry<String, Double> entry : ExecutionPrice.entrySet()) {
-                System.out.printf("%-10s | %-10.2f\n", entry.getKey(), entry.getValue());
+        boolean[] traded = new boolean[1];
+        forEachLastPrice((symbol, price) -> {
+            if (!traded[0]) {
+                System.out.printf("%-10s | %-10s\n", "Symbol", "Last Price");
+                System.out.println("-----------------------------");
+                traded[0] = true;
             }
+            System.out.printf("%-10s | %-10s\n", symbol, TickSize.forSymbol(symbol).toPrice(price));
+        });
+        if (!traded[0]) {
+            System.out.println("No trades have been executed yet.");
         }
         System.out.println("===================================");
     }
@@ -0,0 +1,63 @@
+package com.trading.trading_application.lib;
+
+// Resting orders of one book partition, addressed by long handles. The book itself only holds
+// handles: price level queues link orders through the store and orders are found by ID here.
+// A store belongs to the thread that owns its book.
+public interface OrderStore {
+
+    // No order, the end of a queue
+    long NONE = -1;
+
+    // Whether the store can hold an order under this ID
+    boolean acceptsOrderId(String orderId);
+
+    // Takes the order in and returns its handle, it can be found by its ID until it is freed
+    long add(Order order);
+
+    void free(long handle);
+
+    // Handle of the resting order with this ID, NONE if there is none
+    long find(String orderId);
+
+    // Number of orders held
+    int size();
+
+    long getPrice(long handle);
+
+    long getVolume(long handle);
+
+    void setVolume(long handle, long volume);
+
+    long getTimestamp(long handle);
+
+    Order.Side getSide(long handle);
+
+    String getStockSymbol(long handle);
+
+    // NameRegistry key of the symbol
+    int getSymbolKey(long handle);
+
+    String getUserId(long handle);
+
+    String getOrderId(long handle);
+
+    // Whether order IDs are kept as the two halves of a UUID, which getOrderIdHigh and
+    // getOrderIdLow read without formatting the ID
+    boolean packsOrderIds();
+
+    long getOrderIdHigh(long handle);
+
+    long getOrderIdLow(long handle);
+
+    // Links of the price level queue the order rests on
+    long getPrev(long handle);
+
+    void setPrev(long handle, long prev);
+
+    long getNext(long handle);
+
+    void setNext(long handle, long next);
+
+    // The order as an Order, a copy unless the store keeps Order objects. Not for the matching path.
+    Order toOrder(long handle);
+}
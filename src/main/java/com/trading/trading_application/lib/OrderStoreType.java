@@ -0,0 +1,24 @@
+package com.trading.trading_application.lib;
+
+// Which OrderStore implementation book partitions keep their resting orders in
+public enum OrderStoreType {
+    HEAP,     // Order objects on the Java heap
+    OFF_HEAP; // Fixed-size records in native memory, nothing per order for the GC to trace
+
+    private static volatile OrderStoreType defaultType = HEAP;
+
+    public static OrderStoreType getDefault() {
+        return defaultType;
+    }
+
+    public static void setDefault(OrderStoreType type) {
+        defaultType = type;
+    }
+
+    public OrderStore create() {
+        return switch (this) {
+            case HEAP -> new HeapOrderStore();
+            case OFF_HEAP -> new OffHeapOrderStore();
+        };
+    }
+}
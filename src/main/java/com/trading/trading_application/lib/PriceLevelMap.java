@@ -0,0 +1,135 @@
+package com.trading.trading_application.lib;
+
+import java.util.Arrays;
+
+// Open-addressing hash map from a tick price to its FixedPriceOrderQueue.
+// Keys stay primitive longs, so level lookups neither box nor allocate.
+public class PriceLevelMap {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private FixedPriceOrderQueue[] values;
+    private int size;
+    private int mask;
+
+    public PriceLevelMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public PriceLevelMap(int expectedLevels) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedLevels * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public FixedPriceOrderQueue get(long price) {
+        int slot = slotOf(price);
+        while (values[slot] != null) {
+            if (keys[slot] == price) return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long price) {
+        return get(price) != null;
+    }
+
+    public void put(long price, FixedPriceOrderQueue level) {
+        if (level == null) {
+            throw new IllegalArgumentException("Price level cannot be null.");
+        }
+        int slot = slotOf(price);
+        while (values[slot] != null) {
+            if (keys[slot] == price) {
+                values[slot] = level;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = price;
+        values[slot] = level;
+        if (++size * 2 > values.length) {
+            rehash(values.length << 1);
+        }
+    }
+
+    public FixedPriceOrderQueue remove(long price) {
+        int slot = slotOf(price);
+        while (values[slot] != null) {
+            if (keys[slot] == price) {
+                FixedPriceOrderQueue removed = values[slot];
+                shiftBack(slot);
+                size--;
+                return removed;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    // Slot-wise access for allocation-free iteration, empty slots return null
+    public int capacity() {
+        return values.length;
+    }
+
+    public FixedPriceOrderQueue levelAt(int slot) {
+        return values[slot];
+    }
+
+    // Backward-shift deletion keeps probe chains intact without tombstones
+    private void shiftBack(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != null) {
+            int home = slotOf(keys[next]);
+            // Move the entry into the gap unless its home lies cyclically in (gap, next]
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = null;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        FixedPriceOrderQueue[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) continue;
+            int slot = slotOf(oldKeys[i]);
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new FixedPriceOrderQueue[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slotOf(long price) {
+        long h = price * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
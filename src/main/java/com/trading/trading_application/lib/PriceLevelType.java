@@ -0,0 +1,34 @@
+package com.trading.trading_application.lib;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Which PriceLevels implementation a stock's book sides use
+public enum PriceLevelType {
+    HEAP,   // Binary heap plus level map, handles any spread of prices
+    LADDER; // Tick-indexed array window, O(1) best price for books clustered around the touch
+
+    private static final Map<String, PriceLevelType> BY_SYMBOL = new ConcurrentHashMap<>();
+    private static volatile PriceLevelType defaultType = HEAP;
+
+    // Level structure of a stock, falling back to the default type if none was registered
+    public static PriceLevelType forSymbol(String symbol) {
+        PriceLevelType type = symbol != null ? BY_SYMBOL.get(symbol) : null;
+        return type != null ? type : defaultType;
+    }
+
+    public static void register(String symbol, PriceLevelType type) {
+        BY_SYMBOL.put(symbol, type);
+    }
+
+    public static void setDefault(PriceLevelType type) {
+        defaultType = type;
+    }
+
+    public PriceLevels create(StockOrders.Side side) {
+        return switch (this) {
+            case HEAP -> new HeapPriceLevels(side);
+            case LADDER -> new LadderPriceLevels(side);
+        };
+    }
+}
@@ -0,0 +1,26 @@
+package com.trading.trading_application.lib;
+
+import java.util.function.Consumer;
+
+// The price levels of one side of a stock. StockOrders keeps volumes and best price
+// bookkeeping, implementations only decide how levels are stored and ordered.
+public interface PriceLevels {
+
+    // Level at the given tick price, or null if there is none
+    FixedPriceOrderQueue get(long price);
+
+    // Level at the given tick price, created if it does not exist yet
+    FixedPriceOrderQueue getOrCreate(long price);
+
+    // Best level of the side (highest bid / lowest ask), or null if the side is empty
+    FixedPriceOrderQueue best();
+
+    // Drops a level that no longer holds any volume
+    void remove(FixedPriceOrderQueue level);
+
+    // Number of live levels
+    int size();
+
+    // Visits the live levels from best to worst price, not meant for the matching path
+    void forEachBestFirst(Consumer<FixedPriceOrderQueue> action);
+}
@@ -1,6 +1,6 @@
 package com.trading.trading_application.lib;
 
-import java.util.*;
+import java.util.function.LongConsumer;
 
 public class StockOrders {
 
@@ -10,22 +10,28 @@ public class StockOrders {
 
     private final Side side;
     private long totalVolume;
-    private final PriorityQueue<FixedPriceOrderQueue> priceHeap;
-    private double bestPrice;
-    private final Map<Double, FixedPriceOrderQueue> priceToQueueMap;
+    private int orderCount;
+    private final PriceLevels levels;
+    private final OrderStore store;
+    private final DepthIndex depth;
+    private long bestPrice;
+    private long version; // bumped on every volume change, so readers can tell the side moved
 
     public StockOrders(Side side) {
-        this.side = side;
-        this.totalVolume = 0;
-        this.priceToQueueMap = new HashMap<>();
+        this(side, PriceLevelType.HEAP);
+    }
 
-        Comparator<FixedPriceOrderQueue> comparator = (a, b) -> {
-            return side == Side.BUY
-                    ? Double.compare(b.getPrice(), a.getPrice())
-                    : Double.compare(a.getPrice(), b.getPrice());
-        };
+    public StockOrders(Side side, PriceLevelType levelType) {
+        this(side, levelType, new HeapOrderStore());
+    }
 
-        this.priceHeap = new PriorityQueue<>(comparator);
+    // Orders are kept in the given store, which the book's other sides may share
+    public StockOrders(Side side, PriceLevelType levelType, OrderStore store) {
+        this.side = side;
+        this.totalVolume = 0;
+        this.levels = levelType.create(side);
+        this.store = store;
+        this.depth = new DepthIndex();
         this.bestPrice = -1;
     }
 
@@ -33,51 +39,82 @@ public class StockOrders {
         return side;
     }
 
+    public OrderStore getStore() {
+        return store;
+    }
+
     public long getTotalVolume() {
         return totalVolume;
     }
 
-    public double getBestPrice() {
+    public long getBestPrice() {
         return bestPrice;
     }
 
-    public Map<Double, FixedPriceOrderQueue> getPriceToQueueMap() {
-        return Collections.unmodifiableMap(priceToQueueMap);
+    // Number of resting orders
+    public int getOrderCount() {
+        return orderCount;
     }
 
-    public void addOrder(Order order) {
-        double price = order.getPrice();
-        FixedPriceOrderQueue queue = priceToQueueMap.get(price);
+    // Number of live price levels
+    public int getLevelCount() {
+        return levels.size();
+    }
 
-        if (queue == null) {
-            queue = new FixedPriceOrderQueue(price);
-            priceToQueueMap.put(price, queue);
-            priceHeap.offer(queue);
-        }
+    // Price level at the given tick price, or null if nothing rests there
+    public FixedPriceOrderQueue getLevel(long price) {
+        return levels.get(price);
+    }
+
+    // Total volume resting at prices an incoming order at the given price would cross:
+    // bids at or above it, asks at or below it. O(log levels) through the depth index.
+    public long getVolumeThrough(long price) {
+        return side == Side.BUY ? depth.volumeAtOrAbove(price) : depth.volumeAtOrBelow(price);
+    }
+
+    // Changes on every add, fill and cancel
+    public long getVersion() {
+        return version;
+    }
+
+    // Best n levels, best first, as tick prices and volumes. Returns how many were filled in.
+    public int topLevels(int n, long[] prices, long[] volumes) {
+        if (bestPrice == -1) return 0;
+        return depth.topLevels(side == Side.BUY, bestPrice, n, prices, volumes);
+    }
+
+    // Adds an order already in the store to the back of its price level
+    public void addOrder(long order) {
+        long price = store.getPrice(order);
+        long volume = store.getVolume(order);
+        FixedPriceOrderQueue queue = levels.getOrCreate(price);
 
-        queue.addOrder(order);
-        totalVolume += order.getVolume();
+        queue.addOrder(store, order);
+        orderCount++;
+        totalVolume += volume;
+        changeDepth(price, volume);
         updateBestPrice();
     }
 
     // Returns the FixedPriceOrderQueue with best price
     public FixedPriceOrderQueue peekTopQueue() {
-        cleanupHeap();
-        return priceHeap.peek();
-    }
-
-    // Removes and returns the top order from best price level
-    public Order pollTopOrder() {
-        cleanupHeap();
-        FixedPriceOrderQueue topQueue = priceHeap.peek();
-        if (topQueue == null) return null;
-
-        Order topOrder = topQueue.pollOrder();
-        if (topOrder != null) {
-            totalVolume -= topOrder.getVolume();
-            if (topQueue.getTotalVolume() == 0) {
-                priceToQueueMap.remove(topQueue.getPrice());
-                priceHeap.poll(); // remove empty queue
+        return levels.best();
+    }
+
+    // Unlinks the top order of the best price level and returns its handle, NONE when the side is
+    // empty. The order stays in the store for the caller to free.
+    public long pollTopOrder() {
+        FixedPriceOrderQueue topQueue = levels.best();
+        if (topQueue == null) return OrderStore.NONE;
+
+        long topOrder = topQueue.pollOrder(store);
+        if (topOrder != OrderStore.NONE) {
+            long volume = store.getVolume(topOrder);
+            orderCount--;
+            totalVolume -= volume;
+            changeDepth(topQueue.getPrice(), -volume);
+            if (topQueue.isEmpty()) {
+                levels.remove(topQueue); // remove empty queue
             }
         }
 
@@ -85,65 +122,92 @@ public class StockOrders {
         return topOrder;
     }
 
+    // Fills part of the best order in place, it keeps its time priority at the front of its level.
+    // Full fills go through pollTopOrder instead.
+    public void fillTopOrder(long quantity) {
+        FixedPriceOrderQueue topQueue = levels.best();
+        long topOrder = topQueue != null ? topQueue.peekOrder() : OrderStore.NONE;
+        if (topOrder == OrderStore.NONE || quantity <= 0 || quantity >= store.getVolume(topOrder)) {
+            throw new IllegalArgumentException("Partial fill must be positive and smaller than the top order.");
+        }
+        store.setVolume(topOrder, store.getVolume(topOrder) - quantity);
+        topQueue.adjustTotalVolume(-quantity);
+        totalVolume -= quantity;
+        changeDepth(topQueue.getPrice(), -quantity);
+    }
+
+    // Takes volume off a resting order of this side in place, it keeps its time priority.
+    // Must leave the order with some volume, taking all of it is a removeOrder.
+    public void reduceOrder(long order, long delta) {
+        long price = store.getPrice(order);
+        FixedPriceOrderQueue queue = levels.get(price);
+        if (queue == null || delta < 0 || delta >= store.getVolume(order)) {
+            throw new IllegalArgumentException("Reduction must leave the resting order with some volume.");
+        }
+        queue.reduceOrder(store, order, delta);
+        totalVolume -= delta;
+        changeDepth(price, -delta);
+    }
+
     // Reduces volume at a specific price level
-    public void reduceVolumeAtPrice(double price, long delta) {
-        FixedPriceOrderQueue queue = priceToQueueMap.get(price);
+    public void reduceVolumeAtPrice(long price, long delta) {
+        FixedPriceOrderQueue queue = levels.get(price);
         if (queue != null) {
             queue.adjustTotalVolume(-delta);
             totalVolume -= delta;
+            changeDepth(price, -delta);
             if (queue.getTotalVolume() <= 0) {
-                priceToQueueMap.remove(price);
-                cleanupHeap();
+                levels.remove(queue);
             }
             updateBestPrice();
         }
     }
 
 
-    // Removes a specific order from the order book given an order within the list
-    public boolean removeOrder(Order order) {
+    // Removes a resting order of this side in O(1) by unlinking it from its level. The order
+    // stays in the store for the caller to free.
+    public boolean removeOrder(long order) {
+        long price = store.getPrice(order);
+        long volume = store.getVolume(order);
+        FixedPriceOrderQueue queue = levels.get(price);
+        if (queue == null) return false;
 
-        if(priceToQueueMap.get(order.getPrice()).getOrders().remove(order)){
-            priceToQueueMap.get(order.getPrice()).adjustTotalVolume(-order.getVolume());
-            totalVolume -= order.getVolume();
+        queue.removeOrder(store, order);
+        orderCount--;
+        totalVolume -= volume;
+        changeDepth(price, -volume);
 
-            // If queue is now empty, adjust the order-book accordingly
-            if (priceToQueueMap.get(order.getPrice()).getTotalVolume() <= 0) {
-                priceToQueueMap.remove(order.getPrice());
-                updateBestPrice();
-            }
-            return true;
+        // If queue is now empty, adjust the order-book accordingly
+        if (queue.isEmpty()) {
+            levels.remove(queue);
+            updateBestPrice();
         }
-        // Removal failed.
-        return false;
+        return true;
     }
 
-    // Internal: Removes empty queues from heap top
-    private void cleanupHeap() {
-        while (!priceHeap.isEmpty() && priceHeap.peek().getTotalVolume() <= 0) {
-            FixedPriceOrderQueue empty = priceHeap.poll();
-            priceToQueueMap.remove(empty.getPrice());
-        }
+    private void changeDepth(long price, long delta) {
+        depth.add(price, delta);
+        version++;
     }
 
     // Recompute best price after add/remove
     private void updateBestPrice() {
-        cleanupHeap();
-        bestPrice = priceHeap.isEmpty() ? -1 : priceHeap.peek().getPrice();
+        FixedPriceOrderQueue best = levels.best();
+        bestPrice = best == null ? -1 : best.getPrice();
     }
 
-    public void printSide() {
-        PriorityQueue<FixedPriceOrderQueue> tempHeap = new PriorityQueue<>(priceHeap);
+    // Visits every order handle on this side, best price first and in time priority within a level
+    public void forEachOrder(LongConsumer action) {
+        levels.forEachBestFirst(queue -> queue.forEachOrder(store, action));
+    }
 
-        while (!tempHeap.isEmpty()) {
-            FixedPriceOrderQueue queue = tempHeap.poll();
-            if(queue == null) continue;
-            System.out.println("    Price: " + queue.getPrice() + ", Total Volume: " + queue.getTotalVolume());
-            for (Order order : queue.getOrders()) {
-                System.out.println("        OrderId: " + order.getOrderId() + ", UserId: " + order.getUserId() +
-                        ", Volume: " + order.getVolume() + ", Timestamp: " + order.getTimestamp());
-            }
-        }
+    public void printSide(TickSize tickSize) {
+        levels.forEachBestFirst(queue -> {
+            System.out.println("    Price: " + tickSize.toPrice(queue.getPrice()) + ", Total Volume: " + queue.getTotalVolume());
+            queue.forEachOrder(store, order ->
+                System.out.println("        OrderId: " + store.getOrderId(order) + ", UserId: " + store.getUserId(order) +
+                        ", Volume: " + store.getVolume(order) + ", Timestamp: " + store.getTimestamp(order)));
+        });
     }
 
 }
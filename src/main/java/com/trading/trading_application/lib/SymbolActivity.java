@@ -0,0 +1,54 @@
+package com.trading.trading_application.lib;
+
+// Counters and book sides of one symbol, for metrics. Every symbol belongs to exactly one matching
+// shard and only that shard's thread writes here, so the counters are plain single-writer fields
+// that cost an increment on the hot path. Readers on other threads may see them slightly stale.
+public class SymbolActivity {
+
+    private final String symbol;
+    long orders;
+    long fills;
+    long filledVolume;
+    // Set once when the side is first created, then never replaced
+    volatile StockOrders bids;
+    volatile StockOrders asks;
+    final TopOfBook topOfBook = new TopOfBook();
+
+    SymbolActivity(String symbol) {
+        this.symbol = symbol;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    // Orders placed, market orders included
+    public long getOrders() {
+        return orders;
+    }
+
+    // Executions against resting orders
+    public long getFills() {
+        return fills;
+    }
+
+    public long getFilledVolume() {
+        return filledVolume;
+    }
+
+    public TopOfBook getTopOfBook() {
+        return topOfBook;
+    }
+
+    // Resting orders on a side
+    public int getOrderCount(Order.Side side) {
+        StockOrders stockOrders = side == Order.Side.BUY ? bids : asks;
+        return stockOrders != null ? stockOrders.getOrderCount() : 0;
+    }
+
+    // Price levels on a side
+    public int getLevelCount(Order.Side side) {
+        StockOrders stockOrders = side == Order.Side.BUY ? bids : asks;
+        return stockOrders != null ? stockOrders.getLevelCount() : 0;
+    }
+}
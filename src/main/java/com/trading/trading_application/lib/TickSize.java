@@ -0,0 +1,83 @@
+package com.trading.trading_application.lib;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Minimum price increment of a stock. The order book stores and matches every price as a
+// whole number of ticks, decimal prices only exist at the edges (REST layer, logs, printing).
+public final class TickSize {
+
+    public static final int MAX_DECIMALS = 9;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000};
+
+    private static final Map<String, TickSize> BY_SYMBOL = new ConcurrentHashMap<>();
+    private static volatile TickSize defaultTickSize = new TickSize(0.01);
+
+    private final double size;
+    // Ticks per unit of price when the tick is a fraction (0.01 -> 100), 0 for whole-unit ticks
+    private final long ticksPerUnit;
+    // Decimal places that show every tick exactly, at least two and at most MAX_DECIMALS
+    private final int decimals;
+
+    private TickSize(double size) {
+        if (!(size > 0) || Double.isInfinite(size)) {
+            throw new IllegalArgumentException("Tick size must be a positive number.");
+        }
+        this.size = size;
+        if (size < 1) {
+            long perUnit = Math.round(1 / size);
+            if (Math.abs(perUnit * size - 1) > 1e-9) {
+                throw new IllegalArgumentException("Fractional tick size must divide 1 evenly: " + size);
+            }
+            this.ticksPerUnit = perUnit;
+        } else {
+            this.ticksPerUnit = 0;
+        }
+        int places = 2;
+        while (places < MAX_DECIMALS && Math.abs(size * POWERS_OF_TEN[places] - Math.round(size * POWERS_OF_TEN[places])) > 1e-6) {
+            places++;
+        }
+        this.decimals = places;
+    }
+
+    public static TickSize of(double size) {
+        return new TickSize(size);
+    }
+
+    // Tick size of a stock, falling back to the default tick size if none was registered
+    public static TickSize forSymbol(String symbol) {
+        TickSize tickSize = symbol != null ? BY_SYMBOL.get(symbol) : null;
+        return tickSize != null ? tickSize : defaultTickSize;
+    }
+
+    public static void register(String symbol, double size) {
+        BY_SYMBOL.put(symbol, new TickSize(size));
+    }
+
+    public static void setDefault(double size) {
+        defaultTickSize = new TickSize(size);
+    }
+
+    public double getSize() {
+        return size;
+    }
+
+    public int getDecimals() {
+        return decimals;
+    }
+
+    // 10 to the power of decimals, for fixed point formatting
+    public long getDecimalScale() {
+        return POWERS_OF_TEN[decimals];
+    }
+
+    // Converts a decimal price to ticks, rounding to the nearest tick
+    public long toTicks(double price) {
+        return ticksPerUnit != 0 ? Math.round(price * ticksPerUnit) : Math.round(price / size);
+    }
+
+    // Converts ticks back to the closest decimal price
+    public double toPrice(long ticks) {
+        return ticksPerUnit != 0 ? ticks / (double) ticksPerUnit : ticks * size;
+    }
+}
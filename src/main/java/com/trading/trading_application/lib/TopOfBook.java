@@ -0,0 +1,86 @@
+package com.trading.trading_application.lib;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// Best bid and ask with their sizes and the last trade price of one symbol, published by the
+// matching thread that owns the symbol after every request that touches it, for any number of
+// reader threads. A sequence lock: the writer makes the sequence odd, writes the fields and makes
+// it even again, and a reader that saw it change while reading simply reads again. Readers take no
+// lock and never hold up the writer; writing allocates nothing.
+public class TopOfBook {
+
+    private static final VarHandle SEQUENCE;
+
+    static {
+        try {
+            SEQUENCE = MethodHandles.lookup().findVarHandle(TopOfBook.class, "sequence", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Consistent copy of the record, prices in ticks and -1 for an empty side
+    public static class Quote {
+        public final long bidPrice;
+        public final long bidVolume;
+        public final long askPrice;
+        public final long askVolume;
+        public final long lastPrice; // 0 until the first trade
+        public final long sequence;  // number of changes published so far
+
+        Quote(long bidPrice, long bidVolume, long askPrice, long askVolume, long lastPrice, long sequence) {
+            this.bidPrice = bidPrice;
+            this.bidVolume = bidVolume;
+            this.askPrice = askPrice;
+            this.askVolume = askVolume;
+            this.lastPrice = lastPrice;
+            this.sequence = sequence;
+        }
+
+        public long bestPrice(Order.Side side) {
+            return side == Order.Side.BUY ? bidPrice : askPrice;
+        }
+    }
+
+    public static final Quote EMPTY = new Quote(-1, 0, -1, 0, 0, 0);
+
+    private volatile long sequence; // twice the number of changes, odd while one is being written
+    private long bidPrice = -1;
+    private long bidVolume;
+    private long askPrice = -1;
+    private long askVolume;
+    private long lastPrice;
+
+    // Owning matching thread only. Does nothing when nothing changed.
+    void publish(long bidPrice, long bidVolume, long askPrice, long askVolume, long lastPrice) {
+        if (bidPrice == this.bidPrice && bidVolume == this.bidVolume && askPrice == this.askPrice
+                && askVolume == this.askVolume && lastPrice == this.lastPrice) {
+            return;
+        }
+        long s = (long) SEQUENCE.getOpaque(this);
+        SEQUENCE.setOpaque(this, s + 1);
+        VarHandle.storeStoreFence(); // the odd sequence is visible before any field changes
+        this.bidPrice = bidPrice;
+        this.bidVolume = bidVolume;
+        this.askPrice = askPrice;
+        this.askVolume = askVolume;
+        this.lastPrice = lastPrice;
+        SEQUENCE.setRelease(this, s + 2);
+    }
+
+    // Any thread
+    public Quote read() {
+        while (true) {
+            long before = (long) SEQUENCE.getAcquire(this);
+            if ((before & 1) == 0) {
+                Quote quote = new Quote(bidPrice, bidVolume, askPrice, askVolume, lastPrice, before >>> 1);
+                VarHandle.loadLoadFence(); // the fields are read before the sequence is checked again
+                if ((long) SEQUENCE.getOpaque(this) == before) {
+                    return quote;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
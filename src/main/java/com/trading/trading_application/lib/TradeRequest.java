@@ -2,23 +2,87 @@ package com.trading.trading_application.lib;
 
 import com.trading.trading_application.API.OrderBookAPI.Type;
 
+import java.util.concurrent.CompletableFuture;
+
 public class TradeRequest {
     public enum RequestType {
         PLACE_ORDER,
         PLACE_MARKET_ORDER,
-        CANCEL_ORDER
+        CANCEL_ORDER,
+        AMEND_ORDER // orderId to a new price (0 keeps it) and remaining volume
     }
 
     public RequestType type;
     public String userId;
     public String stockSymbol;
-    public double price;
+    public long price; // in ticks
     public long volume;
     public Order.Side side;
     public Type orderType;
     public String orderId;
+    // Amends only: may only take volume off at the same price, and so may skip the order queue
+    public boolean reduceOnly;
+    // NameRegistry keys of stockSymbol and userId, NONE until resolveKeys
+    public int symbolKey = NameRegistry.NONE;
+    public int userKey = NameRegistry.NONE;
+    public long enqueuedNanos; // System.nanoTime() when it entered a shard's ring, 0 when replayed
+    // A cancel's shard: the order ring's last claimed sequence when the cancel was queued. The
+    // cancel may not overtake those requests for an order that is not resting yet. -1 when none.
+    public long orderFence = -1;
+    // Completed by the matching thread with the outcome, null when nobody waits for one
+    public CompletableFuture<OrderAck> ack;
 
     public TradeRequest(RequestType type) {
         this.type = type;
     }
+
+    // Empty request, used to pre-allocate reusable ring slots
+    public TradeRequest() {
+    }
+
+    public void copyFrom(TradeRequest other) {
+        this.type = other.type;
+        this.userId = other.userId;
+        this.stockSymbol = other.stockSymbol;
+        this.price = other.price;
+        this.volume = other.volume;
+        this.side = other.side;
+        this.orderType = other.orderType;
+        this.orderId = other.orderId;
+        this.reduceOnly = other.reduceOnly;
+        this.symbolKey = other.symbolKey;
+        this.userKey = other.userKey;
+        this.enqueuedNanos = other.enqueuedNanos;
+        this.orderFence = other.orderFence;
+        this.ack = other.ack;
+    }
+
+    // Drops all references so a reused slot does not keep old requests reachable
+    public void clear() {
+        this.type = null;
+        this.userId = null;
+        this.stockSymbol = null;
+        this.price = 0;
+        this.volume = 0;
+        this.side = null;
+        this.orderType = null;
+        this.orderId = null;
+        this.reduceOnly = false;
+        this.symbolKey = NameRegistry.NONE;
+        this.userKey = NameRegistry.NONE;
+        this.enqueuedNanos = 0;
+        this.orderFence = -1;
+        this.ack = null;
+    }
+
+    // Interns the symbol and user ID, done once on the way in so matching only indexes by key.
+    // A cancel may come without a symbol and carries no user, those keys stay NONE.
+    public void resolveKeys() {
+        if (symbolKey == NameRegistry.NONE) {
+            symbolKey = NameRegistry.SYMBOLS.keyOf(stockSymbol);
+        }
+        if (userKey == NameRegistry.NONE) {
+            userKey = NameRegistry.USERS.keyOf(userId);
+        }
+    }
 }
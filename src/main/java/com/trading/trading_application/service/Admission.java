@@ -0,0 +1,22 @@
+package com.trading.trading_application.service;
+
+// Whether a shard took a request in. Orders are turned away once the shard's order ring holds its
+// high water mark of requests, and once their user already has their share of it queued, so one
+// client flooding a symbol cannot crowd out the others. Cancels have a ring of their own and are
+// only turned away when it is full.
+public enum Admission {
+    ACCEPTED(null),
+    SHARD_BUSY("The matching shard is saturated, retry later"),
+    USER_BUSY("Too many requests of this user are queued, retry later");
+
+    private final String reason;
+
+    Admission(String reason) {
+        this.reason = reason;
+    }
+
+    // Reject reason for clients, null when accepted
+    public String getReason() {
+        return reason;
+    }
+}
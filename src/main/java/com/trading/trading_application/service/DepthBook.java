@@ -0,0 +1,20 @@
+package com.trading.trading_application.service;
+
+// Immutable top levels of both sides of one symbol, as published by the owning shard
+final class DepthBook {
+    final long sequence;
+    final long[] bidPrices;
+    final long[] bidVolumes;
+    final long[] askPrices;
+    final long[] askVolumes;
+
+    DepthBook(long sequence, long[] bidPrices, long[] bidVolumes, long[] askPrices, long[] askVolumes) {
+        this.sequence = sequence;
+        this.bidPrices = bidPrices;
+        this.bidVolumes = bidVolumes;
+        this.askPrices = askPrices;
+        this.askVolumes = askVolumes;
+    }
+
+    static final DepthBook EMPTY = new DepthBook(0, new long[0], new long[0], new long[0], new long[0]);
+}
@@ -0,0 +1,102 @@
+package com.trading.trading_application.service;
+
+import com.trading.trading_application.API.OrderBookAPI;
+import com.trading.trading_application.lib.NameRegistry;
+import com.trading.trading_application.lib.Order;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Depth views of the symbols of one shard that have subscribers, owned by the shard's worker.
+// After every batch the worker checks which subscribed sides changed, recomputes their top levels
+// and hands the new book to the subscribers. Symbols nobody watches cost nothing.
+class DepthFeed {
+
+    static final int MAX_LEVELS = 50;
+
+    private final OrderBookAPI api;
+    private final Map<String, View> views = new HashMap<>();
+    private final long[] prices = new long[MAX_LEVELS];
+    private final long[] volumes = new long[MAX_LEVELS];
+
+    private static final class View {
+        final int symbolKey;
+        final List<DepthSubscription> subscribers = new ArrayList<>();
+        int levels;
+        long bidVersion = -1;
+        long askVersion = -1;
+        DepthBook book = DepthBook.EMPTY;
+
+        View(String symbol) {
+            this.symbolKey = NameRegistry.SYMBOLS.keyOf(symbol);
+        }
+    }
+
+    DepthFeed(OrderBookAPI api) {
+        this.api = api;
+    }
+
+    // The subscriber starts with the current book, which it sends as its snapshot
+    void subscribe(DepthSubscription subscription) {
+        View view = views.computeIfAbsent(subscription.getSymbol(), View::new);
+        view.subscribers.add(subscription);
+        if (subscription.getLevels() > view.levels) {
+            view.levels = subscription.getLevels();
+            view.bidVersion = -1; // recompute with the deeper view
+        }
+        DepthBook before = view.book;
+        refresh(view);
+        for (DepthSubscription subscriber : view.subscribers) {
+            if (subscriber == subscription || view.book != before) {
+                subscriber.offer(view.book);
+            }
+        }
+    }
+
+    void unsubscribe(DepthSubscription subscription) {
+        View view = views.get(subscription.getSymbol());
+        if (view != null && view.subscribers.remove(subscription) && view.subscribers.isEmpty()) {
+            views.remove(subscription.getSymbol());
+        }
+    }
+
+    // Publishes every subscribed symbol whose depth changed since the last call
+    void publish() {
+        if (views.isEmpty()) return;
+        for (View view : views.values()) {
+            DepthBook before = view.book;
+            refresh(view);
+            if (view.book != before) {
+                for (DepthSubscription subscription : view.subscribers) {
+                    subscription.offer(view.book);
+                }
+            }
+        }
+    }
+
+    private void refresh(View view) {
+        long bidVersion = api.getDepthVersion(view.symbolKey, Order.Side.BUY);
+        long askVersion = api.getDepthVersion(view.symbolKey, Order.Side.SELL);
+        if (bidVersion == view.bidVersion && askVersion == view.askVersion) return;
+        view.bidVersion = bidVersion;
+        view.askVersion = askVersion;
+
+        int bids = api.getTopLevels(view.symbolKey, Order.Side.BUY, view.levels, prices, volumes);
+        long[] bidPrices = Arrays.copyOf(prices, bids);
+        long[] bidVolumes = Arrays.copyOf(volumes, bids);
+        int asks = api.getTopLevels(view.symbolKey, Order.Side.SELL, view.levels, prices, volumes);
+        long[] askPrices = Arrays.copyOf(prices, asks);
+        long[] askVolumes = Arrays.copyOf(volumes, asks);
+
+        DepthBook book = view.book;
+        // Changes deeper than the view leave it as it is
+        if (Arrays.equals(bidPrices, book.bidPrices) && Arrays.equals(bidVolumes, book.bidVolumes)
+                && Arrays.equals(askPrices, book.askPrices) && Arrays.equals(askVolumes, book.askVolumes)) {
+            return;
+        }
+        view.book = new DepthBook(book.sequence + 1, bidPrices, bidVolumes, askPrices, askVolumes);
+    }
+}
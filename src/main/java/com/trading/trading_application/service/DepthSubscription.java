@@ -0,0 +1,133 @@
+package com.trading.trading_application.service;
+
+import com.trading.trading_application.lib.DepthUpdate;
+import com.trading.trading_application.lib.TickSize;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// One client's L2 stream of a symbol. The matching thread only swaps in the newest book, a
+// sender on the feed executor diffs it against the book last sent and writes the update, so a
+// slow client never holds up matching and only ever has one pending book however far behind it is.
+public class DepthSubscription {
+
+    // Where updates go, typically a server-sent event stream. Failing to send ends the subscription.
+    public interface Sink {
+        void send(DepthUpdate update) throws IOException;
+    }
+
+    private final String symbol;
+    private final int levels;
+    private final Sink sink;
+    private final Executor executor;
+    private final Consumer<DepthSubscription> onClose;
+
+    private volatile DepthBook latest;
+    private DepthBook sent; // only touched by the sender, one at a time
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    DepthSubscription(String symbol, int levels, Sink sink, Executor executor, Consumer<DepthSubscription> onClose) {
+        this.symbol = symbol;
+        this.levels = levels;
+        this.sink = sink;
+        this.executor = executor;
+        this.onClose = onClose;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    // Called on the matching thread, replacing any book that has not been sent yet
+    void offer(DepthBook book) {
+        latest = book;
+        if (!closed.get() && scheduled.compareAndSet(false, true)) {
+            executor.execute(this::flush);
+        }
+    }
+
+    private void flush() {
+        while (true) {
+            DepthBook book = latest;
+            if (book != sent && !closed.get()) {
+                try {
+                    DepthUpdate update = diff(sent, book);
+                    // Changes below this subscription's depth leave nothing to send
+                    if (update.isSnapshot() || !update.getBids().isEmpty() || !update.getAsks().isEmpty()) {
+                        sink.send(update);
+                    }
+                    sent = book;
+                } catch (IOException | RuntimeException e) {
+                    close();
+                }
+            }
+            scheduled.set(false);
+            // A book offered after the read above has to be sent by someone
+            if (latest == sent || closed.get() || !scheduled.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    // Stops the stream and removes it from its shard
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            onClose.accept(this);
+        }
+    }
+
+    private DepthUpdate diff(DepthBook from, DepthBook to) {
+        TickSize tickSize = TickSize.forSymbol(symbol);
+        if (from == null) {
+            return new DepthUpdate(symbol, to.sequence, true,
+                    levels(tickSize, to.bidPrices, to.bidVolumes), levels(tickSize, to.askPrices, to.askVolumes));
+        }
+        return new DepthUpdate(symbol, to.sequence, false,
+                changes(tickSize, from.bidPrices, from.bidVolumes, to.bidPrices, to.bidVolumes),
+                changes(tickSize, from.askPrices, from.askVolumes, to.askPrices, to.askVolumes));
+    }
+
+    private List<DepthUpdate.Level> levels(TickSize tickSize, long[] prices, long[] volumes) {
+        int n = Math.min(levels, prices.length);
+        List<DepthUpdate.Level> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(new DepthUpdate.Level(tickSize.toPrice(prices[i]), volumes[i]));
+        }
+        return result;
+    }
+
+    // Levels of this subscription's view that are new or changed, then those that left it
+    private List<DepthUpdate.Level> changes(TickSize tickSize, long[] oldPrices, long[] oldVolumes, long[] newPrices, long[] newVolumes) {
+        int oldCount = Math.min(levels, oldPrices.length);
+        int newCount = Math.min(levels, newPrices.length);
+        List<DepthUpdate.Level> result = new ArrayList<>();
+        for (int i = 0; i < newCount; i++) {
+            int j = indexOf(oldPrices, oldCount, newPrices[i]);
+            if (j < 0 || oldVolumes[j] != newVolumes[i]) {
+                result.add(new DepthUpdate.Level(tickSize.toPrice(newPrices[i]), newVolumes[i]));
+            }
+        }
+        for (int j = 0; j < oldCount; j++) {
+            if (indexOf(newPrices, newCount, oldPrices[j]) < 0) {
+                result.add(new DepthUpdate.Level(tickSize.toPrice(oldPrices[j]), 0));
+            }
+        }
+        return result;
+    }
+
+    private static int indexOf(long[] prices, int count, long price) {
+        for (int i = 0; i < count; i++) {
+            if (prices[i] == price) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,692 @@
+package com.trading.trading_application.service;
+
+import com.trading.trading_application.API.OrderBookAPI;
+import com.trading.trading_application.lib.NameRegistry;
+import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.lib.OrderAck;
+import com.trading.trading_application.lib.TradeRequest;
+import com.trading.trading_application.utils.OrderBookSnapshot;
+import com.trading.trading_application.utils.OrderJournal;
+import com.trading.trading_application.utils.OrderJournalReader;
+import com.trading.trading_application.utils.RingBuffer;
+import com.trading.trading_application.utils.StageLatency;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+// A single matching thread that exclusively owns one partition of the order book.
+// Every symbol routed to this shard is only ever read and mutated by its worker thread,
+// so the OrderBook behind it needs no synchronization.
+// Requests arrive through rings of pre-allocated TradeRequest slots that the worker drains in batches.
+// Cancels and reduce-only amends have a ring of their own, drained ahead of every order, so they
+// never wait behind a burst of new orders; one for an order still queued in the order ring waits for it.
+// Anything that adds liquidity, amends that grow or move an order included, queues with the orders.
+// Ingress offers them without waiting and is turned away when the ring is saturated (see Admission);
+// submit waits for room instead, for callers that must not lose requests.
+// With persistence configured, the worker journals each request before processing it and
+// periodically snapshots its partition; on start it loads the newest snapshot and replays the
+// journal from there before taking new requests. A snapshot still stalls matching while the worker
+// copies the partition into memory, waiting for an idle moment for up to one more interval; the
+// write, and dropping the journal segments the kept snapshots cover, happen on a writer thread.
+public class MatchingShard {
+
+    public static final int DEFAULT_RING_SIZE = 1 << 16;
+    private static final int MAX_BATCH = 256;
+    private static final int SPIN_TRIES = 1000;
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+    // Users are counted in hashed buckets, users sharing a bucket share its count
+    private static final int USER_BUCKETS = 4096;
+
+    private final int index;
+    private final int shardCount;
+    private final OrderBookAPI api;
+    private final RingBuffer<TradeRequest> ring;
+    // Priority lane for cancels and reduce-only amends, a quarter of the order ring
+    private final RingBuffer<TradeRequest> cancels;
+    // Order IDs with an amend queued in the order ring, and how many
+    private final ConcurrentHashMap<String, Integer> movingOrders = new ConcurrentHashMap<>();
+    private final Thread worker;
+    private volatile boolean running;
+    // Work other threads hand to the worker, run between batches
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final DepthFeed depthFeed;
+
+    // Admission control: requests in the ring per user bucket, and the limits offers are held to
+    private final AtomicIntegerArray queuedByUser = new AtomicIntegerArray(USER_BUCKETS);
+    private volatile int highWaterMark;
+    private volatile int maxQueuedPerUser;
+
+    // Persistence state, only touched by the worker thread
+    private final ShardPersistence persistence;
+    private final CountDownLatch recovered = new CountDownLatch(1);
+    private volatile Exception recoveryFailure;
+    private OrderJournal journal;
+    private boolean replaying;
+    // Cancels and amends that arrived before their order left the order ring, only touched by the worker
+    private final ArrayDeque<TradeRequest> heldCancels = new ArrayDeque<>();
+    // Its size, published by the worker for getQueueDepth
+    private volatile int heldCount;
+    private long lastSnapshotMillis;
+    private long lastSnapshotSequence;
+    // Writes the images the worker captures, one at a time; the last image is reused once written
+    private final ExecutorService snapshotWriter;
+    private CompletableFuture<Void> snapshotWrite;
+    private OrderBookSnapshot.Image snapshotImage;
+
+    public MatchingShard(int index, OrderBookAPI api, int ringSize) {
+        this(index, 1, api, ringSize, null);
+    }
+
+    public MatchingShard(int index, int shardCount, OrderBookAPI api, int ringSize, ShardPersistence persistence) {
+        this.index = index;
+        this.shardCount = shardCount;
+        this.api = api;
+        this.persistence = persistence;
+        this.ring = new RingBuffer<>(ringSize, TradeRequest::new);
+        this.cancels = new RingBuffer<>(Math.max(1, ringSize / 4), TradeRequest::new);
+        this.depthFeed = new DepthFeed(api);
+        this.highWaterMark = ringSize - ringSize / 4;
+        this.maxQueuedPerUser = Math.max(1, ringSize / 16);
+        this.worker = new Thread(this::run, "MatchingShard-" + index);
+        this.worker.setDaemon(true);
+        this.snapshotWriter = persistence == null ? null : Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SnapshotWriter-" + index);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    // The book partition owned by this shard
+    public OrderBookAPI getOrderBookAPI() {
+        return api;
+    }
+
+    // Orders are turned away once the order ring holds this many requests, cancels only when
+    // their own ring is full.
+    // A user may have at most maxQueuedPerUser requests in the ring at a time.
+    public void setAdmissionLimits(int highWaterMark, int maxQueuedPerUser) {
+        if (highWaterMark < 1 || highWaterMark > ring.getCapacity() || maxQueuedPerUser < 1) {
+            throw new IllegalArgumentException("High water mark must be between 1 and the ring size " + ring.getCapacity()
+                    + ", the per user limit at least 1.");
+        }
+        this.highWaterMark = highWaterMark;
+        this.maxQueuedPerUser = maxQueuedPerUser;
+    }
+
+    // Copies the request into the next free slot of its ring, waiting while that ring is full
+    public void submit(TradeRequest request) {
+        RingBuffer<TradeRequest> lane = laneOf(request);
+        long seq = lane.next();
+        TradeRequest slot = lane.get(seq);
+        slot.copyFrom(request);
+        slot.resolveKeys();
+        countQueued(slot);
+        slot.enqueuedNanos = System.nanoTime();
+        enqueued(slot, lane == cancels);
+        lane.publish(seq);
+    }
+
+    // Copies the request into the next free slot unless admission control turns it away, never waits
+    public Admission offer(TradeRequest request) {
+        request.resolveKeys();
+        RingBuffer<TradeRequest> lane = laneOf(request);
+        Admission admission = admit(request, 1, lane == cancels);
+        if (admission != Admission.ACCEPTED) return admission;
+        long seq = lane.tryNext(1);
+        if (seq < 0) {
+            release(request);
+            return Admission.SHARD_BUSY;
+        }
+        TradeRequest slot = lane.get(seq);
+        slot.copyFrom(request);
+        slot.enqueuedNanos = System.nanoTime();
+        enqueued(slot, lane == cancels);
+        lane.publish(seq);
+        return Admission.ACCEPTED;
+    }
+
+    // A ring slot handed out by claim, for ingress that decodes straight into it. One per ingress
+    // thread, reused for every message.
+    public static final class Claim {
+        private RingBuffer<TradeRequest> lane;
+        private long sequence = -1;
+        private TradeRequest slot;
+
+        // The cleared slot to fill, null unless claimed
+        public TradeRequest getSlot() {
+            return slot;
+        }
+    }
+
+    // Admits a request of this type, user and order like offer and claims its slot without waiting.
+    // The caller fills the slot, with the same user, and hands it over with publish. Nothing behind
+    // it in the ring reaches the worker until then, so fill it right away.
+    public Admission claim(TradeRequest.RequestType type, String userId, String orderId, Claim claim) {
+        RingBuffer<TradeRequest> lane = laneOf(type, false, orderId);
+        int userKey = NameRegistry.USERS.keyOf(userId);
+        Admission admission = admit(type, userKey, 1, lane == cancels);
+        if (admission != Admission.ACCEPTED) return admission;
+        long seq = lane.tryNext(1);
+        if (seq < 0) {
+            release(type, userKey);
+            return Admission.SHARD_BUSY;
+        }
+        claim.lane = lane;
+        claim.sequence = seq;
+        claim.slot = lane.get(seq);
+        return Admission.ACCEPTED;
+    }
+
+    // Publishes the slot filled since claim
+    public void publish(Claim claim) {
+        TradeRequest slot = claim.slot;
+        slot.resolveKeys();
+        slot.enqueuedNanos = System.nanoTime();
+        enqueued(slot, claim.lane == cancels);
+        claim.lane.publish(claim.sequence);
+        claim.lane = null;
+        claim.sequence = -1;
+        claim.slot = null;
+    }
+
+    // Offers the requests in order, those for the order ring as one contiguous run of it and then
+    // the priority ones as one of theirs, and returns each one's admission at its index. Orders
+    // are admitted only if all of them fit under the high water mark.
+    public Admission[] offerBatch(List<TradeRequest> requests) {
+        Admission[] admissions = new Admission[requests.size()];
+        boolean[] priority = priorityOf(requests);
+        int orders = 0;
+        for (int i = 0; i < admissions.length; i++) {
+            requests.get(i).resolveKeys();
+            if (!priority[i]) orders++;
+        }
+        for (int i = 0; i < admissions.length; i++) {
+            admissions[i] = admit(requests.get(i), orders, priority[i]);
+        }
+        publishAdmitted(false, requests, priority, admissions);
+        publishAdmitted(true, requests, priority, admissions);
+        return admissions;
+    }
+
+    // Claims one run of the order or priority ring for the admitted requests that belong to it, or
+    // turns them all away when it has no room for them
+    private void publishAdmitted(boolean toPriority, List<TradeRequest> requests, boolean[] priority, Admission[] admissions) {
+        RingBuffer<TradeRequest> lane = toPriority ? cancels : ring;
+        int accepted = 0;
+        for (int i = 0; i < admissions.length; i++) {
+            if (admissions[i] == Admission.ACCEPTED && priority[i] == toPriority) accepted++;
+        }
+        if (accepted == 0) return;
+        long hi = accepted <= lane.getCapacity() ? lane.tryNext(accepted) : -1;
+        if (hi < 0) {
+            for (int i = 0; i < admissions.length; i++) {
+                if (admissions[i] == Admission.ACCEPTED && priority[i] == toPriority) {
+                    release(requests.get(i));
+                    admissions[i] = Admission.SHARD_BUSY;
+                }
+            }
+            return;
+        }
+        long seq = hi - accepted + 1;
+        long now = System.nanoTime();
+        for (int i = 0; i < admissions.length; i++) {
+            if (admissions[i] != Admission.ACCEPTED || priority[i] != toPriority) continue;
+            TradeRequest slot = lane.get(seq++);
+            slot.copyFrom(requests.get(i));
+            slot.enqueuedNanos = now;
+            enqueued(slot, toPriority);
+        }
+        lane.publish(hi - accepted + 1, hi);
+    }
+
+    // Cancels and reduce-only amends take the priority ring. Not while their order has an amend
+    // queued in the order ring though, they must not overtake it.
+    private RingBuffer<TradeRequest> laneOf(TradeRequest request) {
+        return laneOf(request.type, request.reduceOnly, request.orderId);
+    }
+
+    private RingBuffer<TradeRequest> laneOf(TradeRequest.RequestType type, boolean reduceOnly, String orderId) {
+        boolean priority = type == TradeRequest.RequestType.CANCEL_ORDER
+                || (type == TradeRequest.RequestType.AMEND_ORDER && reduceOnly);
+        if (priority && !movingOrders.isEmpty() && orderId != null && movingOrders.containsKey(orderId)) {
+            return ring;
+        }
+        return priority ? cancels : ring;
+    }
+
+    // Which requests of a batch take the priority ring, as laneOf, also keeping those behind an
+    // amend earlier in the batch in the order ring
+    private boolean[] priorityOf(List<TradeRequest> requests) {
+        boolean[] priority = new boolean[requests.size()];
+        Set<String> moved = null;
+        for (int i = 0; i < priority.length; i++) {
+            TradeRequest request = requests.get(i);
+            priority[i] = laneOf(request) == cancels && (moved == null || !moved.contains(request.orderId));
+            if (orderRingAmend(request)) {
+                if (moved == null) moved = new HashSet<>();
+                moved.add(request.orderId);
+            }
+        }
+        return priority;
+    }
+
+    // A priority request must not overtake the orders queued before it, see heldCancels; an amend
+    // in the order ring is tracked until the worker has taken it, see laneOf
+    private void enqueued(TradeRequest slot, boolean priority) {
+        if (priority) {
+            slot.orderFence = ring.getClaimedSequence();
+        } else if (orderRingAmend(slot)) {
+            movingOrders.merge(slot.orderId, 1, Integer::sum);
+        }
+    }
+
+    private static boolean orderRingAmend(TradeRequest request) {
+        return request.type == TradeRequest.RequestType.AMEND_ORDER && !request.reduceOnly && request.orderId != null;
+    }
+
+    // Checks an order against the high water mark, counting `orders` arriving together, and
+    // takes a place in its user's count. Priority requests pass, they only need a free slot in
+    // their ring.
+    private Admission admit(TradeRequest request, int orders, boolean priority) {
+        return admit(request.type, request.userKey, orders, priority);
+    }
+
+    private Admission admit(TradeRequest.RequestType type, int userKey, int orders, boolean priority) {
+        if (priority) return Admission.ACCEPTED;
+        if (ring.size() + orders > highWaterMark) return Admission.SHARD_BUSY;
+        if (!countsForUser(type, userKey)) return Admission.ACCEPTED;
+        int bucket = userKey & (USER_BUCKETS - 1);
+        if (queuedByUser.incrementAndGet(bucket) > maxQueuedPerUser) {
+            queuedByUser.decrementAndGet(bucket);
+            return Admission.USER_BUSY;
+        }
+        return Admission.ACCEPTED;
+    }
+
+    // Only new orders count against their user, cancels and amends never take a place
+    private static boolean countsForUser(TradeRequest request) {
+        return countsForUser(request.type, request.userKey);
+    }
+
+    private static boolean countsForUser(TradeRequest.RequestType type, int userKey) {
+        return (type == TradeRequest.RequestType.PLACE_ORDER || type == TradeRequest.RequestType.PLACE_MARKET_ORDER)
+                && userKey != NameRegistry.NONE;
+    }
+
+    // Gives back the user's place taken by admit or countQueued
+    private void release(TradeRequest request) {
+        release(request.type, request.userKey);
+    }
+
+    private void release(TradeRequest.RequestType type, int userKey) {
+        if (countsForUser(type, userKey)) {
+            queuedByUser.decrementAndGet(userKey & (USER_BUCKETS - 1));
+        }
+    }
+
+    private void countQueued(TradeRequest request) {
+        if (countsForUser(request)) {
+            queuedByUser.incrementAndGet(request.userKey & (USER_BUCKETS - 1));
+        }
+    }
+
+    // Copies the order ring's requests, then the priority ones, into contiguous slots of their
+    // rings and publishes each ring-full at once, so the worker is woken once and drains them back to back
+    public void submitBatch(List<TradeRequest> requests) {
+        List<TradeRequest> orders = new ArrayList<>(requests.size());
+        List<TradeRequest> priority = new ArrayList<>();
+        boolean[] toPriority = priorityOf(requests);
+        for (int i = 0; i < toPriority.length; i++) {
+            (toPriority[i] ? priority : orders).add(requests.get(i));
+        }
+        submitAll(ring, orders);
+        submitAll(cancels, priority);
+    }
+
+    private void submitAll(RingBuffer<TradeRequest> lane, List<TradeRequest> requests) {
+        int capacity = lane.getCapacity();
+        for (int from = 0; from < requests.size(); from += capacity) {
+            int n = Math.min(capacity, requests.size() - from);
+            long hi = lane.next(n);
+            long lo = hi - n + 1;
+            long now = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                TradeRequest slot = lane.get(lo + i);
+                slot.copyFrom(requests.get(from + i));
+                slot.resolveKeys();
+                countQueued(slot);
+                slot.enqueuedNanos = now;
+                enqueued(slot, lane == cancels);
+            }
+            lane.publish(lo, hi);
+        }
+    }
+
+    // Starts streaming the symbol's depth to the subscription, beginning with a snapshot taken on
+    // the worker so that it lines up exactly with the updates after it
+    void subscribeDepth(DepthSubscription subscription) {
+        execute(() -> depthFeed.subscribe(subscription));
+    }
+
+    void unsubscribeDepth(DepthSubscription subscription) {
+        execute(() -> depthFeed.unsubscribe(subscription));
+    }
+
+    // Reads the partition on the worker between batches, so the read never sees it mid-change
+    <T> CompletableFuture<T> query(Function<OrderBookAPI, T> read) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                result.complete(read.apply(api));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    // Runs the task on the worker between batches, where it may read and change the partition
+    private void execute(Runnable task) {
+        tasks.add(task);
+        LockSupport.unpark(worker);
+    }
+
+    // Requests waiting in the rings or held back, safe to call from any thread
+    public long getQueueDepth() {
+        return ring.size() + cancels.size() + heldCount;
+    }
+
+    // Starts the worker, which recovers the partition before it takes requests
+    public void start() {
+        running = true;
+        worker.start();
+    }
+
+    // Blocks until the worker has recovered its partition. Requests submitted before that
+    // simply wait in the ring.
+    public void awaitRecovered() {
+        try {
+            recovered.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (recoveryFailure != null) {
+            throw new IllegalStateException("Shard " + index + " could not recover its order book", recoveryFailure);
+        }
+    }
+
+    // Processes whatever is still queued, writes a final snapshot and stops the worker
+    public void stop() {
+        running = false;
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            if (persistence != null) {
+                recover();
+            }
+        } catch (Exception e) {
+            recoveryFailure = e;
+            return;
+        } finally {
+            recovered.countDown();
+        }
+
+        int idle = 0;
+        while (running) {
+            if (drainBatch() > 0) {
+                idle = 0;
+                endBatch();
+                runTasks();
+            } else if (runTasks()) {
+                idle = 0;
+            } else if (++idle < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                maybeSnapshot();
+                RingBuffer.awaitAnyPublished(IDLE_PARK_NANOS, cancels, ring);
+            }
+        }
+
+        while (drainBatch() > 0) {
+            endBatch();
+        }
+        if (journal != null) {
+            // A clean stop leaves nothing to replay on the next start
+            snapshot();
+            if (snapshotWrite != null) snapshotWrite.join();
+            snapshotWriter.shutdown();
+            journal.close();
+        }
+    }
+
+    // Cancels first, and again before each order, then the cancels whose orders have been placed
+    private int drainBatch() {
+        int drained = cancels.drain(this::handle, MAX_BATCH);
+        drained += ring.drain(this::handleOrder, MAX_BATCH);
+        if (!heldCancels.isEmpty()) {
+            long placed = ring.getConsumedSequence();
+            for (Iterator<TradeRequest> it = heldCancels.iterator(); it.hasNext(); ) {
+                TradeRequest cancel = it.next();
+                if (cancel.orderFence <= placed) {
+                    it.remove();
+                    handle(cancel);
+                    drained++;
+                }
+            }
+            heldCount = heldCancels.size();
+        }
+        return drained;
+    }
+
+    private void handleOrder(TradeRequest req) {
+        cancels.drain(this::handle, MAX_BATCH);
+        handle(req);
+    }
+
+    private void handle(TradeRequest req) {
+        try {
+            if (!replaying && req.orderFence > ring.getConsumedSequence() && !api.hasOrder(req.orderId)) {
+                // Its order may still be queued behind it in the order ring; held, not journaled,
+                // until the order ring is past it, so the journal keeps the order processed in
+                TradeRequest held = new TradeRequest();
+                held.copyFrom(req);
+                heldCancels.add(held);
+                heldCount = heldCancels.size();
+                return;
+            }
+            if (req.enqueuedNanos != 0) {
+                StageLatency.QUEUE_WAIT.recordSince(req.enqueuedNanos);
+            }
+            // Submission resolves the keys, only requests replayed from the journal arrive without them
+            req.resolveKeys();
+            if (journal != null && !replaying) {
+                if (req.type != TradeRequest.RequestType.CANCEL_ORDER && req.orderId == null) {
+                    // Fixed before journaling so a replay recreates the order under the same ID
+                    req.orderId = UUID.randomUUID().toString();
+                }
+                journal.append(req, System.currentTimeMillis());
+            }
+            long start = System.nanoTime();
+            OrderAck ack = processRequest(req);
+            if (!replaying) {
+                StageLatency.MATCH.recordSince(start);
+            }
+            if (ack != null) {
+                // Runs the client's completion on this thread, which only hands the response
+                // back to the servlet container
+                req.ack.complete(ack);
+            }
+        } catch (IOException | RuntimeException e) {
+            // A bad request must never take the shard (and every symbol it owns) down with it
+            System.err.println("Shard " + index + " failed to process request: " + e.getMessage());
+            e.printStackTrace();
+            if (req.ack != null) {
+                req.ack.complete(OrderAck.rejected(req.orderId, "Request failed: " + e.getMessage()));
+            }
+        } finally {
+            if (req.enqueuedNanos != 0) {
+                // Came through the ring, not from the journal
+                release(req);
+                if (orderRingAmend(req)) {
+                    movingOrders.computeIfPresent(req.orderId, (id, queued) -> queued > 1 ? queued - 1 : null);
+                }
+            }
+            req.clear();
+        }
+    }
+
+    // Returns the outcome when the request asked for an acknowledgement, null otherwise
+    private OrderAck processRequest(TradeRequest req) {
+        OrderAck ack = req.ack != null ? new OrderAck() : null;
+        switch (req.type) {
+            case PLACE_ORDER -> api.placeOrder(req.orderId, req.userKey, req.symbolKey, req.price, req.volume, req.side, req.orderType, ack);
+            case PLACE_MARKET_ORDER -> {
+                long marketPrice = api.quotePrice(req.symbolKey,
+                        req.side == Order.Side.BUY ? Order.Side.SELL : Order.Side.BUY);
+                if (marketPrice != -1) {
+                    api.placeOrder(req.orderId, req.userKey, req.symbolKey, marketPrice, req.volume, req.side, OrderBookAPI.Type.MarketOrder, ack);
+                } else if (ack != null) {
+                    ack.reject(req.orderId, "Nothing to trade against");
+                }
+            }
+            case AMEND_ORDER -> api.amendOrder(req.orderId, req.price, req.volume, req.reduceOnly, ack);
+            case CANCEL_ORDER -> {
+                boolean cancelled = api.cancelOrder(req.orderId);
+                if (ack != null && cancelled) {
+                    ack.complete(req.orderId, OrderAck.Status.CANCELLED, 0);
+                } else if (ack != null) {
+                    ack.reject(req.orderId, "Order not found");
+                }
+            }
+        }
+        return ack;
+    }
+
+    // Loads the newest snapshot, replays the journal records after it, then opens the journal
+    // for appending. Replayed trades are not logged again.
+    private void recover() throws IOException {
+        long start = System.nanoTime();
+        OrderBookSnapshot.Header snapshot = OrderBookSnapshot.loadLatest(persistence.snapshotDirectory(index), api);
+        long fromSequence = 1;
+        if (snapshot != null) {
+            if (snapshot.shardIndex != index || snapshot.shardCount != shardCount) {
+                throw new IllegalStateException("Snapshot was written by shard " + snapshot.shardIndex + " of "
+                        + snapshot.shardCount + ", the shard count cannot change across restarts.");
+            }
+            fromSequence = snapshot.nextSequence;
+        }
+
+        long replayed;
+        replaying = true;
+        api.setTradeLogging(false);
+        try {
+            replayed = OrderJournalReader.forEach(persistence.journalDirectory(index), fromSequence, entry -> handle(entry.request));
+        } finally {
+            replaying = false;
+            api.setTradeLogging(true);
+        }
+
+        journal = persistence.openJournal(index);
+        journal.advanceTo(fromSequence);
+        lastSnapshotMillis = System.currentTimeMillis();
+        lastSnapshotSequence = fromSequence;
+        if (snapshot != null || replayed > 0) {
+            System.out.printf("Shard %d recovered %d orders from snapshot and replayed %d journal records in %d ms%n",
+                    index, snapshot != null ? snapshot.orderCount : 0, replayed, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private void endBatch() {
+        if (journal != null) {
+            journal.endBatch();
+        }
+        depthFeed.publish();
+        if (journal != null) {
+            maybeSnapshot();
+        }
+    }
+
+    private boolean runTasks() {
+        Runnable task = tasks.poll();
+        if (task == null) return false;
+        do {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Shard " + index + " task failed: " + e.getMessage());
+            }
+        } while ((task = tasks.poll()) != null);
+        return true;
+    }
+
+    // Once due, waits for a moment with nothing queued, but no longer than another interval
+    private void maybeSnapshot() {
+        long interval = persistence != null ? persistence.getSnapshotIntervalMillis() : 0;
+        if (journal == null || interval <= 0) return;
+        long since = System.currentTimeMillis() - lastSnapshotMillis;
+        if (since < interval) return;
+        if (since < 2 * interval && (ring.size() > 0 || cancels.size() > 0)) return;
+        if (snapshotWrite != null && !snapshotWrite.isDone()) return; // still writing the last one
+        snapshot();
+    }
+
+    // Runs on the worker between batches, so the partition is consistent with every journal
+    // record before the journal's next sequence
+    private void snapshot() {
+        lastSnapshotMillis = System.currentTimeMillis();
+        long nextSequence = journal.getNextSequence();
+        if (nextSequence == lastSnapshotSequence) return; // nothing new since the last one
+        if (snapshotWrite != null) snapshotWrite.join(); // its image is reused
+        try {
+            // The journal must be durable up to the snapshot, or a crash could lose records the
+            // snapshot already covers and reuse their sequence numbers
+            journal.sync();
+            OrderBookSnapshot.Image image = OrderBookSnapshot.capture(api, index, shardCount, nextSequence, snapshotImage);
+            snapshotImage = image;
+            lastSnapshotSequence = nextSequence;
+            snapshotWrite = CompletableFuture.runAsync(() -> writeSnapshot(image), snapshotWriter);
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Shard " + index + " failed to write a snapshot: " + e.getMessage());
+        }
+    }
+
+    // On the snapshot writer
+    private void writeSnapshot(OrderBookSnapshot.Image image) {
+        try {
+            Path snapshots = persistence.snapshotDirectory(index);
+            OrderBookSnapshot.write(snapshots, image);
+            OrderJournal.deleteSegmentsBefore(persistence.journalDirectory(index), OrderBookSnapshot.oldestSequence(snapshots));
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Shard " + index + " failed to write a snapshot: " + e.getMessage());
+        }
+    }
+}
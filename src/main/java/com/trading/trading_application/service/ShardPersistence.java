@@ -0,0 +1,46 @@
+package com.trading.trading_application.service;
+
+import com.trading.trading_application.utils.OrderJournal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Where and how matching shards keep their order journals and snapshots. Every shard gets its own
+// shard-<index> directory under each root, so the shard count has to stay the same across restarts
+// for recovery to route symbols the way they were routed when the journal was written.
+public class ShardPersistence {
+
+    private final Path journalRoot;
+    private final Path snapshotRoot;
+    private final long segmentSize;
+    private final OrderJournal.FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMillis;
+    private final long snapshotIntervalMillis;
+
+    public ShardPersistence(Path journalRoot, Path snapshotRoot, long segmentSize,
+                            OrderJournal.FsyncPolicy fsyncPolicy, long fsyncIntervalMillis, long snapshotIntervalMillis) {
+        this.journalRoot = journalRoot;
+        this.snapshotRoot = snapshotRoot;
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.snapshotIntervalMillis = snapshotIntervalMillis;
+    }
+
+    public Path journalDirectory(int shard) {
+        return journalRoot.resolve("shard-" + shard);
+    }
+
+    public Path snapshotDirectory(int shard) {
+        return snapshotRoot.resolve("shard-" + shard);
+    }
+
+    // 0 disables periodic snapshots, a snapshot is still written on a clean shutdown
+    public long getSnapshotIntervalMillis() {
+        return snapshotIntervalMillis;
+    }
+
+    OrderJournal openJournal(int shard) throws IOException {
+        return new OrderJournal(journalDirectory(shard), segmentSize, fsyncPolicy, fsyncIntervalMillis);
+    }
+}
@@ -1,81 +1,300 @@
 package com.trading.trading_application.service;
 
 import com.trading.trading_application.API.OrderBookAPI;
+import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.lib.OrderAck;
+import com.trading.trading_application.lib.SymbolActivity;
+import com.trading.trading_application.lib.TopOfBook;
 import com.trading.trading_application.lib.TradeRequest;
+import com.trading.trading_application.utils.TradeLogger;
 import jakarta.annotation.PostConstruct;
-import org.springframework.stereotype.Service;
+import jakarta.annotation.PreDestroy;
 
-import java.util.concurrent.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
-@Service
 public class TradeRequestProcessor {
 
-    private final BlockingQueue<TradeRequest> queue = new LinkedBlockingQueue<>();
-    private final ExecutorService executor = Executors.newFixedThreadPool(10); // Fixed 10 threads
-    private final OrderBookAPI api;
+    private final MatchingShard[] shards;
+    // Sends depth feed updates, a virtual thread per pending send so slow clients block nothing
+    private final ExecutorService feedExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
-    public TradeRequestProcessor(OrderBookAPI api) {
-        this.api = api;
+    // Creates a processor with the given number of shards, each owning a fresh order book partition
+    public TradeRequestProcessor(int shardCount, int ringSize) {
+        this(shardCount, ringSize, null);
     }
 
-    // Submit a trade request to the queue
+    // Same, with every shard journaling and snapshotting its partition when persistence is given,
+    // and recovering it on start
+    public TradeRequestProcessor(int shardCount, int ringSize, ShardPersistence persistence) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1.");
+        }
+        this.shards = new MatchingShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new MatchingShard(i, shardCount, new OrderBookAPI(), ringSize, persistence);
+        }
+    }
+
+    // Creates a processor with one shard per supplied order book partition
+    public TradeRequestProcessor(OrderBookAPI... partitions) {
+        if (partitions.length < 1) {
+            throw new IllegalArgumentException("At least one order book partition is required.");
+        }
+        this.shards = new MatchingShard[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            shards[i] = new MatchingShard(i, partitions[i], MatchingShard.DEFAULT_RING_SIZE);
+        }
+    }
+
+    // Submit a trade request to the shard that owns its symbol
     public void submitRequest(TradeRequest request) {
-        queue.offer(request);
+        if (byOrderIdOnly(request)) {
+            // The owning shard of a bare order ID is unknown, every shard but the owner ignores it
+            TradeRequest[] copies = fanOut(request);
+            for (int i = 0; i < shards.length; i++) {
+                shards[i].submit(copies[i]);
+            }
+            return;
+        }
+        shardFor(request.stockSymbol).submit(request);
     }
 
-    @PostConstruct
-    public void startProcessing() {
-        // Runnable dispatcher for managing stock symbol letter ranges
-        Runnable dispatcher = () -> {
-            while (true) {
-                try {
-                    TradeRequest req = queue.take(); // Blocking call to take request from queue
-                    // Dispatch based on the first letter of the stock symbol (A-C, D-F, etc.)
-                    executor.submit(() -> processRequest(req));
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
+    // Same as submitRequest, but turned away instead of waiting when the owning shard is saturated.
+    // A cancel or amend without a symbol is taken when any shard takes its copy.
+    public Admission offerRequest(TradeRequest request) {
+        if (byOrderIdOnly(request)) {
+            TradeRequest[] copies = fanOut(request);
+            Admission admission = Admission.SHARD_BUSY;
+            for (int i = 0; i < shards.length; i++) {
+                Admission copy = shards[i].offer(copies[i]);
+                if (copy == Admission.ACCEPTED) {
+                    admission = Admission.ACCEPTED;
+                } else if (copies[i].ack != null) {
+                    // Counts as that shard's answer, so the caller's ack still completes
+                    copies[i].ack.complete(OrderAck.rejected(request.orderId, copy.getReason()));
+                }
+            }
+            return admission;
+        }
+        return shardFor(request.stockSymbol).offer(request);
+    }
+
+    // Same as submitBatch with admission control, returns each request's admission at its index
+    public Admission[] offerBatch(List<TradeRequest> requests) {
+        List<List<TradeRequest>> perShard = new ArrayList<>(shards.length);
+        List<List<Integer>> positions = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            perShard.add(new ArrayList<>());
+            positions.add(new ArrayList<>());
+        }
+        Admission[] admissions = new Admission[requests.size()];
+        List<TradeRequest[]> fanOuts = new ArrayList<>();
+        List<Integer> fanOutPositions = new ArrayList<>();
+        for (int r = 0; r < requests.size(); r++) {
+            TradeRequest request = requests.get(r);
+            if (byOrderIdOnly(request)) {
+                TradeRequest[] copies = fanOut(request);
+                for (int i = 0; i < shards.length; i++) {
+                    perShard.get(i).add(copies[i]);
+                    positions.get(i).add(-1 - fanOuts.size());
+                }
+                fanOuts.add(copies);
+                fanOutPositions.add(r);
+                admissions[r] = Admission.SHARD_BUSY;
+            } else {
+                int shard = shardIndex(request.stockSymbol);
+                perShard.get(shard).add(request);
+                positions.get(shard).add(r);
+            }
+        }
+        for (int i = 0; i < shards.length; i++) {
+            if (perShard.get(i).isEmpty()) continue;
+            Admission[] shardAdmissions = shards[i].offerBatch(perShard.get(i));
+            for (int k = 0; k < shardAdmissions.length; k++) {
+                int position = positions.get(i).get(k);
+                if (position >= 0) {
+                    admissions[position] = shardAdmissions[k];
+                    continue;
+                }
+                // A fan-out copy, see offerRequest
+                int fanOut = -1 - position;
+                TradeRequest copy = fanOuts.get(fanOut)[i];
+                if (shardAdmissions[k] == Admission.ACCEPTED) {
+                    admissions[fanOutPositions.get(fanOut)] = Admission.ACCEPTED;
+                } else if (copy.ack != null) {
+                    copy.ack.complete(OrderAck.rejected(copy.orderId, shardAdmissions[k].getReason()));
                 }
             }
-        };
-
-        Thread dispatcherThread = new Thread(dispatcher);
-        dispatcherThread.setDaemon(true);
-        dispatcherThread.start();
-    }
-
-    private void processRequest(TradeRequest req) {
-        // Dispatch requests to specific threads based on stock symbol
-        char firstLetter = req.stockSymbol.toUpperCase().charAt(0);
-        int threadIndex = getThreadIndex(firstLetter); // Determine which thread should handle it
-
-        // Dispatch the request based on thread index (each thread will handle a group of stock symbols)
-        switch (req.type) {
-            case PLACE_ORDER -> api.placeOrder(req.userId, req.stockSymbol, req.price, req.volume, req.side, req.orderType);
-            case PLACE_MARKET_ORDER -> {
-                double marketPrice = api.quotePrice(req.stockSymbol,
-                        req.side == com.trading.trading_application.lib.Order.Side.BUY
-                                ? com.trading.trading_application.lib.Order.Side.SELL
-                                : com.trading.trading_application.lib.Order.Side.BUY);
-                if (marketPrice != -1) {
-                    api.placeOrder(req.userId, req.stockSymbol, marketPrice, req.volume, req.side, OrderBookAPI.Type.MarketOrder);
+        }
+        return admissions;
+    }
+
+    // Orders are turned away once a shard's order ring holds highWaterMark requests, and once their user
+    // has maxQueuedPerUser requests in it
+    public void setAdmissionLimits(int highWaterMark, int maxQueuedPerUser) {
+        for (MatchingShard shard : shards) {
+            shard.setAdmissionLimits(highWaterMark, maxQueuedPerUser);
+        }
+    }
+
+    // Submit requests in one go: each shard gets its share as contiguous runs of its rings,
+    // orders in the order they were given and cancels in theirs, ahead of the orders (see MatchingShard)
+    public void submitBatch(List<TradeRequest> requests) {
+        List<List<TradeRequest>> perShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            perShard.add(new ArrayList<>());
+        }
+        for (TradeRequest request : requests) {
+            if (byOrderIdOnly(request)) {
+                TradeRequest[] copies = fanOut(request);
+                for (int i = 0; i < shards.length; i++) {
+                    perShard.get(i).add(copies[i]);
                 }
+            } else {
+                perShard.get(shardIndex(request.stockSymbol)).add(request);
             }
-            case CANCEL_ORDER -> api.cancelOrder(req.orderId);
-        }
-    }
-
-    // Get thread index based on the first letter of the stock symbol
-    private int getThreadIndex(char firstLetter) {
-        if (firstLetter >= 'A' && firstLetter <= 'C') return 0;
-        if (firstLetter >= 'D' && firstLetter <= 'F') return 1;
-        if (firstLetter >= 'G' && firstLetter <= 'I') return 2;
-        if (firstLetter >= 'J' && firstLetter <= 'L') return 3;
-        if (firstLetter >= 'M' && firstLetter <= 'O') return 4;
-        if (firstLetter >= 'P' && firstLetter <= 'R') return 5;
-        if (firstLetter >= 'S' && firstLetter <= 'U') return 6;
-        if (firstLetter >= 'V' && firstLetter <= 'X') return 7;
-        if (firstLetter >= 'Y' && firstLetter <= 'Z') return 8;
-        return 9; // Default, for any unexpected character
+        }
+        for (int i = 0; i < shards.length; i++) {
+            if (!perShard.get(i).isEmpty()) {
+                shards[i].submitBatch(perShard.get(i));
+            }
+        }
+    }
+
+    // Cancels and amends may name only the order ID
+    private static boolean byOrderIdOnly(TradeRequest request) {
+        return request.stockSymbol == null && (request.type == TradeRequest.RequestType.CANCEL_ORDER
+                || request.type == TradeRequest.RequestType.AMEND_ORDER);
+    }
+
+    // One copy of a cancel or amend per shard. Only the owning shard finds the order, so the
+    // caller's ack completes with the first answer that is not a rejection, or with the last
+    // rejection once every shard has answered.
+    private TradeRequest[] fanOut(TradeRequest request) {
+        TradeRequest[] copies = new TradeRequest[shards.length];
+        CompletableFuture<OrderAck> ack = request.ack;
+        AtomicInteger pending = new AtomicInteger(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            copies[i] = new TradeRequest();
+            copies[i].copyFrom(request);
+            if (ack != null) {
+                copies[i].ack = new CompletableFuture<>();
+                copies[i].ack.thenAccept(result -> {
+                    if (result.getStatus() != OrderAck.Status.REJECTED || pending.decrementAndGet() == 0) {
+                        ack.complete(result);
+                    }
+                });
+            }
+        }
+        return copies;
+    }
+
+    // Streams the symbol's top levels (at most DepthFeed.MAX_LEVELS per side) to the sink: a
+    // snapshot, then the changes as the owning shard makes them, conflated when the sink is slow
+    public DepthSubscription subscribeDepth(String stockSymbol, int levels, DepthSubscription.Sink sink) {
+        if (levels < 1 || levels > DepthFeed.MAX_LEVELS) {
+            throw new IllegalArgumentException("Depth levels must be between 1 and " + DepthFeed.MAX_LEVELS + ".");
+        }
+        MatchingShard shard = shardFor(stockSymbol);
+        DepthSubscription subscription = new DepthSubscription(stockSymbol, levels, sink, feedExecutor, shard::unsubscribeDepth);
+        shard.subscribeDepth(subscription);
+        return subscription;
+    }
+
+    // Order book partition owning the symbol, reads on it race with the owning shard's thread:
+    // request threads use the reads below, which run on that thread
+    public OrderBookAPI getOrderBookAPI(String stockSymbol) {
+        return shardFor(stockSymbol).getOrderBookAPI();
+    }
+
+    // Volume resting at the price in ticks on one side of the symbol
+    public CompletableFuture<Long> getVolumeAtPrice(String stockSymbol, long price, Order.Side side) {
+        return shardFor(stockSymbol).query(api -> api.getVolumeAtPrice(stockSymbol, price, side));
+    }
+
+    // Volume on one side of the symbol an order at the price in ticks would cross
+    public CompletableFuture<Long> getDepthThroughPrice(String stockSymbol, long price, Order.Side side) {
+        return shardFor(stockSymbol).query(api -> api.getDepthThroughPrice(stockSymbol, price, side));
+    }
+
+    // Shard owning the symbol, for ingress that offers to it directly
+    public MatchingShard getShard(String stockSymbol) {
+        return shardFor(stockSymbol);
+    }
+
+    // Published by the symbol's shard, so request threads never read the book itself
+    public TopOfBook.Quote getTopOfBook(String stockSymbol) {
+        return shardFor(stockSymbol).getOrderBookAPI().getTopOfBook(stockSymbol);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    // Requests waiting in a shard's rings
+    public long getQueueDepth(int shard) {
+        return shards[shard].getQueueDepth();
+    }
+
+    // Per-symbol counters of every partition, safe to call from any thread
+    public void forEachSymbolActivity(Consumer<SymbolActivity> action) {
+        for (MatchingShard shard : shards) {
+            shard.getOrderBookAPI().forEachSymbolActivity(action);
+        }
+    }
+
+    // Each shard prints its book on its own thread, one shard after the other
+    public CompletableFuture<Void> printOrderBooks() {
+        CompletableFuture<Void> printed = CompletableFuture.completedFuture(null);
+        for (MatchingShard shard : shards) {
+            printed = printed.thenCompose(done -> shard.query(api -> {
+                System.out.println("========== SHARD " + shard.getIndex() + " ==========");
+                api.printOrderBook();
+                return null;
+            }));
+        }
+        return printed;
+    }
+
+    // Shards recover their partitions in parallel, this returns once all of them are ready
+    @PostConstruct
+    public void startProcessing() {
+        for (MatchingShard shard : shards) {
+            shard.start();
+        }
+        for (MatchingShard shard : shards) {
+            shard.awaitRecovered();
+        }
+    }
+
+    @PreDestroy
+    public void stopProcessing() {
+        for (MatchingShard shard : shards) {
+            shard.stop();
+        }
+        feedExecutor.shutdownNow();
+        // Commits the trades of the shards' final drain, which their last snapshot counts as logged
+        try {
+            TradeLogger.shutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private MatchingShard shardFor(String stockSymbol) {
+        return shards[shardIndex(stockSymbol)];
+    }
+
+    // Route by symbol hash so load spreads evenly regardless of how symbols are named
+    int shardIndex(String stockSymbol) {
+        int h = stockSymbol.hashCode();
+        h ^= (h >>> 16);
+        return Math.floorMod(h, shards.length);
     }
 }
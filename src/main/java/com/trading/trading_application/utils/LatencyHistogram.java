@@ -0,0 +1,109 @@
+package com.trading.trading_application.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// HDR-style latency histogram in nanoseconds: exact below 128ns, then 64 linear sub-buckets per
+// power of two, so every recorded value is within 1.6% of its bucket. Recording is one atomic
+// increment and never locks or allocates. Readers take interval snapshots: each one holds what was
+// recorded since the previous snapshot, computed against the counts seen last time so that
+// recorders never have to be paused or swapped out.
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    // Values from 2^40 ns (about 18 minutes) up all land in the last bucket
+    private static final int MAX_BIT_LENGTH = 40;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_BIT_LENGTH - SUB_BUCKET_BITS) * HALF_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    // Reader side, guarded by this
+    private final long[] previous = new long[BUCKET_COUNT];
+    private long previousMillis = System.currentTimeMillis();
+
+    // Counts of one interval, with percentiles reported as the highest value of their bucket
+    public static class Snapshot {
+        public final long startMillis;
+        public final long endMillis;
+        private final long[] counts;
+        private final long total;
+
+        Snapshot(long startMillis, long endMillis, long[] counts) {
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.counts = counts;
+            long sum = 0;
+            for (long count : counts) sum += count;
+            this.total = sum;
+        }
+
+        public long getCount() {
+            return total;
+        }
+
+        // Value at the given percentile (0-100) in nanoseconds, 0 when nothing was recorded
+        public long getValueAtPercentile(double percentile) {
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return highestValueOf(i);
+            }
+            return getMax();
+        }
+
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] > 0) return highestValueOf(i);
+            }
+            return 0;
+        }
+    }
+
+    public void record(long nanos) {
+        counts.getAndIncrement(indexOf(nanos));
+    }
+
+    // Records the time elapsed since a System.nanoTime() reading
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    // Everything recorded since the previous call, which starts the next interval
+    public synchronized Snapshot intervalSnapshot() {
+        long now = System.currentTimeMillis();
+        long[] interval = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = counts.get(i);
+            interval[i] = count - previous[i];
+            previous[i] = count;
+        }
+        Snapshot snapshot = new Snapshot(previousMillis, now, interval);
+        previousMillis = now;
+        return snapshot;
+    }
+
+    static int indexOf(long nanos) {
+        if (nanos < SUB_BUCKET_COUNT) {
+            return (int) Math.max(nanos, 0);
+        }
+        int bitLength = 64 - Long.numberOfLeadingZeros(nanos);
+        if (bitLength > MAX_BIT_LENGTH) {
+            return BUCKET_COUNT - 1;
+        }
+        // The top SUB_BUCKET_BITS bits pick the sub-bucket, the leading one is always set
+        int shift = bitLength - SUB_BUCKET_BITS;
+        int top = (int) (nanos >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_COUNT + (top - HALF_COUNT);
+    }
+
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / HALF_COUNT + 1;
+        long top = (index - SUB_BUCKET_COUNT) % HALF_COUNT + HALF_COUNT;
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,331 @@
+package com.trading.trading_application.utils;
+
+import com.trading.trading_application.API.OrderBookAPI;
+import com.trading.trading_application.lib.Order;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Point-in-time binary image of one order book partition: every resting order in book priority,
+// the last execution prices and the journal sequence the snapshot is consistent with. Recovery
+// loads the newest valid snapshot and replays only the journal records after it.
+// Files are written to a temporary name and renamed, and end with a CRC that is checked before
+// anything is loaded, so a torn or corrupt file is skipped without touching the book.
+// Taking one is split in two: capture copies the partition into memory on the thread that owns it,
+// write puts that image on disk from any other thread.
+public class OrderBookSnapshot {
+
+    private static final int MAGIC = 0x4F42534E; // "OBSN"
+    private static final int VERSION = 1;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+    private static final int KEEP = 2;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    // Result of loading a snapshot
+    public static class Header {
+        public final int shardIndex;
+        public final int shardCount;
+        public final long nextSequence; // first journal sequence not covered by the snapshot
+        public final long orderCount;
+
+        Header(int shardIndex, int shardCount, long nextSequence, long orderCount) {
+            this.shardIndex = shardIndex;
+            this.shardCount = shardCount;
+            this.nextSequence = nextSequence;
+            this.orderCount = orderCount;
+        }
+    }
+
+    // A snapshot captured in memory, in direct buffers that the next capture may reuse once this
+    // one is written
+    public static final class Image {
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private int used; // chunks holding this snapshot, each flipped for reading
+        private long nextSequence;
+
+        public long getNextSequence() {
+            return nextSequence;
+        }
+    }
+
+    // Copies the partition into an image, reusing the buffers of one already written if given.
+    // Must run on the thread that owns the partition; it does no I/O, so that thread is only held
+    // up for the copy.
+    public static Image capture(OrderBookAPI api, int shardIndex, int shardCount, long nextSequence, Image reuse) throws IOException {
+        Image image = reuse != null ? reuse : new Image();
+        image.used = 0;
+        image.nextSequence = nextSequence;
+        SnapshotOutput out = new SnapshotOutput(image);
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(shardIndex);
+        out.putInt(shardCount);
+        out.putLong(nextSequence);
+
+        try {
+            api.forEachStockPrice((symbol, price) -> {
+                out.putByte(1);
+                out.putString(symbol);
+                out.putLong(price);
+            });
+            out.putByte(0);
+
+            long[] count = new long[1];
+            api.forEachRestingOrder(order -> {
+                out.putByte(1);
+                out.putString(order.getOrderId());
+                out.putString(order.getUserId());
+                out.putString(order.getStockSymbol());
+                out.putByte(order.getSide().ordinal());
+                out.putLong(order.getPrice());
+                out.putLong(order.getVolume());
+                out.putLong(order.getTimestamp());
+                count[0]++;
+            });
+            out.putByte(0);
+            out.putLong(count[0]);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.finish();
+        return image;
+    }
+
+    // Writes a captured image into the directory and prunes all but the newest few snapshots.
+    // Any thread, the image is not changed.
+    public static Path write(Path directory, Image image) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(String.format("%s%020d%s", PREFIX, image.nextSequence, SUFFIX));
+        Path temp = directory.resolve(file.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 crc = new CRC32();
+            for (int i = 0; i < image.used; i++) {
+                ByteBuffer chunk = image.chunks.get(i).duplicate();
+                crc.update(chunk.duplicate());
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES).putLong(crc.getValue()).flip();
+            while (trailer.hasRemaining()) {
+                channel.write(trailer);
+            }
+            channel.force(true); // before it replaces anything
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        List<Path> snapshots = list(directory);
+        for (int i = 0; i < snapshots.size() - KEEP; i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+        return file;
+    }
+
+    // Journal sequence of the oldest snapshot kept, records before it are needed by none of them.
+    // 0 when there is no snapshot.
+    public static long oldestSequence(Path directory) throws IOException {
+        List<Path> snapshots = list(directory);
+        if (snapshots.isEmpty()) return 0;
+        String name = snapshots.get(0).getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    // Loads the newest snapshot with a valid checksum into an empty partition, or returns null if
+    // there is none. Broken snapshots are reported and skipped.
+    public static Header loadLatest(Path directory, OrderBookAPI api) throws IOException {
+        List<Path> snapshots = list(directory);
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            Path file = snapshots.get(i);
+            if (!checksumMatches(file)) {
+                System.err.println("Skipping snapshot with a bad checksum: " + file);
+                continue;
+            }
+            return read(file, api);
+        }
+        return null;
+    }
+
+    // Streams a verified snapshot straight into the partition
+    private static Header read(Path file, OrderBookAPI api) throws IOException {
+        try (SnapshotInput in = new SnapshotInput(file)) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not an order book snapshot: " + file);
+            }
+            int shardIndex = in.readInt();
+            int shardCount = in.readInt();
+            long nextSequence = in.readLong();
+
+            while (in.readByte() != 0) {
+                api.restoreStockPrice(in.readString(), in.readLong());
+            }
+            Order.Side[] sides = Order.Side.values();
+            long count = 0;
+            while (in.readByte() != 0) {
+                String orderId = in.readString();
+                String userId = in.readString();
+                api.restoreOrder(new Order.Builder(userId)
+                        .orderId(orderId)
+                        .stockSymbol(in.readString())
+                        .side(sides[in.readByte()])
+                        .price(in.readLong())
+                        .volume(in.readLong())
+                        .timestamp(in.readLong())
+                        .build());
+                count++;
+            }
+            if (in.readLong() != count) {
+                throw new IOException("Order count mismatch in snapshot " + file);
+            }
+            return new Header(shardIndex, shardCount, nextSequence, count);
+        }
+    }
+
+    // Checks the trailing CRC against everything before it, in one sequential pass
+    private static boolean checksumMatches(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size() - Long.BYTES;
+            if (length < 0) return false;
+            CRC32 crc = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long position = 0;
+            while (position < length) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), length - position));
+                int n = channel.read(buffer, position);
+                if (n < 0) return false;
+                crc.update(buffer.flip());
+                position += n;
+            }
+            ByteBuffer stored = ByteBuffer.allocate(Long.BYTES);
+            while (stored.hasRemaining() && channel.read(stored, length + stored.position()) > 0) { }
+            return !stored.hasRemaining() && stored.getLong(0) == crc.getValue();
+        }
+    }
+
+    // Snapshots of a directory, oldest first
+    private static List<Path> list(Path directory) throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return snapshots;
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .sorted()
+                    .forEach(snapshots::add);
+        }
+        return snapshots;
+    }
+
+    // Unsynchronized writer into an image's buffers. Data streams pay for a locked call per field,
+    // which dominated snapshotting a large book on the matching thread. Strings are length
+    // prefixed UTF-8.
+    private static final class SnapshotOutput {
+        private final Image image;
+        private ByteBuffer buffer;
+
+        SnapshotOutput(Image image) {
+            this.image = image;
+            next();
+        }
+
+        private ByteBuffer room(int bytes) {
+            if (buffer.remaining() < bytes) {
+                buffer.flip();
+                next();
+            }
+            return buffer;
+        }
+
+        private void next() {
+            if (image.used == image.chunks.size()) {
+                image.chunks.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+            }
+            buffer = image.chunks.get(image.used++).clear();
+        }
+
+        void putByte(int value) {
+            room(1).put((byte) value);
+        }
+
+        void putInt(int value) {
+            room(Integer.BYTES).putInt(value);
+        }
+
+        void putLong(long value) {
+            room(Long.BYTES).putLong(value);
+        }
+
+        void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new UncheckedIOException(new IOException("String too long for a snapshot: " + value.length() + " characters"));
+            }
+            room(2 + bytes.length).putShort((short) bytes.length).put(bytes);
+        }
+
+        void finish() {
+            buffer.flip();
+        }
+    }
+
+    // Unsynchronized buffered reader over a file channel, the counterpart of SnapshotOutput
+    private static final class SnapshotInput implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+
+        SnapshotInput(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        }
+
+        private ByteBuffer require(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                buffer.compact();
+                while (buffer.position() < bytes) {
+                    if (channel.read(buffer) < 0) throw new EOFException();
+                }
+                buffer.flip();
+            }
+            return buffer;
+        }
+
+        byte readByte() throws IOException {
+            return require(1).get();
+        }
+
+        int readInt() throws IOException {
+            return require(Integer.BYTES).getInt();
+        }
+
+        long readLong() throws IOException {
+            return require(Long.BYTES).getLong();
+        }
+
+        String readString() throws IOException {
+            int length = require(2).getShort() & 0xFFFF;
+            ByteBuffer source = require(length);
+            String value = new String(source.array(), source.position(), length, StandardCharsets.UTF_8);
+            source.position(source.position() + length);
+            return value;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.trading.trading_application.utils;
+
+import com.trading.trading_application.lib.TradeRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// Append-only binary journal of order requests, written through memory-mapped segment files.
+// Every record has the same fixed width and carries its own sequence number, so a segment can be
+// scanned without any index and a record with sequence 0 marks the end of the written data.
+// Single writer only: each matching shard owns its journal.
+public class OrderJournal implements Closeable {
+
+    public enum FsyncPolicy {
+        NONE,        // leave write-back to the OS page cache
+        EVERY_BATCH, // force the mapped segment after every appended batch
+        INTERVAL     // force at most once per configured interval
+    }
+
+    public static final int RECORD_SIZE = 128;
+    public static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+
+    static final int MAGIC = 0x4F4A4E4C; // "OJNL"
+    static final int VERSION = 1;
+    static final String SEGMENT_PREFIX = "orders-";
+    static final String SEGMENT_SUFFIX = ".journal";
+
+    // Record layout, all numbers big-endian
+    static final int SEQUENCE_OFFSET = 0;    // long, written last so a half written record stays invisible
+    static final int TIMESTAMP_OFFSET = 8;   // long, epoch millis
+    static final int PRICE_OFFSET = 16;      // long, ticks
+    static final int VOLUME_OFFSET = 24;     // long
+    static final int REQUEST_TYPE_OFFSET = 32;
+    static final int SIDE_OFFSET = 33;
+    static final int ORDER_TYPE_OFFSET = 34;
+    static final int FLAGS_OFFSET = 35;      // byte, FLAG_* bits
+    static final int FLAG_REDUCE_ONLY = 1;
+    static final int SYMBOL_OFFSET = 40;
+    static final int SYMBOL_LENGTH = 16;
+    static final int USER_ID_OFFSET = 56;
+    static final int USER_ID_LENGTH = 32;
+    static final int ORDER_ID_OFFSET = 88;
+    static final int ORDER_ID_LENGTH = 40;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMillis;
+
+    private MappedByteBuffer segment;
+    private long nextSequence;
+    private long lastSync;
+    private boolean dirty;
+
+    public OrderJournal(Path directory, long segmentSize, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis) throws IOException {
+        if (segmentSize < 2 * RECORD_SIZE || segmentSize % RECORD_SIZE != 0 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must be a multiple of " + RECORD_SIZE + " bytes, holding at least one record and under 2GB.");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    // Sequence number the next appended record will get
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    // Continues the journal at a later sequence in a fresh segment, for when records a snapshot
+    // already covers are missing from the journal
+    public void advanceTo(long sequence) throws IOException {
+        if (sequence <= nextSequence) return;
+        nextSequence = sequence;
+        roll();
+    }
+
+    // Appends one request and returns its sequence number
+    public long append(TradeRequest request, long timestamp) throws IOException {
+        // Checked up front so a rejected request never leaves a gap in the sequence
+        checkFields(request.stockSymbol, request.userId, request.orderId);
+        if (!segment.hasRemaining()) {
+            roll();
+        }
+        long sequence = nextSequence++;
+        int base = segment.position();
+        segment.putLong(base + TIMESTAMP_OFFSET, timestamp);
+        segment.putLong(base + PRICE_OFFSET, request.price);
+        segment.putLong(base + VOLUME_OFFSET, request.volume);
+        segment.put(base + REQUEST_TYPE_OFFSET, (byte) (request.type != null ? request.type.ordinal() : -1));
+        segment.put(base + SIDE_OFFSET, (byte) (request.side != null ? request.side.ordinal() : -1));
+        segment.put(base + ORDER_TYPE_OFFSET, (byte) (request.orderType != null ? request.orderType.ordinal() : -1));
+        segment.put(base + FLAGS_OFFSET, (byte) (request.reduceOnly ? FLAG_REDUCE_ONLY : 0));
+        putString(base + SYMBOL_OFFSET, SYMBOL_LENGTH, request.stockSymbol);
+        putString(base + USER_ID_OFFSET, USER_ID_LENGTH, request.userId);
+        putString(base + ORDER_ID_OFFSET, ORDER_ID_LENGTH, request.orderId);
+        segment.putLong(base + SEQUENCE_OFFSET, sequence);
+        segment.position(base + RECORD_SIZE);
+        dirty = true;
+        return sequence;
+    }
+
+    // Called once per appended batch, forces the segment to disk as the fsync policy asks
+    public void endBatch() {
+        if (!dirty) return;
+        switch (fsyncPolicy) {
+            case EVERY_BATCH -> sync();
+            case INTERVAL -> {
+                if (System.currentTimeMillis() - lastSync >= fsyncIntervalMillis) sync();
+            }
+            case NONE -> { }
+        }
+    }
+
+    public void sync() {
+        segment.force();
+        lastSync = System.currentTimeMillis();
+        dirty = false;
+    }
+
+    // Deletes the segments of the directory holding only records before the sequence, those the
+    // snapshots cover. Any thread: the newest segment, the one being appended to, is never deleted.
+    public static int deleteSegmentsBefore(Path directory, long sequence) throws IOException {
+        List<Path> segments = OrderJournalReader.listSegments(directory);
+        int deleted = 0;
+        for (int s = 0; s + 1 < segments.size() && OrderJournalReader.firstSequenceOf(segments.get(s + 1)) <= sequence; s++) {
+            if (Files.deleteIfExists(segments.get(s))) deleted++;
+        }
+        return deleted;
+    }
+
+    @Override
+    public void close() {
+        if (segment != null && dirty && fsyncPolicy != FsyncPolicy.NONE) {
+            sync();
+        }
+    }
+
+    // Continues the newest segment after its last complete record, or starts the first one
+    private void recover() throws IOException {
+        List<Path> segments = OrderJournalReader.listSegments(directory);
+        if (segments.isEmpty()) {
+            nextSequence = 1;
+            open(nextSequence);
+            return;
+        }
+        Path last = segments.get(segments.size() - 1);
+        segment = map(last);
+        long firstSequence = OrderJournalReader.checkHeader(segment, last);
+        nextSequence = firstSequence;
+        int position = RECORD_SIZE;
+        while (position < segment.limit() && segment.getLong(position + SEQUENCE_OFFSET) == nextSequence) {
+            nextSequence++;
+            position += RECORD_SIZE;
+        }
+        // Clear whatever a crash may have left behind the last complete record
+        for (int i = position; i < segment.limit() && segment.getLong(i + SEQUENCE_OFFSET) != 0; i += RECORD_SIZE) {
+            segment.putLong(i + SEQUENCE_OFFSET, 0);
+        }
+        segment.position(position);
+    }
+
+    private void roll() throws IOException {
+        if (dirty && fsyncPolicy != FsyncPolicy.NONE) {
+            sync();
+        }
+        open(nextSequence);
+    }
+
+    // Creates a segment whose first record will have the given sequence. The first record
+    // slot holds the header: magic, version, record size and first sequence.
+    private void open(long firstSequence) throws IOException {
+        Path path = directory.resolve(OrderJournalReader.segmentName(firstSequence));
+        segment = map(path);
+        segment.putInt(0, MAGIC);
+        segment.putInt(4, VERSION);
+        segment.putInt(8, RECORD_SIZE);
+        segment.putLong(16, firstSequence);
+        segment.position(RECORD_SIZE);
+    }
+
+    private MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Existing segments keep the size they were written with. The mapping stays valid
+            // after the channel is closed.
+            long size = channel.size() > 0 ? channel.size() : segmentSize;
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    // The record's text fields, ASCII of at most their width. Anything else is rejected rather
+    // than truncated so every record can be replayed exactly; ingress checks them too, so such a
+    // request is turned away before it reaches the matching thread.
+    public static void checkFields(String stockSymbol, String userId, String orderId) {
+        checkLength("stockSymbol", stockSymbol, SYMBOL_LENGTH);
+        checkLength("userId", userId, USER_ID_LENGTH);
+        checkLength("orderId", orderId, ORDER_ID_LENGTH);
+    }
+
+    private static void checkLength(String field, String value, int length) {
+        if (value == null) return;
+        if (value.length() > length) {
+            throw new IllegalArgumentException(field + " holds at most " + length + " characters");
+        }
+        // One byte per character, and NUL ends the field
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == 0 || c > 127) {
+                throw new IllegalArgumentException(field + " must be ASCII");
+            }
+        }
+    }
+
+    // Writes an ASCII string into a fixed width field, zero padded
+    private void putString(int offset, int length, String value) {
+        int n = value != null ? value.length() : 0;
+        for (int i = 0; i < n; i++) {
+            segment.put(offset + i, (byte) value.charAt(i));
+        }
+        for (int i = n; i < length; i++) {
+            segment.put(offset + i, (byte) 0);
+        }
+    }
+
+    static String getString(MappedByteBuffer buffer, int offset, int length) {
+        int n = 0;
+        while (n < length && buffer.get(offset + n) != 0) n++;
+        if (n == 0) return null;
+        byte[] bytes = new byte[n];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,195 @@
+package com.trading.trading_application.utils;
+
+import com.trading.trading_application.API.OrderBookAPI;
+import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.lib.TickSize;
+import com.trading.trading_application.lib.TradeRequest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static com.trading.trading_application.utils.OrderJournal.*;
+
+// Decodes OrderJournal segments. Records are handed out one at a time through a single reused
+// Entry, so callers must copy anything they want to keep.
+// Print a shard's journal in the old OrderLogs.txt text form with:
+// java -cp target/classes com.trading.trading_application.utils.OrderJournalReader [journal/shard-N] [fromSequence]
+public class OrderJournalReader {
+
+    public static class Entry {
+        public long sequence;
+        public long timestamp; // epoch millis
+        public final TradeRequest request = new TradeRequest();
+    }
+
+    private static final TradeRequest.RequestType[] REQUEST_TYPES = TradeRequest.RequestType.values();
+    private static final Order.Side[] SIDES = Order.Side.values();
+    private static final OrderBookAPI.Type[] ORDER_TYPES = OrderBookAPI.Type.values();
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args.length > 0 ? args[0] : "journal/shard-0");
+        long fromSequence = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        forEach(directory, fromSequence, entry -> System.out.print(format(entry, dateFormat)));
+    }
+
+    // Visits every record from the given sequence on, in sequence order
+    public static long forEach(Path directory, long fromSequence, Consumer<Entry> action) throws IOException {
+        Entry entry = new Entry();
+        long count = 0;
+        List<Path> segments = listSegments(directory);
+        for (int s = 0; s < segments.size(); s++) {
+            // Skip whole segments that end before the requested sequence
+            if (s + 1 < segments.size() && firstSequenceOf(segments.get(s + 1)) <= fromSequence) continue;
+            MappedByteBuffer segment = map(segments.get(s));
+            long expected = checkHeader(segment, segments.get(s));
+            for (int base = RECORD_SIZE; base + RECORD_SIZE <= segment.limit(); base += RECORD_SIZE) {
+                long sequence = segment.getLong(base + SEQUENCE_OFFSET);
+                if (sequence != expected) break; // end of written data
+                expected++;
+                if (sequence < fromSequence) continue;
+                decode(segment, base, entry);
+                action.accept(entry);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Visits every line of a text order log, such as OrderLogs.txt or the output of main, in file order
+    public static long forEachLine(Path file, Consumer<Entry> action) throws IOException {
+        Entry entry = new Entry();
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        long count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                parse(line, entry, dateFormat);
+                action.accept(entry);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Reads a line written by format back into the entry. Limit orders come back as good til
+    // cancel, the text form does not record the order type.
+    public static void parse(String line, Entry entry, SimpleDateFormat dateFormat) throws IOException {
+        String[] fields = line.trim().split("\\s+");
+        if (fields.length < 9) {
+            throw new IOException("Not an order log line: " + line);
+        }
+        TradeRequest request = entry.request;
+        try {
+            entry.sequence = Long.parseLong(fields[0], 16);
+            entry.timestamp = dateFormat.parse(fields[1] + " " + fields[2]).getTime();
+            request.type = TradeRequest.RequestType.valueOf(fields[8]);
+            request.stockSymbol = field(fields[3]);
+            request.price = request.stockSymbol != null ? TickSize.forSymbol(request.stockSymbol).toTicks(Double.parseDouble(fields[4])) : 0;
+            request.volume = Long.parseLong(fields[5]);
+            request.userId = field(fields[6]);
+            request.side = fields[7].equals("-") ? null : Order.Side.valueOf(fields[7]);
+        } catch (ParseException | IllegalArgumentException e) {
+            throw new IOException("Not an order log line: " + line, e);
+        }
+        request.orderType = request.type == TradeRequest.RequestType.PLACE_ORDER ? OrderBookAPI.Type.GoodTilCancel
+                : request.type == TradeRequest.RequestType.PLACE_MARKET_ORDER ? OrderBookAPI.Type.MarketOrder : null;
+        request.orderId = fields.length > 9 ? fields[9] : null;
+        request.reduceOnly = false; // not in the text form either
+    }
+
+    private static String field(String value) {
+        return value.equals("null") ? null : value;
+    }
+
+    // One line in the layout OrderLogs.txt used to have, plus the order ID when there is one
+    public static String format(Entry entry, SimpleDateFormat dateFormat) {
+        TradeRequest request = entry.request;
+        return String.format(
+                "%08X %s %s %.2f %d %s %s %s%s%n",
+                entry.sequence,
+                dateFormat.format(new Date(entry.timestamp)),
+                request.stockSymbol,
+                request.stockSymbol != null ? TickSize.forSymbol(request.stockSymbol).toPrice(request.price) : 0.0,
+                request.volume,
+                request.userId,
+                request.side != null ? request.side.name() : "-",
+                request.type != null ? request.type.name() : "-",
+                request.orderId != null ? " " + request.orderId : ""
+        );
+    }
+
+    static void decode(MappedByteBuffer segment, int base, Entry entry) {
+        TradeRequest request = entry.request;
+        entry.sequence = segment.getLong(base + SEQUENCE_OFFSET);
+        entry.timestamp = segment.getLong(base + TIMESTAMP_OFFSET);
+        request.price = segment.getLong(base + PRICE_OFFSET);
+        request.volume = segment.getLong(base + VOLUME_OFFSET);
+        byte type = segment.get(base + REQUEST_TYPE_OFFSET);
+        byte side = segment.get(base + SIDE_OFFSET);
+        byte orderType = segment.get(base + ORDER_TYPE_OFFSET);
+        request.type = type >= 0 ? REQUEST_TYPES[type] : null;
+        request.side = side >= 0 ? SIDES[side] : null;
+        request.orderType = orderType >= 0 ? ORDER_TYPES[orderType] : null;
+        request.reduceOnly = (segment.get(base + OrderJournal.FLAGS_OFFSET) & OrderJournal.FLAG_REDUCE_ONLY) != 0;
+        request.stockSymbol = OrderJournal.getString(segment, base + SYMBOL_OFFSET, SYMBOL_LENGTH);
+        request.userId = OrderJournal.getString(segment, base + USER_ID_OFFSET, USER_ID_LENGTH);
+        request.orderId = OrderJournal.getString(segment, base + ORDER_ID_OFFSET, ORDER_ID_LENGTH);
+    }
+
+    // Validates a segment header and returns the sequence of the segment's first record
+    static long checkHeader(MappedByteBuffer segment, Path path) throws IOException {
+        if (segment.limit() < RECORD_SIZE || segment.getInt(0) != MAGIC) {
+            throw new IOException("Not an order journal segment: " + path);
+        }
+        if (segment.getInt(4) != VERSION || segment.getInt(8) != RECORD_SIZE) {
+            throw new IOException("Unsupported journal version or record size in " + path);
+        }
+        return segment.getLong(16);
+    }
+
+    // Journal segments of a directory, oldest first
+    static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .forEach(segments::add);
+        }
+        return segments;
+    }
+
+    // Zero padded so that segment names sort in sequence order
+    static String segmentName(long firstSequence) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX);
+    }
+
+    static long firstSequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
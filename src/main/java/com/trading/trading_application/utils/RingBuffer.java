@@ -0,0 +1,165 @@
+package com.trading.trading_application.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Bounded multi-producer, single-consumer ring of pre-allocated, reusable slots.
+// Producers claim sequence numbers, fill the slot in place and publish it; the consumer
+// drains published slots in sequence order and hands whole batches back to producers at once.
+public class RingBuffer<E> {
+
+    private final Object[] slots;
+    private final int mask;
+    // Sequence each slot was last published under, slot i starts unpublished
+    private final AtomicLongArray published;
+    // Highest sequence handed out to a producer
+    private final AtomicLong claimed = new AtomicLong(-1);
+    // Highest sequence fully processed by the consumer
+    private volatile long consumed = -1;
+
+    private volatile Thread consumerThread;
+    private volatile boolean consumerParked;
+
+    public RingBuffer(int capacity, Supplier<E> factory) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two.");
+        }
+        this.slots = new Object[capacity];
+        this.mask = capacity - 1;
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = factory.get();
+            published.set(i, -1);
+        }
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    // Number of claimed slots the consumer has not finished with yet
+    public long size() {
+        return claimed.get() - consumed;
+    }
+
+    // Highest sequence handed out to a producer so far, -1 before the first
+    public long getClaimedSequence() {
+        return claimed.get();
+    }
+
+    // Highest sequence the consumer has finished with, -1 before the first drained batch
+    public long getConsumedSequence() {
+        return consumed;
+    }
+
+    // Claims the next slot, waiting for the consumer if the ring is full
+    public long next() {
+        return next(1);
+    }
+
+    // Claims n contiguous slots and returns the highest claimed sequence
+    public long next(int n) {
+        if (n < 1 || n > slots.length) {
+            throw new IllegalArgumentException("Can only claim between 1 and " + slots.length + " slots.");
+        }
+        while (true) {
+            long current = claimed.get();
+            long next = current + n;
+            if (next - slots.length > consumed) {
+                // Wrapping would overwrite a slot the consumer has not processed yet
+                LockSupport.parkNanos(1);
+                continue;
+            }
+            if (claimed.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    // Claims n contiguous slots without waiting, returns -1 when the ring is too full
+    public long tryNext(int n) {
+        if (n < 1 || n > slots.length) {
+            throw new IllegalArgumentException("Can only claim between 1 and " + slots.length + " slots.");
+        }
+        while (true) {
+            long current = claimed.get();
+            long next = current + n;
+            if (next - slots.length > consumed) {
+                return -1;
+            }
+            if (claimed.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) slots[(int) sequence & mask];
+    }
+
+    // Makes a filled slot visible to the consumer
+    public void publish(long sequence) {
+        published.set((int) sequence & mask, sequence);
+        if (consumerParked) {
+            LockSupport.unpark(consumerThread);
+        }
+    }
+
+    // Publishes the contiguous range [lo, hi] in one go
+    public void publish(long lo, long hi) {
+        for (long seq = lo; seq <= hi; seq++) {
+            published.set((int) seq & mask, seq);
+        }
+        if (consumerParked) {
+            LockSupport.unpark(consumerThread);
+        }
+    }
+
+    // Single consumer only: processes up to maxBatch published slots in sequence order,
+    // releasing them to producers only once the whole batch has been handled
+    public int drain(Consumer<E> handler, int maxBatch) {
+        long next = consumed + 1;
+        int count = 0;
+        while (count < maxBatch && published.get((int) next & mask) == next) {
+            handler.accept(get(next));
+            next++;
+            count++;
+        }
+        if (count > 0) {
+            consumed = next - 1;
+        }
+        return count;
+    }
+
+    // Single consumer only: parks until a producer publishes or the timeout elapses
+    public void awaitPublished(long timeoutNanos) {
+        awaitAnyPublished(timeoutNanos, this);
+    }
+
+    // Same, for a consumer draining several rings: parks until any of them has something to drain
+    public static void awaitAnyPublished(long timeoutNanos, RingBuffer<?>... rings) {
+        Thread consumer = Thread.currentThread();
+        for (RingBuffer<?> ring : rings) {
+            ring.consumerThread = consumer;
+            ring.consumerParked = true;
+        }
+        boolean empty = true;
+        for (RingBuffer<?> ring : rings) {
+            long next = ring.consumed + 1;
+            if (ring.published.get((int) next & ring.mask) == next) {
+                empty = false;
+                break;
+            }
+        }
+        if (empty) {
+            LockSupport.parkNanos(rings[0], timeoutNanos);
+        }
+        for (RingBuffer<?> ring : rings) {
+            ring.consumerParked = false;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.trading.trading_application.utils;
+
+// Latency of each stage a request passes through, from the controller to the trade log
+public enum StageLatency {
+    // Controller method entry, or the gateway decoding the message, until the request is in its shard's ring
+    CONTROLLER_ACCEPT,
+    // In the ring until the shard's worker picks the request up
+    QUEUE_WAIT,
+    // Placing, matching or cancelling on the worker, after the request is journaled
+    MATCH,
+    // A trade waiting in the trade log ring and batch until its batch is written
+    LOG_WRITE;
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    public void record(long nanos) {
+        histogram.record(nanos);
+    }
+
+    public void recordSince(long startNanos) {
+        histogram.recordSince(startNanos);
+    }
+
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+}
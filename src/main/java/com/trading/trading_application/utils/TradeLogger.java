@@ -1,82 +1,401 @@
 package com.trading.trading_application.utils;
 
 import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.lib.TickSize;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
 
+// Group-commit trade writer. Matching threads publish fills into pre-allocated ring slots and get
+// a trade ID back; the writer thread formats everything pending into one buffer and commits it
+// with a single write, once the batch is full or its oldest trade has waited maxLatency.
+// Trade IDs are a monotonic sequence continued from the last line of the log, and callers that
+// need durability can wait for their trade ID to be committed.
 public class TradeLogger {
 
-    private static final String LOG_FILE = "TradeLogs.txt";
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-    private static final BlockingQueue<TradeLogRequest> logQueue = new LinkedBlockingQueue<>();
-    private static final Thread loggerThread;
+    public static final String DEFAULT_LOG_FILE = "TradeLogs.txt";
+    private static final int RING_SIZE = 1 << 16;
+    private static final int MAX_LINE_LENGTH = 512;
+    private static final DateTimeFormatter MINUTE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:");
 
-    // Wrapper for trade logging data
+    // Matching threads publish fills into pre-allocated slots, so logging a trade never allocates
+    private static final RingBuffer<TradeLogRequest> logRing = new RingBuffer<>(RING_SIZE, TradeLogRequest::new);
+    private static Thread loggerThread;
+    // Log opened, firstTradeId known
+    private static volatile boolean started;
+    // Writer thread running, shutdown stops it and the next trade starts a new one
+    private static volatile boolean writing;
+    private static volatile boolean stopping;
+
+    // Writer settings, read when the first trade starts the writer
+    private static volatile Path logFile = Paths.get(DEFAULT_LOG_FILE);
+    private static volatile int batchSize = 1024;
+    private static volatile long maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(1);
+    private static volatile boolean fsync = false;
+
+    // Trade ID of ring sequence 0, the last ID found in the log on startup plus one
+    private static long firstTradeId;
+    // Highest trade ID written (and forced, when fsync is on)
+    private static volatile long committedTradeId;
+    private static final Object commitLock = new Object();
+    private static int commitWaiters;
+
+    // Reusable slot for trade logging data
     private static class TradeLogRequest {
-        Order buyer;
-        Order seller;
-        double price;
+        String stockSymbol;
+        long price;
         long volume;
-        Date executionTime;
+        String buyOrderId;
+        String buyUserId;
+        String sellOrderId;
+        String sellUserId;
+        // The resting side's order ID as UUID halves instead of its string, see OrderStore.packsOrderIds
+        boolean restingIdPacked;
+        boolean restingBuys;
+        long restingIdHigh;
+        long restingIdLow;
+        long executionTime; // epoch millis
+        long queuedNanos;
+    }
 
-        TradeLogRequest(Order buyer, Order seller, double price, long volume, Date executionTime) {
-            this.buyer = buyer;
-            this.seller = seller;
-            this.price = price;
-            this.volume = volume;
-            this.executionTime = executionTime;
+    // Sets the log file and group-commit bounds, must be called before the first trade is logged
+    public static synchronized void configure(Path file, int maxBatchSize, long maxLatencyMicros, boolean forceToDisk) {
+        if (started) {
+            throw new IllegalStateException("Trade log is already open.");
+        }
+        if (maxBatchSize < 1 || maxBatchSize > RING_SIZE) {
+            throw new IllegalArgumentException("Trade batch size must be between 1 and " + RING_SIZE + ".");
         }
+        logFile = file;
+        batchSize = maxBatchSize;
+        maxLatencyNanos = TimeUnit.MICROSECONDS.toNanos(maxLatencyMicros);
+        fsync = forceToDisk;
+    }
+
+    // Queues a trade and returns its trade ID
+    public static long logTrade(Order buyer, Order seller, long price, long volume, long executionTime) {
+        return logTrade(buyer.getStockSymbol(), buyer.getOrderId(), buyer.getUserId(), seller.getOrderId(), seller.getUserId(),
+                price, volume, executionTime);
+    }
+
+    // Same, for a resting side that is only a handle into an order store
+    public static long logTrade(String stockSymbol, String buyOrderId, String buyUserId, String sellOrderId, String sellUserId,
+                                long price, long volume, long executionTime) {
+        if (!writing) {
+            start();
+        }
+        long seq = logRing.next();
+        TradeLogRequest request = logRing.get(seq);
+        request.stockSymbol = stockSymbol;
+        request.price = price;
+        request.volume = volume;
+        request.buyOrderId = buyOrderId;
+        request.buyUserId = buyUserId;
+        request.sellOrderId = sellOrderId;
+        request.sellUserId = sellUserId;
+        request.restingIdPacked = false;
+        request.executionTime = executionTime;
+        request.queuedNanos = System.nanoTime();
+        logRing.publish(seq);
+        return firstTradeId + seq;
+    }
+
+    // Same, with the resting order's ID as the two halves of its UUID, so the matching thread
+    // need not format it
+    public static long logTrade(String stockSymbol, String takerOrderId, String takerUserId, boolean takerBuys,
+                                long restingIdHigh, long restingIdLow, String restingUserId,
+                                long price, long volume, long executionTime) {
+        if (!writing) {
+            start();
+        }
+        long seq = logRing.next();
+        TradeLogRequest request = logRing.get(seq);
+        request.stockSymbol = stockSymbol;
+        request.price = price;
+        request.volume = volume;
+        request.buyOrderId = takerBuys ? takerOrderId : null;
+        request.buyUserId = takerBuys ? takerUserId : restingUserId;
+        request.sellOrderId = takerBuys ? null : takerOrderId;
+        request.sellUserId = takerBuys ? restingUserId : takerUserId;
+        request.restingIdPacked = true;
+        request.restingBuys = !takerBuys;
+        request.restingIdHigh = restingIdHigh;
+        request.restingIdLow = restingIdLow;
+        request.executionTime = executionTime;
+        request.queuedNanos = System.nanoTime();
+        logRing.publish(seq);
+        return firstTradeId + seq;
+    }
+
+    public static Path getLogFile() {
+        return logFile;
+    }
+
+    // Trades in the ring the writer has not taken yet
+    public static long getQueueDepth() {
+        return logRing.size();
     }
 
-    static {
-        loggerThread = new Thread(() -> {
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(LOG_FILE, true))) {
-                while (true) {
-                    TradeLogRequest request = logQueue.take();
-                    String logEntry = formatLogEntry(request);
-                    writer.write(logEntry);
-                    writer.flush(); // flush per entry
+    // Trades that have a trade ID but are not committed to the log yet
+    public static long getLag() {
+        return started ? firstTradeId + logRing.getClaimedSequence() - committedTradeId : 0;
+    }
+
+    // Highest trade ID committed to the log so far
+    public static long getCommittedTradeId() {
+        return committedTradeId;
+    }
+
+    // Waits until the given trade has been committed, returns false on timeout
+    public static boolean awaitCommitted(long tradeId, long timeout, TimeUnit unit) throws InterruptedException {
+        if (committedTradeId >= tradeId) return true;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (commitLock) {
+            commitWaiters++;
+            try {
+                while (committedTradeId < tradeId) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) return false;
+                    TimeUnit.NANOSECONDS.timedWait(commitLock, remaining);
                 }
-            } catch (Exception e) {
-                System.err.println("TradeLogger thread crashed: " + e.getMessage());
-                e.printStackTrace();
+                return true;
+            } finally {
+                commitWaiters--;
             }
-        });
+        }
+    }
 
-        loggerThread.setDaemon(true); // Optional: closes when app exits
+    private static synchronized void start() {
+        if (writing) return;
+        if (!started) {
+            firstTradeId = lastTradeId(logFile) + 1;
+            committedTradeId = firstTradeId - 1;
+            started = true;
+        }
+        stopping = false;
+        loggerThread = new Thread(TradeLogger::runWriter, "TradeLogger-Thread");
+        loggerThread.setDaemon(true); // shutdown commits what is pending, the JVM need not wait for it
         loggerThread.start();
+        writing = true;
+    }
+
+    private static void runWriter() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(batchSize * MAX_LINE_LENGTH);
+        // A restarted writer continues after the trades its predecessor committed
+        LineFormatter formatter = new LineFormatter(buffer, committedTradeId + 1, batchSize);
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long batchStart = 0;
+            while (true) {
+                boolean stop = stopping;
+                int room = Math.min(batchSize - formatter.pending, buffer.remaining() / MAX_LINE_LENGTH);
+                int drained = room > 0 ? logRing.drain(formatter::format, room) : 0;
+                if (drained > 0 && formatter.pending == drained) {
+                    batchStart = System.nanoTime(); // first trade of a new batch
+                }
+
+                boolean full = formatter.pending >= batchSize || buffer.remaining() < MAX_LINE_LENGTH;
+                boolean due = formatter.pending > 0 && System.nanoTime() - batchStart >= maxLatencyNanos;
+                if (full || due || (stop && formatter.pending > 0)) {
+                    commit(channel, buffer);
+                    formatter.recordCommitted(System.nanoTime());
+                    publishCommitted(formatter.nextTradeId - 1);
+                } else if (stop) {
+                    return; // everything pending has been committed
+                } else if (drained == 0) {
+                    long wait = formatter.pending > 0 ? maxLatencyNanos - (System.nanoTime() - batchStart) : 1_000_000;
+                    logRing.awaitPublished(Math.max(wait, 1));
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("TradeLogger thread crashed: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // One write for the whole batch, plus a force when fsync is on
+    private static void commit(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        if (fsync) {
+            channel.force(false);
+        }
     }
 
-    public static Boolean logTrade(Order buyer, Order seller, double price, long volume, Date executionTime) {
-        TradeLogRequest request = new TradeLogRequest(buyer, seller, price, volume, executionTime);
-        logQueue.offer(request);
-        return logQueue.offer(request);
+    private static void publishCommitted(long tradeId) {
+        committedTradeId = tradeId;
+        synchronized (commitLock) {
+            if (commitWaiters > 0) {
+                commitLock.notifyAll();
+            }
+        }
     }
 
-    private static String formatLogEntry(TradeLogRequest req) {
-        String tradeId = UUID.randomUUID().toString();
-        String timestamp = DATE_FORMAT.format(req.executionTime);
+    // Trade ID on the last line of an existing log, 0 if there is none. Logs written before trade
+    // IDs were sequential start with a UUID, which also counts as none.
+    static long lastTradeId(Path file) {
+        if (!Files.exists(file)) return 0;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            long length = raf.length();
+            int tail = (int) Math.min(length, 4 * MAX_LINE_LENGTH);
+            byte[] bytes = new byte[tail];
+            raf.seek(length - tail);
+            raf.readFully(bytes);
+            String text = new String(bytes, StandardCharsets.US_ASCII).stripTrailing();
+            String lastLine = text.substring(text.lastIndexOf('\n') + 1);
+            int space = lastLine.indexOf(' ');
+            return Long.parseLong(space > 0 ? lastLine.substring(0, space) : lastLine);
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Writes trade lines as ASCII straight into the batch buffer, in the same layout as before:
+    // tradeId timestamp symbol price volume buyOrderId buyUserId sellOrderId sellUserId
+    private static final class LineFormatter {
+        private final ByteBuffer buffer;
+        private final ZoneId zone = ZoneId.systemDefault();
+        // "yyyy-MM-dd HH:mm:" of the cached minute, zone offsets are always whole minutes
+        private final byte[] minutePrefix = new byte[17];
+        private long minuteStart = Long.MIN_VALUE;
+        long nextTradeId;
+        int pending; // lines formatted but not committed yet
+        private final long[] queuedNanos; // when each pending line's trade was queued
+
+        LineFormatter(ByteBuffer buffer, long firstTradeId, int batchSize) {
+            this.buffer = buffer;
+            this.nextTradeId = firstTradeId;
+            this.queuedNanos = new long[batchSize];
+        }
 
-        return String.format(
-                "%s %s %s %.2f %d %s %s %s %s\n",
-                tradeId,
-                timestamp,
-                req.buyer.getStockSymbol(),
-                req.price,
-                req.volume,
-                req.buyer.getOrderId(), req.buyer.getUserId(),
-                req.seller.getOrderId(), req.seller.getUserId()
-        );
+        void format(TradeLogRequest req) {
+            queuedNanos[pending++] = req.queuedNanos;
+            putNumber(nextTradeId++, 12);
+            buffer.put((byte) ' ');
+            putTimestamp(req.executionTime);
+            buffer.put((byte) ' ');
+            putString(req.stockSymbol);
+            buffer.put((byte) ' ');
+            putPrice(req.stockSymbol, req.price);
+            buffer.put((byte) ' ');
+            putNumber(req.volume, 1);
+            buffer.put((byte) ' ');
+            if (req.restingIdPacked && req.restingBuys) {
+                putUuid(req.restingIdHigh, req.restingIdLow);
+            } else {
+                putString(req.buyOrderId);
+            }
+            buffer.put((byte) ' ');
+            putString(req.buyUserId);
+            buffer.put((byte) ' ');
+            if (req.restingIdPacked && !req.restingBuys) {
+                putUuid(req.restingIdHigh, req.restingIdLow);
+            } else {
+                putString(req.sellOrderId);
+            }
+            buffer.put((byte) ' ');
+            putString(req.sellUserId);
+            buffer.put((byte) '\n');
+        }
+
+        // Records how long each committed line waited for its write and starts a new batch
+        void recordCommitted(long nowNanos) {
+            for (int i = 0; i < pending; i++) {
+                StageLatency.LOG_WRITE.record(nowNanos - queuedNanos[i]);
+            }
+            pending = 0;
+        }
+
+        private void putTimestamp(long millis) {
+            if (millis < minuteStart || millis >= minuteStart + 60_000) {
+                minuteStart = millis - Math.floorMod(millis, 60_000L);
+                String prefix = MINUTE_FORMAT.format(Instant.ofEpochMilli(minuteStart).atZone(zone));
+                for (int i = 0; i < minutePrefix.length; i++) {
+                    minutePrefix[i] = (byte) prefix.charAt(i);
+                }
+            }
+            buffer.put(minutePrefix);
+            int inMinute = (int) (millis - minuteStart);
+            putNumber(inMinute / 1000, 2);
+            buffer.put((byte) '.');
+            putNumber(inMinute % 1000, 3);
+        }
+
+        // As many decimals as the symbol's tick needs, never fewer than the two the log has always shown
+        private void putPrice(String symbol, long ticks) {
+            TickSize tickSize = TickSize.forSymbol(symbol);
+            long scale = tickSize.getDecimalScale();
+            long scaled = Math.round(tickSize.toPrice(ticks) * scale);
+            putNumber(scaled / scale, 1);
+            buffer.put((byte) '.');
+            putNumber(scaled % scale, tickSize.getDecimals());
+        }
+
+        // Non-negative number, zero padded to at least minDigits
+        private void putNumber(long value, int minDigits) {
+            int digits = 1;
+            for (long v = value / 10; v > 0; v /= 10) digits++;
+            for (int i = digits; i < minDigits; i++) buffer.put((byte) '0');
+            int end = buffer.position() + digits;
+            for (int i = end - 1; i >= end - digits; i--) {
+                buffer.put(i, (byte) ('0' + value % 10));
+                value /= 10;
+            }
+            buffer.position(end);
+        }
+
+        // 8-4-4-4-12 lower case hex, as UUID.toString writes it
+        private void putUuid(long high, long low) {
+            putHex(high >>> 32, 8);
+            buffer.put((byte) '-');
+            putHex(high >>> 16, 4);
+            buffer.put((byte) '-');
+            putHex(high, 4);
+            buffer.put((byte) '-');
+            putHex(low >>> 48, 4);
+            buffer.put((byte) '-');
+            putHex(low, 12);
+        }
+
+        private void putHex(long value, int digits) {
+            for (int shift = 4 * (digits - 1); shift >= 0; shift -= 4) {
+                int digit = (int) (value >>> shift) & 0xF;
+                buffer.put((byte) (digit < 10 ? '0' + digit : 'a' + digit - 10));
+            }
+        }
+
+        private void putString(String value) {
+            if (value == null) {
+                buffer.put((byte) '-');
+                return;
+            }
+            int n = Math.min(value.length(), MAX_LINE_LENGTH / 8);
+            for (int i = 0; i < n; i++) {
+                char c = value.charAt(i);
+                buffer.put((byte) (c < 128 ? c : '?'));
+            }
+        }
     }
 
-    public static void shutdown() {
-        loggerThread.interrupt(); // stop the logger thread cleanly
+    // Commits whatever is pending, then stops the writer. Not an interrupt, which would close
+    // the file channel under a write in progress. A trade logged afterwards starts it again.
+    public static synchronized void shutdown() throws InterruptedException {
+        if (!writing) return;
+        stopping = true;
+        loggerThread.join();
+        writing = false;
     }
 }
@@ -6,7 +6,6 @@ import com.trading.trading_application.API.OrderBookAPI;
 import com.trading.trading_application.service.TradeRequestProcessor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
@@ -23,7 +22,6 @@ class TradingApplicationTests {
 	@Mock
 	private OrderBookAPI orderBookAPI;  // Mock the OrderBookAPI
 
-	@InjectMocks
 	private TradeRequestProcessor tradeRequestProcessor;  // The service we're testing
 
 	@BeforeEach
@@ -31,6 +29,10 @@ class TradingApplicationTests {
 		// Initialize mocks before each test
 		MockitoAnnotations MockitoAnnotations = null;
 		MockitoAnnotations.openMocks(this);
+
+		// Single shard owning the mocked order book partition
+		tradeRequestProcessor = new TradeRequestProcessor(orderBookAPI);
+		tradeRequestProcessor.startProcessing();
 	}
 
 	@Test
@@ -38,6 +40,9 @@ class TradingApplicationTests {
 		// Generate 20 test trade requests
 		for (int i = 0; i < 20; i++) {
 			TradeRequest request = new TradeRequest(TradeRequest.RequestType.PLACE_ORDER);
+			request.userId = "u" + i;
+			request.stockSymbol = "SYM" + i;
+			request.volume = 10;
 
 			tradeRequestProcessor.submitRequest(request);
 		}
@@ -45,8 +50,10 @@ class TradingApplicationTests {
 		// Allow some time for the dispatcher thread to process requests
 		Thread.sleep(2000);
 
-		// Verify that the placeOrder method was called 20 times (once for each order)
-		verify(orderBookAPI, times(20)).placeOrder(Mockito.anyString(), Mockito.anyString(), Mockito.anyDouble(), Mockito.anyInt(), Mockito.any(), Mockito.any());
+		// Verify that the placeOrder method was called 20 times (once for each order), shards pass
+		// the order ID along, which stays null without a journal, the user and symbol as registry keys,
+		// and no ack as nobody waits for one
+		verify(orderBookAPI, times(20)).placeOrder(Mockito.any(), Mockito.anyInt(), Mockito.anyInt(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any(), Mockito.any(), Mockito.isNull());
 	}
 
 }
@@ -0,0 +1,182 @@
+package com.trading.trading_application.benchmark;
+
+import com.trading.trading_application.API.OrderBookAPI;
+import com.trading.trading_application.TradingApplication;
+import com.trading.trading_application.gateway.BinaryProtocol;
+import com.trading.trading_application.gateway.OrderGateway;
+import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.utils.LatencyHistogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Round trip latency over loopback of the binary TCP gateway against the REST API of the same
+// running application. Each round places a buy far below any ask and then cancels it, waiting for
+// each answer before sending the next, so the book stays empty and only the ingress path differs.
+// Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.trading.trading_application.benchmark.GatewayLatencyBenchmark [-Dexec.args="rounds warmup"]
+public class GatewayLatencyBenchmark {
+
+    private static final String SYMBOL = "LOOP";
+    private static final long PRICE = 100; // 1.00 in ticks of 0.01
+    private static final Pattern ORDER_ID = Pattern.compile("\"orderId\":\"([^\"]+)\"");
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int warmup = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+
+        Path root = Files.createTempDirectory("gateway-bench");
+        ConfigurableApplicationContext context = SpringApplication.run(TradingApplication.class,
+                "--server.port=0",
+                "--trading.gateway.port=0",
+                "--eureka.client.enabled=false",
+                "--trading.journal.directory=" + root.resolve("journal"),
+                "--trading.journal.fsync-policy=NONE",
+                "--trading.snapshot.directory=" + root.resolve("snapshots"),
+                "--trading.trades.log-file=" + root.resolve("trades.txt"));
+        try {
+            int restPort = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+            int gatewayPort = context.getBean(OrderGateway.class).getPort();
+
+            try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", gatewayPort))) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                GatewayClient gateway = new GatewayClient(channel);
+                run("gateway", warmup, rounds, gateway::place, gateway::cancel);
+            }
+
+            RestClient rest = new RestClient(restPort);
+            run("REST", warmup, rounds, rest::place, rest::cancel);
+        } finally {
+            context.close();
+            try (Stream<Path> files = Files.walk(root)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    interface Place {
+        String place() throws Exception;
+    }
+
+    interface Cancel {
+        void cancel(String orderId) throws Exception;
+    }
+
+    private static void run(String label, int warmup, int rounds, Place place, Cancel cancel) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            cancel.cancel(place.place());
+        }
+        LatencyHistogram places = new LatencyHistogram();
+        LatencyHistogram cancels = new LatencyHistogram();
+        places.intervalSnapshot();
+        cancels.intervalSnapshot();
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            String orderId = place.place();
+            places.recordSince(start);
+            start = System.nanoTime();
+            cancel.cancel(orderId);
+            cancels.recordSince(start);
+        }
+        print(label + " place", places.intervalSnapshot());
+        print(label + " cancel", cancels.intervalSnapshot());
+    }
+
+    private static void print(String label, LatencyHistogram.Snapshot snapshot) {
+        System.out.printf("%-16s %,8d round trips  p50 %8.1f us  p99 %8.1f us  p99.9 %8.1f us  max %8.1f us%n",
+                label, snapshot.getCount(), snapshot.getValueAtPercentile(50) / 1e3, snapshot.getValueAtPercentile(99) / 1e3,
+                snapshot.getValueAtPercentile(99.9) / 1e3, snapshot.getMax() / 1e3);
+    }
+
+    private static class GatewayClient {
+        private final SocketChannel channel;
+        private final ByteBuffer out = ByteBuffer.allocateDirect(256);
+        private final ByteBuffer in = ByteBuffer.allocateDirect(64 * 1024);
+        private long clientId;
+
+        GatewayClient(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        String place() throws IOException {
+            out.clear();
+            BinaryProtocol.putNewOrder(out, ++clientId, Order.Side.BUY, OrderBookAPI.Type.GoodTilCancel, SYMBOL, "bench", PRICE, 100);
+            return roundTrip().orderId;
+        }
+
+        void cancel(String orderId) throws IOException {
+            out.clear();
+            BinaryProtocol.putCancel(out, ++clientId, SYMBOL, orderId);
+            roundTrip();
+        }
+
+        private BinaryProtocol.ExecutionReport roundTrip() throws IOException {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            in.clear();
+            while (true) {
+                in.flip();
+                int length = BinaryProtocol.frameLength(in);
+                if (length > 0 && in.remaining() >= length) {
+                    BinaryProtocol.ExecutionReport report = BinaryProtocol.getExecutionReport(in);
+                    if (report.clientId != clientId) {
+                        throw new IllegalStateException("Report for " + report.clientId + " while waiting for " + clientId);
+                    }
+                    return report;
+                }
+                in.position(in.limit());
+                in.limit(in.capacity());
+                if (channel.read(in) < 0) {
+                    throw new IOException("Gateway closed the connection");
+                }
+            }
+        }
+    }
+
+    private static class RestClient {
+        private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        private final String base;
+
+        RestClient(int port) {
+            this.base = "http://localhost:" + port + "/api";
+        }
+
+        String place() throws Exception {
+            String body = send(HttpRequest.newBuilder(URI.create(base + "/placeOrder?userId=bench&stockSymbol=" + SYMBOL
+                    + "&price=1.00&volume=100&side=BUY&orderType=GoodTilCancel")).POST(HttpRequest.BodyPublishers.noBody()));
+            Matcher matcher = ORDER_ID.matcher(body);
+            if (!matcher.find()) {
+                throw new IllegalStateException("No order ID in " + body);
+            }
+            return matcher.group(1);
+        }
+
+        void cancel(String orderId) throws Exception {
+            send(HttpRequest.newBuilder(URI.create(base + "/cancelOrder?orderId=" + orderId + "&stockSymbol=" + SYMBOL)).DELETE());
+        }
+
+        private String send(HttpRequest.Builder request) throws Exception {
+            HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("HTTP " + response.statusCode() + ": " + response.body());
+            }
+            return response.body();
+        }
+    }
+}
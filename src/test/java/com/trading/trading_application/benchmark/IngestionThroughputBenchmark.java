@@ -0,0 +1,119 @@
+package com.trading.trading_application.benchmark;
+
+import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.lib.TradeRequest;
+import com.trading.trading_application.utils.RingBuffer;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Compares request hand-off throughput of the old LinkedBlockingQueue + dispatcher + executor path
+// against the pre-allocated ring the matching shards now drain.
+// Run with: java -cp target/classes:target/test-classes com.trading.trading_application.benchmark.IngestionThroughputBenchmark [requests] [producers]
+public class IngestionThroughputBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int producers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        for (int round = 0; round < 3; round++) {
+            report("queue + executor", requests, queueAndExecutor(requests, producers));
+            report("ring buffer     ", requests, ringBuffer(requests, producers));
+        }
+    }
+
+    private static long queueAndExecutor(int requests, int producers) throws InterruptedException {
+        BlockingQueue<TradeRequest> queue = new LinkedBlockingQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        AtomicLong processed = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(1);
+
+        Thread dispatcher = new Thread(() -> {
+            while (true) {
+                try {
+                    TradeRequest req = queue.take();
+                    executor.submit(() -> {
+                        consume(req);
+                        if (processed.incrementAndGet() == requests) done.countDown();
+                    });
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+
+        long start = System.nanoTime();
+        runProducers(requests, producers, queue::offer);
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        dispatcher.interrupt();
+        executor.shutdownNow();
+        return elapsed;
+    }
+
+    private static long ringBuffer(int requests, int producers) throws InterruptedException {
+        RingBuffer<TradeRequest> ring = new RingBuffer<>(1 << 16, TradeRequest::new);
+        CountDownLatch done = new CountDownLatch(1);
+
+        Thread consumer = new Thread(() -> {
+            long processed = 0;
+            while (processed < requests) {
+                int n = ring.drain(IngestionThroughputBenchmark::consume, 256);
+                if (n == 0) ring.awaitPublished(1_000_000);
+                processed += n;
+            }
+            done.countDown();
+        });
+        consumer.setDaemon(true);
+        consumer.start();
+
+        long start = System.nanoTime();
+        runProducers(requests, producers, req -> {
+            long seq = ring.next();
+            ring.get(seq).copyFrom(req);
+            ring.publish(seq);
+        });
+        done.await();
+        return System.nanoTime() - start;
+    }
+
+    private static void runProducers(int requests, int producers, Consumer<TradeRequest> sink)
+            throws InterruptedException {
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int share = requests / producers + (p < requests % producers ? 1 : 0);
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < share; i++) {
+                    TradeRequest req = new TradeRequest(TradeRequest.RequestType.PLACE_ORDER);
+                    req.userId = "user";
+                    req.stockSymbol = "AAPL";
+                    req.price = 15000;
+                    req.volume = i;
+                    req.side = Order.Side.BUY;
+                    sink.accept(req);
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread t : threads) t.join();
+    }
+
+    private static long sink;
+
+    private static void consume(TradeRequest req) {
+        sink += req.volume;
+    }
+
+    private static void report(String name, int requests, long elapsedNanos) {
+        System.out.printf("%s : %,12.0f requests/sec (%d ms)%n",
+                name, requests / (elapsedNanos / 1e9), elapsedNanos / 1_000_000);
+    }
+}
@@ -0,0 +1,409 @@
+package com.trading.trading_application.benchmark;
+
+import com.trading.trading_application.API.OrderBookAPI;
+import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.lib.OrderAck;
+import com.trading.trading_application.lib.TickSize;
+import com.trading.trading_application.lib.TradeRequest;
+import com.trading.trading_application.service.Admission;
+import com.trading.trading_application.service.MatchingShard;
+import com.trading.trading_application.service.TradeRequestProcessor;
+import com.trading.trading_application.utils.LatencyHistogram;
+import com.trading.trading_application.utils.TradeLogger;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Synthetic order flow at a fixed arrival rate, against a running application's REST API or an
+// in-process TradeRequestProcessor. Sender threads follow an open loop schedule: request i of a
+// sender is due at a fixed time and its latency runs from then, whether or not earlier answers are
+// back, so a stalled server shows up as latency instead of as a lower sending rate.
+// The flow mixes limit orders, fill or kill orders, market orders and cancels of orders that were
+// left resting. Symbols are drawn from a Zipf distribution, so a few carry most of the flow as in
+// production. Each symbol's mid price takes a random walk that limit prices are placed around,
+// some of them crossing it.
+// Every second and at the end it prints latency percentiles and outcomes per endpoint.
+// Options are key=value, defaults in DEFAULTS:
+//   target     engine, or the base URL of a running application such as http://localhost:8080
+//   rate       requests per second over all threads      seconds   how long to send
+//   threads    sender threads                            shards    engine target only
+//   symbols    number of symbols                         zipf      skew exponent, 0 is uniform
+//   users      number of user IDs                        cancel    share of requests that cancel
+//   market     share of orders that are market orders    fok       share that are fill or kill
+//   walk       largest mid price step in ticks           spread    limit prices within this many ticks of the mid
+//   volume     largest order volume
+// Run with: java -cp target/classes:target/test-classes com.trading.trading_application.benchmark.LoadGenerator [key=value ...]
+public class LoadGenerator {
+
+    private static final String[] DEFAULTS = {
+            "target=engine", "rate=20000", "seconds=30", "threads=4", "shards=4", "symbols=200", "zipf=1.1",
+            "users=1000", "cancel=0.3", "market=0.1", "fok=0.05", "walk=2", "spread=50", "volume=500"};
+    private static final long START_MID = 10_000; // 100.00 in ticks of 0.01
+    private static final long MIN_MID = 1_000;
+    private static final long DRAIN_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    enum Endpoint {
+        PLACE("placeOrder"), MARKET("placeMarketOrder"), CANCEL("cancelOrder");
+
+        final String path;
+        // Latency from when requests were due until they were answered
+        final LatencyHistogram interval = new LatencyHistogram();
+        final LatencyHistogram total = new LatencyHistogram();
+        // Requests answered per OrderAck status, and those that failed outright
+        final AtomicLongArray outcomes = new AtomicLongArray(OrderAck.Status.values().length);
+        final AtomicLong errors = new AtomicLong();
+
+        Endpoint(String path) {
+            this.path = path;
+        }
+
+        void record(long dueNanos, Reply reply) {
+            long latency = System.nanoTime() - dueNanos;
+            interval.record(latency);
+            total.record(latency);
+            if (reply.status != null) {
+                outcomes.incrementAndGet(reply.status.ordinal());
+            } else {
+                errors.incrementAndGet();
+            }
+        }
+    }
+
+    // What came back for a request, a null status when it failed without an answer
+    static final class Reply {
+        final OrderAck.Status status;
+        final String orderId;
+
+        Reply(OrderAck.Status status, String orderId) {
+            this.status = status;
+            this.orderId = orderId;
+        }
+    }
+
+    interface Target {
+        CompletableFuture<Reply> place(String userId, String symbol, long price, long volume, Order.Side side, OrderBookAPI.Type type);
+
+        CompletableFuture<Reply> placeMarket(String userId, String symbol, long volume, Order.Side side);
+
+        CompletableFuture<Reply> cancel(String orderId, String symbol);
+
+        void close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : DEFAULTS) {
+            options.put(arg.substring(0, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !options.containsKey(arg.substring(0, eq))) {
+                throw new IllegalArgumentException("Unknown option " + arg + ", expected one of " + Arrays.toString(DEFAULTS));
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        Workload workload = new Workload(options);
+        double rate = Double.parseDouble(options.get("rate"));
+        long seconds = Long.parseLong(options.get("seconds"));
+        int threads = Integer.parseInt(options.get("threads"));
+        System.out.println("Load: " + new TreeMap<>(options));
+
+        Target target = options.get("target").equals("engine")
+                ? new EngineTarget(Integer.parseInt(options.get("shards")))
+                : new RestTarget(options.get("target"));
+        AtomicLong inFlight = new AtomicLong();
+        try {
+            long period = (long) (1e9 * threads / rate);
+            long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+            long end = start + TimeUnit.SECONDS.toNanos(seconds);
+            Thread[] senders = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                // Senders are phased evenly within one period so arrivals are spread out
+                long first = start + period * t / threads;
+                SplittableRandom random = new SplittableRandom(42 + t);
+                senders[t] = new Thread(() -> send(target, workload, random, first, period, end, inFlight), "LoadSender-" + t);
+                senders[t].start();
+            }
+
+            long nextReport = start + TimeUnit.SECONDS.toNanos(1);
+            while (System.nanoTime() < end) {
+                LockSupport.parkNanos(nextReport - System.nanoTime());
+                if (System.nanoTime() >= nextReport) {
+                    report("interval", false, inFlight.get());
+                    nextReport += TimeUnit.SECONDS.toNanos(1);
+                }
+            }
+            for (Thread sender : senders) {
+                sender.join();
+            }
+            long drainEnd = System.nanoTime() + DRAIN_NANOS;
+            while (inFlight.get() > 0 && System.nanoTime() < drainEnd) {
+                Thread.sleep(10);
+            }
+            report("total over " + seconds + " s", true, inFlight.get());
+        } finally {
+            target.close();
+        }
+    }
+
+    private static void send(Target target, Workload workload, SplittableRandom random, long first, long period, long end,
+                             AtomicLong inFlight) {
+        for (long due = first; due < end; due += period) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            long dueNanos = due;
+            Endpoint endpoint = workload.next(random);
+            CompletableFuture<Reply> reply;
+            try {
+                reply = workload.issue(target, endpoint, random);
+            } catch (RuntimeException e) {
+                reply = CompletableFuture.failedFuture(e);
+            }
+            inFlight.incrementAndGet();
+            reply.whenComplete((result, failure) -> {
+                endpoint.record(dueNanos, failure == null ? result : new Reply(null, null));
+                inFlight.decrementAndGet();
+            });
+        }
+    }
+
+    private static void report(String label, boolean total, long inFlight) {
+        System.out.printf("--- %s, %,d in flight%n", label, inFlight);
+        for (Endpoint endpoint : Endpoint.values()) {
+            LatencyHistogram.Snapshot snapshot = (total ? endpoint.total : endpoint.interval).intervalSnapshot();
+            StringBuilder outcomes = new StringBuilder();
+            for (OrderAck.Status status : OrderAck.Status.values()) {
+                long count = endpoint.outcomes.get(status.ordinal());
+                if (count > 0) {
+                    outcomes.append(' ').append(status).append(' ').append(count);
+                }
+            }
+            System.out.printf("%-17s %,9d  p50 %9.1f us  p99 %9.1f us  p99.9 %9.1f us  max %9.1f us  errors %d%s%n",
+                    endpoint.path, snapshot.getCount(), snapshot.getValueAtPercentile(50) / 1e3,
+                    snapshot.getValueAtPercentile(99) / 1e3, snapshot.getValueAtPercentile(99.9) / 1e3,
+                    snapshot.getMax() / 1e3, endpoint.errors.get(), total ? " " + outcomes.toString().trim() : "");
+        }
+    }
+
+    // The shape of the flow, shared by every sender
+    static final class Workload {
+        final String[] symbols;
+        final double[] zipfCumulative;
+        final int users;
+        final double cancelShare;
+        final double marketShare;
+        final double fokShare;
+        final int walk;
+        final int spread;
+        final int maxVolume;
+        final AtomicLongArray mids;
+        // Order ID and symbol of orders left resting, oldest first, for cancels to take
+        final ConcurrentLinkedQueue<String[]> resting = new ConcurrentLinkedQueue<>();
+
+        Workload(Map<String, String> options) {
+            int count = Integer.parseInt(options.get("symbols"));
+            double skew = Double.parseDouble(options.get("zipf"));
+            symbols = new String[count];
+            zipfCumulative = new double[count];
+            double sum = 0;
+            for (int k = 0; k < count; k++) {
+                symbols[k] = "S" + k;
+                sum += 1 / Math.pow(k + 1, skew);
+                zipfCumulative[k] = sum;
+            }
+            for (int k = 0; k < count; k++) {
+                zipfCumulative[k] /= sum;
+            }
+            users = Integer.parseInt(options.get("users"));
+            cancelShare = Double.parseDouble(options.get("cancel"));
+            marketShare = Double.parseDouble(options.get("market"));
+            fokShare = Double.parseDouble(options.get("fok"));
+            walk = Integer.parseInt(options.get("walk"));
+            spread = Integer.parseInt(options.get("spread"));
+            maxVolume = Integer.parseInt(options.get("volume"));
+            mids = new AtomicLongArray(count);
+            for (int k = 0; k < count; k++) {
+                mids.set(k, START_MID);
+            }
+        }
+
+        Endpoint next(SplittableRandom random) {
+            double draw = random.nextDouble();
+            if (draw < cancelShare) return Endpoint.CANCEL;
+            return draw < cancelShare + (1 - cancelShare) * marketShare ? Endpoint.MARKET : Endpoint.PLACE;
+        }
+
+        CompletableFuture<Reply> issue(Target target, Endpoint endpoint, SplittableRandom random) {
+            if (endpoint == Endpoint.CANCEL) {
+                String[] order = resting.poll();
+                if (order != null) {
+                    return target.cancel(order[0], order[1]);
+                }
+                // Nothing left to cancel yet, cancel an unknown order so the endpoint is still exercised
+                return target.cancel(new UUID(random.nextLong(), random.nextLong()).toString(), null);
+            }
+            int symbol = symbol(random);
+            String userId = "u" + random.nextInt(users);
+            Order.Side side = random.nextBoolean() ? Order.Side.BUY : Order.Side.SELL;
+            long volume = 1 + random.nextInt(maxVolume);
+            if (endpoint == Endpoint.MARKET) {
+                return target.placeMarket(userId, symbols[symbol], volume, side);
+            }
+            long mid = step(symbol, random);
+            // Mostly passive, about a tenth of the orders priced through the mid
+            long offset = random.nextInt(spread + 1) - spread / 10;
+            long price = Math.max(1, side == Order.Side.BUY ? mid - offset : mid + offset);
+            OrderBookAPI.Type type = random.nextDouble() < fokShare ? OrderBookAPI.Type.FillOrKill : OrderBookAPI.Type.GoodTilCancel;
+            CompletableFuture<Reply> reply = target.place(userId, symbols[symbol], price, volume, side, type);
+            return reply.thenApply(result -> {
+                if (result.status == OrderAck.Status.RESTING || result.status == OrderAck.Status.PARTIALLY_FILLED) {
+                    resting.add(new String[]{result.orderId, symbols[symbol]});
+                }
+                return result;
+            });
+        }
+
+        private int symbol(SplittableRandom random) {
+            int index = Arrays.binarySearch(zipfCumulative, random.nextDouble());
+            return Math.min(index >= 0 ? index : -index - 1, symbols.length - 1);
+        }
+
+        // Moves the symbol's mid by up to walk ticks either way and returns it
+        private long step(int symbol, SplittableRandom random) {
+            long delta = walk > 0 ? random.nextInt(2 * walk + 1) - walk : 0;
+            long mid = mids.addAndGet(symbol, delta);
+            if (mid < MIN_MID) {
+                mids.addAndGet(symbol, -delta);
+                return mid - delta;
+            }
+            return mid;
+        }
+    }
+
+    // Straight into the engine, acknowledged by the matching threads
+    static final class EngineTarget implements Target {
+        private final TradeRequestProcessor processor;
+        private final Path trades;
+
+        EngineTarget(int shards) throws Exception {
+            trades = Files.createTempFile("load-trades", ".txt");
+            TradeLogger.configure(trades, 1024, 1000, false);
+            processor = new TradeRequestProcessor(shards, MatchingShard.DEFAULT_RING_SIZE);
+            processor.startProcessing();
+        }
+
+        @Override
+        public CompletableFuture<Reply> place(String userId, String symbol, long price, long volume, Order.Side side, OrderBookAPI.Type type) {
+            TradeRequest request = new TradeRequest(TradeRequest.RequestType.PLACE_ORDER);
+            request.userId = userId;
+            request.stockSymbol = symbol;
+            request.price = price;
+            request.volume = volume;
+            request.side = side;
+            request.orderType = type;
+            return submit(request);
+        }
+
+        @Override
+        public CompletableFuture<Reply> placeMarket(String userId, String symbol, long volume, Order.Side side) {
+            TradeRequest request = new TradeRequest(TradeRequest.RequestType.PLACE_MARKET_ORDER);
+            request.userId = userId;
+            request.stockSymbol = symbol;
+            request.volume = volume;
+            request.side = side;
+            request.orderType = OrderBookAPI.Type.MarketOrder;
+            return submit(request);
+        }
+
+        @Override
+        public CompletableFuture<Reply> cancel(String orderId, String symbol) {
+            TradeRequest request = new TradeRequest(TradeRequest.RequestType.CANCEL_ORDER);
+            request.orderId = orderId;
+            request.stockSymbol = symbol;
+            return submit(request);
+        }
+
+        // Offered like the REST API does, so a saturated shard shows up as rejections
+        private CompletableFuture<Reply> submit(TradeRequest request) {
+            request.ack = new CompletableFuture<>();
+            if (processor.offerRequest(request) != Admission.ACCEPTED) {
+                return CompletableFuture.completedFuture(new Reply(OrderAck.Status.REJECTED, null));
+            }
+            return request.ack.thenApply(ack -> new Reply(ack.getStatus(), ack.getOrderId()));
+        }
+
+        @Override
+        public void close() {
+            processor.stopProcessing();
+            trades.toFile().delete();
+        }
+    }
+
+    // A running application's REST API, over HTTP/1.1 as most clients use it
+    static final class RestTarget implements Target {
+        private static final Pattern STATUS = Pattern.compile("\"status\":\"([A-Z_]+)\"");
+        private static final Pattern ORDER_ID = Pattern.compile("\"orderId\":\"([^\"]+)\"");
+
+        private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        private final String base;
+
+        RestTarget(String url) {
+            this.base = (url.endsWith("/") ? url.substring(0, url.length() - 1) : url) + "/api/";
+        }
+
+        @Override
+        public CompletableFuture<Reply> place(String userId, String symbol, long price, long volume, Order.Side side, OrderBookAPI.Type type) {
+            return send(HttpRequest.newBuilder(URI.create(base + Endpoint.PLACE.path + "?userId=" + userId + "&stockSymbol=" + symbol
+                    + "&price=" + TickSize.forSymbol(symbol).toPrice(price) + "&volume=" + volume + "&side=" + side
+                    + "&orderType=" + type)).POST(HttpRequest.BodyPublishers.noBody()));
+        }
+
+        @Override
+        public CompletableFuture<Reply> placeMarket(String userId, String symbol, long volume, Order.Side side) {
+            return send(HttpRequest.newBuilder(URI.create(base + Endpoint.MARKET.path + "?userId=" + userId + "&stockSymbol=" + symbol
+                    + "&volume=" + volume + "&side=" + side)).POST(HttpRequest.BodyPublishers.noBody()));
+        }
+
+        @Override
+        public CompletableFuture<Reply> cancel(String orderId, String symbol) {
+            return send(HttpRequest.newBuilder(URI.create(base + Endpoint.CANCEL.path + "?orderId=" + orderId
+                    + (symbol != null ? "&stockSymbol=" + symbol : ""))).DELETE());
+        }
+
+        private CompletableFuture<Reply> send(HttpRequest.Builder request) {
+            return client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+                if (response.statusCode() != 200) {
+                    return new Reply(null, null);
+                }
+                Matcher status = STATUS.matcher(response.body());
+                Matcher orderId = ORDER_ID.matcher(response.body());
+                return new Reply(status.find() ? OrderAck.Status.valueOf(status.group(1)) : null,
+                        orderId.find() ? orderId.group(1) : null);
+            });
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.trading.trading_application.benchmark;
+
+import com.trading.trading_application.API.OrderBookAPI;
+import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.lib.OrderStoreType;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+// Memory held per resting order, and what a full collection costs with the book live, for each
+// order store. The book gets `orders` resting orders across `symbols` symbols, bids below 100.00
+// and asks above so nothing trades.
+// Run with: java -Xmx12g -XX:MaxDirectMemorySize=4g -cp target/classes:target/test-classes com.trading.trading_application.benchmark.OrderStoreFootprintBenchmark [orders] [symbols] [HEAP|OFF_HEAP]
+public class OrderStoreFootprintBenchmark {
+
+    public static void main(String[] args) {
+        int orders = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int symbols = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        OrderStoreType[] types = args.length > 2 ? new OrderStoreType[]{OrderStoreType.valueOf(args[2])} : OrderStoreType.values();
+
+        for (OrderStoreType type : types) {
+            run(type, orders, symbols);
+        }
+    }
+
+    private static void run(OrderStoreType type, int orders, int symbols) {
+        String[] symbolNames = new String[symbols];
+        for (int s = 0; s < symbols; s++) {
+            symbolNames[s] = "SYM" + s;
+        }
+        Random random = new Random(42);
+
+        fullGc();
+        long heapBefore = heapUsed();
+        long nativeBefore = nativeUsed();
+        long gcBefore = gcMillis();
+
+        long start = System.nanoTime();
+        OrderBookAPI api = new OrderBookAPI(type);
+        api.setTradeLogging(false);
+        for (int i = 0; i < orders; i++) {
+            boolean buy = random.nextBoolean();
+            long price = buy ? 10_000 - 1 - random.nextInt(5_000) : 10_000 + 1 + random.nextInt(5_000);
+            api.placeOrder("user" + random.nextInt(10_000), symbolNames[random.nextInt(symbols)], price,
+                    1 + random.nextInt(500), buy ? Order.Side.BUY : Order.Side.SELL, OrderBookAPI.Type.GoodTilCancel);
+        }
+        long build = System.nanoTime() - start;
+        long buildGc = gcMillis() - gcBefore;
+
+        long pause = fullGc();
+        long heap = heapUsed() - heapBefore;
+        long offHeap = nativeUsed() - nativeBefore;
+        long[] resting = new long[1];
+        api.forEachRestingOrder(order -> resting[0]++);
+
+        System.out.printf("%-8s %,d resting orders: heap %7.1f bytes/order (%,d MB), native %6.1f bytes/order (%,d MB), "
+                        + "build %5.1f s with %,d ms in GC, full GC with the book live %,d ms%n",
+                type, resting[0], (double) heap / orders, heap >> 20, (double) offHeap / orders, offHeap >> 20,
+                build / 1e9, buildGc, pause);
+    }
+
+    // Runs a full collection and returns how long it took
+    private static long fullGc() {
+        long start = System.nanoTime();
+        System.gc();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static long heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    // Direct memory, which off-heap segments are accounted against
+    private static long nativeUsed() {
+        long used = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                used += pool.getMemoryUsed();
+            }
+        }
+        return used;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+}
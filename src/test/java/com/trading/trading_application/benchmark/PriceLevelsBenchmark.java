@@ -0,0 +1,82 @@
+package com.trading.trading_application.benchmark;
+
+import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.lib.OrderStore;
+import com.trading.trading_application.lib.PriceLevelType;
+import com.trading.trading_application.lib.StockOrders;
+
+import java.util.Random;
+
+// Compares the heap and ladder price level structures on a deep book: building it, churning
+// orders around the touch, and sweeping it from the best price down.
+// Run with: java -cp target/classes:target/test-classes com.trading.trading_application.benchmark.PriceLevelsBenchmark [levels] [ordersPerLevel]
+public class PriceLevelsBenchmark {
+
+    private static final long MID = 1_000_000;
+
+    public static void main(String[] args) {
+        int levels = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int ordersPerLevel = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        for (int round = 0; round < 3; round++) {
+            for (PriceLevelType type : PriceLevelType.values()) {
+                run(type, levels, ordersPerLevel);
+            }
+        }
+    }
+
+    private static void run(PriceLevelType type, int levels, int ordersPerLevel) {
+        Random random = new Random(42);
+        StockOrders asks = new StockOrders(StockOrders.Side.SELL, type);
+        OrderStore store = asks.getStore();
+        Order[] orders = new Order[levels * ordersPerLevel];
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = ask(MID + random.nextInt(levels), 1 + random.nextInt(100));
+        }
+
+        long start = System.nanoTime();
+        for (Order order : orders) {
+            asks.addOrder(store.add(order));
+        }
+        long build = System.nanoTime() - start;
+
+        // Churn: take the best order and replace it with one a few ticks behind the touch
+        int churnOps = 1_000_000;
+        Order[] refills = new Order[churnOps];
+        for (int i = 0; i < churnOps; i++) {
+            refills[i] = ask(MID + random.nextInt(32), 1 + random.nextInt(100));
+        }
+        start = System.nanoTime();
+        long checksum = 0;
+        for (int i = 0; i < churnOps; i++) {
+            long top = asks.pollTopOrder();
+            checksum += store.getPrice(top);
+            store.free(top);
+            asks.addOrder(store.add(refills[i]));
+            checksum += asks.getBestPrice();
+        }
+        long churn = System.nanoTime() - start;
+
+        int remaining = orders.length;
+        start = System.nanoTime();
+        long top;
+        while ((top = asks.pollTopOrder()) != OrderStore.NONE) {
+            store.free(top);
+            checksum += asks.getBestPrice();
+        }
+        long sweep = System.nanoTime() - start;
+
+        System.out.printf("%-6s build %6.1f ns/order | churn %6.1f ns/op | sweep %6.1f ns/order (checksum %d)%n",
+                type, (double) build / orders.length, (double) churn / churnOps,
+                (double) sweep / remaining, checksum);
+    }
+
+    private static Order ask(long price, long volume) {
+        return new Order.Builder("bench")
+                .stockSymbol("BENCH")
+                .price(price)
+                .volume(volume)
+                .side(Order.Side.SELL)
+                .build();
+    }
+}
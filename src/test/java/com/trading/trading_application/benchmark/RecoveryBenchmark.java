@@ -0,0 +1,133 @@
+package com.trading.trading_application.benchmark;
+
+import com.trading.trading_application.API.OrderBookAPI;
+import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.lib.TradeRequest;
+import com.trading.trading_application.service.MatchingShard;
+import com.trading.trading_application.service.ShardPersistence;
+import com.trading.trading_application.utils.OrderJournal;
+import com.trading.trading_application.utils.TradeLogger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// Restart time of one shard holding a large resting book: recovering from a snapshot plus a
+// short journal tail, against replaying the full journal with no snapshot. The history also holds
+// churn pairs of orders that fully fill each other, so the journal is longer than the book.
+// Run with: java -cp target/classes:target/test-classes com.trading.trading_application.benchmark.RecoveryBenchmark [orders] [tail] [churn]
+public class RecoveryBenchmark {
+
+    private static final String[] SYMBOLS = {"AAPL", "MSFT", "GOOG", "AMZN", "NVDA", "META", "TSLA", "NFLX"};
+
+    public static void main(String[] args) throws IOException {
+        int orders = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int tail = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int churn = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+        Path root = Files.createTempDirectory("recovery-bench");
+        TradeLogger.configure(root.resolve("trades.txt"), 1024, 1000, false);
+        ShardPersistence persistence = new ShardPersistence(root.resolve("journal"), root.resolve("snapshots"),
+                OrderJournal.DEFAULT_SEGMENT_SIZE, OrderJournal.FsyncPolicy.NONE, 0, 0);
+        try {
+            Random random = new Random(42);
+
+            // Build the book; stopping the shard leaves a snapshot of all resting orders
+            MatchingShard shard = start(persistence);
+            for (int i = 0; i < orders; i++) {
+                shard.submit(restingOrder(random));
+                for (int c = 0; c < churn; c++) {
+                    submitFilledPair(shard, random);
+                }
+            }
+            shard.stop();
+
+            // Restart to measure snapshot loading, then add a journal tail after the snapshot
+            for (int round = 0; round < 3; round++) {
+                timeRecovery("snapshot only", persistence, orders).stop();
+            }
+            MatchingShard withTail = start(persistence);
+            for (int i = 0; i < tail; i++) {
+                withTail.submit(restingOrder(random));
+            }
+            // Kill-like stop: the snapshot written on stop is removed so the tail must be replayed
+            Path latest = latestSnapshot(persistence);
+            withTail.stop();
+            deleteAllBut(persistence, latest);
+
+            for (int round = 0; round < 3; round++) {
+                timeRecovery("snapshot + " + tail + " tail", persistence, orders + tail).stop();
+                deleteAllBut(persistence, latest);
+            }
+
+            deleteAllBut(persistence, null);
+            timeRecovery("full journal replay", persistence, orders + tail);
+        } finally {
+            try (Stream<Path> files = Files.walk(root)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static MatchingShard timeRecovery(String label, ShardPersistence persistence, int expected) {
+        System.gc(); // keep the previous round's book out of the measurement
+        long start = System.nanoTime();
+        MatchingShard shard = start(persistence);
+        long elapsed = System.nanoTime() - start;
+        long[] resting = new long[1];
+        shard.getOrderBookAPI().forEachRestingOrder(order -> resting[0]++);
+        System.out.printf("%-24s %8.1f ms for %,d resting orders (expected %,d)%n",
+                label, elapsed / 1e6, resting[0], expected);
+        return shard;
+    }
+
+    private static MatchingShard start(ShardPersistence persistence) {
+        MatchingShard shard = new MatchingShard(0, 1, new OrderBookAPI(), 1 << 16, persistence);
+        shard.start();
+        shard.awaitRecovered();
+        return shard;
+    }
+
+    // Bids below 100.00 and asks above it, so nothing crosses and every order rests
+    private static TradeRequest restingOrder(Random random) {
+        TradeRequest request = new TradeRequest(TradeRequest.RequestType.PLACE_ORDER);
+        boolean buy = random.nextBoolean();
+        request.userId = "user" + random.nextInt(10_000);
+        request.stockSymbol = SYMBOLS[random.nextInt(SYMBOLS.length)];
+        request.side = buy ? Order.Side.BUY : Order.Side.SELL;
+        request.price = buy ? 10_000 - 1 - random.nextInt(2_000) : 10_000 + 1 + random.nextInt(2_000);
+        request.volume = 1 + random.nextInt(500);
+        request.orderType = OrderBookAPI.Type.GoodTilCancel;
+        return request;
+    }
+
+    // A sell at 100.00 taken straight away by a buy, leaving nothing on the book
+    private static void submitFilledPair(MatchingShard shard, Random random) {
+        String symbol = SYMBOLS[random.nextInt(SYMBOLS.length)];
+        for (Order.Side side : Order.Side.values()) {
+            TradeRequest request = new TradeRequest(TradeRequest.RequestType.PLACE_ORDER);
+            request.userId = "churn";
+            request.stockSymbol = symbol;
+            request.side = side == Order.Side.BUY ? Order.Side.SELL : Order.Side.BUY;
+            request.price = 10_000;
+            request.volume = 100;
+            request.orderType = OrderBookAPI.Type.GoodTilCancel;
+            shard.submit(request);
+        }
+    }
+
+    private static Path latestSnapshot(ShardPersistence persistence) throws IOException {
+        try (Stream<Path> files = Files.list(persistence.snapshotDirectory(0))) {
+            return files.max(Comparator.naturalOrder()).orElseThrow();
+        }
+    }
+
+    private static void deleteAllBut(ShardPersistence persistence, Path keep) throws IOException {
+        try (Stream<Path> files = Files.list(persistence.snapshotDirectory(0))) {
+            files.filter(path -> !path.equals(keep)).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.trading.trading_application.benchmark;
+
+import com.trading.trading_application.API.OrderBookAPI;
+import com.trading.trading_application.lib.Order;
+import com.trading.trading_application.lib.OrderAck;
+import com.trading.trading_application.lib.TradeRequest;
+import com.trading.trading_application.service.TradeRequestProcessor;
+import com.trading.trading_application.utils.LatencyHistogram;
+import com.trading.trading_application.utils.OrderJournalReader;
+import com.trading.trading_application.utils.TradeLogger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Replays recorded order flow through the engine and checks that it still matches the same way.
+// The flow is a text order log such as OrderLogs.txt, or a shard's journal directory. Each round
+// feeds it either straight into an OrderBookAPI on this thread or through a TradeRequestProcessor
+// and its shards, as fast as possible or at the recorded pacing sped up by a factor, and reports
+// orders/sec, fills/sec and latency percentiles. Paced, latency runs from when a request was due
+// to be sent, so a stalled engine cannot hide its backlog; unpaced, from when it was sent. The outcome of every round (each request's
+// status, fills and remainder, then the resting book) is digested and must equal the digest of the
+// first direct round. Given a reference file, the digest is also compared with the one stored
+// there, or stored when the file does not exist yet, so it holds across builds.
+// Run with: java -cp target/classes:target/test-classes com.trading.trading_application.benchmark.ReplayBenchmark [log file|journal directory] [api|pipeline|both] [max|speedup] [shards] [rounds] [reference file]
+public class ReplayBenchmark {
+
+    private static final String[] MODES = {"api", "pipeline"};
+
+    public static void main(String[] args) throws Exception {
+        Path source = Paths.get(args.length > 0 ? args[0] : "OrderLogs.txt");
+        String mode = args.length > 1 ? args[1] : "both";
+        double speedup = args.length > 2 && !args[2].equals("max") ? Double.parseDouble(args[2]) : 0;
+        int shards = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+        Path referenceFile = args.length > 5 ? Paths.get(args[5]) : null;
+
+        List<TradeRequest> requests = new ArrayList<>();
+        List<Long> timestamps = new ArrayList<>();
+        load(source, requests, timestamps);
+        long[] dueNanos = schedule(timestamps, speedup);
+        System.out.printf("Replaying %,d requests from %s, %s%n", requests.size(), source,
+                speedup > 0 ? "paced at " + speedup + "x the recorded rate" : "as fast as possible");
+
+        Path trades = Files.createTempFile("replay-trades", ".txt");
+        TradeLogger.configure(trades, 1024, 1000, false);
+        try {
+            long reference = replayDirect(requests, dueNanos).report("reference", requests.size());
+            checkReferenceFile(referenceFile, reference);
+            for (int round = 0; round < rounds; round++) {
+                for (String m : MODES) {
+                    if (!mode.equals("both") && !mode.equals(m)) continue;
+                    Result result = m.equals("api") ? replayDirect(requests, dueNanos) : replayPipeline(requests, dueNanos, shards);
+                    long digest = result.report(m, requests.size());
+                    if (digest != reference) {
+                        throw new IllegalStateException(m + " round " + round + " matched differently from the reference run");
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(trades);
+        }
+    }
+
+    // Copies every record of the source, giving orders without an ID a fixed one so that each
+    // run books the same IDs
+    private static void load(Path source, List<TradeRequest> requests, List<Long> timestamps) throws IOException {
+        Consumer<OrderJournalReader.Entry> add = entry -> {
+            TradeRequest request = new TradeRequest();
+            request.copyFrom(entry.request);
+            if (request.orderId == null && request.type != TradeRequest.RequestType.CANCEL_ORDER) {
+                request.orderId = new UUID(0, requests.size() + 1).toString();
+            }
+            requests.add(request);
+            timestamps.add(entry.timestamp);
+        };
+        if (Files.isDirectory(source)) {
+            OrderJournalReader.forEach(source, 1, add);
+        } else {
+            OrderJournalReader.forEachLine(source, add);
+        }
+    }
+
+    // Offsets from the start of a round at which each request is due, null when not pacing
+    private static long[] schedule(List<Long> timestamps, double speedup) {
+        if (speedup <= 0 || timestamps.isEmpty()) return null;
+        long[] due = new long[timestamps.size()];
+        long first = timestamps.get(0);
+        for (int i = 0; i < due.length; i++) {
+            due[i] = (long) (TimeUnit.MILLISECONDS.toNanos(Math.max(0, timestamps.get(i) - first)) / speedup);
+        }
+        return due;
+    }
+
+    // Everything on this thread against one partition, as a shard's worker would run it
+    private static Result replayDirect(List<TradeRequest> requests, long[] dueNanos) {
+        OrderBookAPI api = new OrderBookAPI();
+        Result result = new Result(requests.size());
+        long start = System.nanoTime();
+        for (int i = 0; i < requests.size(); i++) {
+            long due = waitForTurn(start, dueNanos, i);
+            OrderAck ack = new OrderAck();
+            process(api, requests.get(i), ack);
+            result.latency.recordSince(due);
+            result.acks[i] = ack;
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        result.digestBook(api);
+        return result;
+    }
+
+    // Through the shards' rings, each request acknowledged back to this harness
+    private static Result replayPipeline(List<TradeRequest> requests, long[] dueNanos, int shards) throws InterruptedException {
+        OrderBookAPI[] partitions = new OrderBookAPI[shards];
+        for (int i = 0; i < shards; i++) {
+            partitions[i] = new OrderBookAPI();
+        }
+        TradeRequestProcessor processor = new TradeRequestProcessor(partitions);
+        processor.startProcessing();
+        Result result = new Result(requests.size());
+        CountDownLatch done = new CountDownLatch(requests.size());
+        long start = System.nanoTime();
+        for (int i = 0; i < requests.size(); i++) {
+            long due = waitForTurn(start, dueNanos, i);
+            int index = i;
+            TradeRequest request = new TradeRequest();
+            request.copyFrom(requests.get(i));
+            request.ack = new CompletableFuture<>();
+            request.ack.thenAccept(ack -> {
+                result.latency.recordSince(due);
+                result.acks[index] = ack;
+                done.countDown();
+            });
+            processor.submitRequest(request);
+        }
+        done.await();
+        result.elapsedNanos = System.nanoTime() - start;
+        processor.stopProcessing();
+        for (OrderBookAPI partition : partitions) {
+            result.digestBook(partition);
+        }
+        return result;
+    }
+
+    // What MatchingShard does with a request
+    private static void process(OrderBookAPI api, TradeRequest req, OrderAck ack) {
+        switch (req.type) {
+            case PLACE_ORDER -> api.placeOrder(req.orderId, req.userId, req.stockSymbol, req.price, req.volume, req.side, req.orderType, ack);
+            case PLACE_MARKET_ORDER -> {
+                long marketPrice = api.quotePrice(req.stockSymbol, req.side == Order.Side.BUY ? Order.Side.SELL : Order.Side.BUY);
+                if (marketPrice != -1) {
+                    api.placeOrder(req.orderId, req.userId, req.stockSymbol, marketPrice, req.volume, req.side, OrderBookAPI.Type.MarketOrder, ack);
+                } else {
+                    ack.reject(req.orderId, "Nothing to trade against");
+                }
+            }
+            case AMEND_ORDER -> api.amendOrder(req.orderId, req.price, req.volume, req.reduceOnly, ack);
+            case CANCEL_ORDER -> {
+                if (api.cancelOrder(req.orderId)) {
+                    ack.complete(req.orderId, OrderAck.Status.CANCELLED, 0);
+                } else {
+                    ack.reject(req.orderId, "Order not found");
+                }
+            }
+        }
+    }
+
+    // Waits for the request's turn and returns when it was due, now when not pacing
+    private static long waitForTurn(long start, long[] dueNanos, int i) {
+        if (dueNanos == null) return System.nanoTime();
+        long due = start + dueNanos[i];
+        long now = System.nanoTime();
+        while (now < due) {
+            if (due - now > 100_000) {
+                LockSupport.parkNanos(due - now - 50_000);
+            } else {
+                Thread.onSpinWait();
+            }
+            now = System.nanoTime();
+        }
+        return Math.min(due, now);
+    }
+
+    private static void checkReferenceFile(Path file, long digest) throws IOException {
+        if (file == null) return;
+        String value = String.format("%016x", digest);
+        if (!Files.exists(file)) {
+            Files.writeString(file, value + System.lineSeparator());
+            System.out.println("Wrote reference digest " + value + " to " + file);
+        } else if (!Files.readString(file).trim().equals(value)) {
+            throw new IllegalStateException("Matching differs from the reference in " + file + ": "
+                    + Files.readString(file).trim() + " before, " + value + " now");
+        }
+    }
+
+    private static final class Result {
+        final OrderAck[] acks;
+        final LatencyHistogram latency = new LatencyHistogram();
+        long elapsedNanos;
+        // Sum of per-order hashes, so it does not depend on how the book is partitioned
+        long book;
+
+        Result(int requests) {
+            acks = new OrderAck[requests];
+        }
+
+        void digestBook(OrderBookAPI api) {
+            api.forEachRestingOrder(order -> book += mix(mix(mix(mix(order.getOrderId().hashCode(),
+                    order.getStockSymbol().hashCode()), order.getPrice()), order.getVolume()), order.getSide().ordinal()));
+        }
+
+        // Prints the round and returns its digest. Trade IDs are left out, they keep counting across rounds.
+        long report(String name, int requests) {
+            long digest = book;
+            long fills = 0;
+            for (OrderAck ack : acks) {
+                digest = mix(mix(mix(digest, ack.getStatus().ordinal()), ack.getFilledVolume()), ack.getRemainingVolume());
+                for (OrderAck.Fill fill : ack.getFills()) {
+                    digest = mix(mix(digest, Double.doubleToLongBits(fill.getPrice())), fill.getVolume());
+                }
+                fills += ack.getFills().size();
+            }
+            LatencyHistogram.Snapshot snapshot = latency.intervalSnapshot();
+            double seconds = elapsedNanos / 1e9;
+            System.out.printf("%-9s : %,10.0f orders/sec %,10.0f fills/sec, latency p50 %,8d p99 %,9d p99.9 %,10d max %,11d ns, digest %016x%n",
+                    name, requests / seconds, fills / seconds, snapshot.getValueAtPercentile(50),
+                    snapshot.getValueAtPercentile(99), snapshot.getValueAtPercentile(99.9), snapshot.getMax(), digest);
+            return digest;
+        }
+
+        private static long mix(long hash, long value) {
+            return (hash ^ value) * 0x100000001B3L + 0x9E3779B97F4A7C15L;
+        }
+    }
+}